@@ -0,0 +1,57 @@
+package org.example.crs.reservation.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count (1, 2, 4... up to the number of processors), and writes
+ * the JSON results of each run in a directory, so they can be compared between releases.
+ *
+ * Arguments: the results directory (target/jmh by default), and the regexp of the benchmarks to run
+ * (all of this package by default).
+ */
+public class BenchmarkRunner
+{
+  public static void main(String[] args) throws Exception
+  {
+    var directory = Path.of(args.length > 0 ? args[0] : "target/jmh");
+    var include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackageName();
+
+    Files.createDirectories(directory);
+
+    for (var threads : threadCounts(Runtime.getRuntime().availableProcessors()))
+    {
+      var options = new OptionsBuilder()
+          .include(include)
+          .exclude(BenchmarkRunner.class.getSimpleName())
+          .threads(threads)
+          .resultFormat(ResultFormatType.JSON)
+          .result(directory.resolve(String.format("threads-%d.json", threads)).toString())
+          .build();
+
+      new Runner(options).run();
+    }
+  }
+
+  /**
+   * @param max The maximum number of threads.
+   * @return The powers of two lower than max, then max.
+   */
+  private static List<Integer> threadCounts(int max)
+  {
+    var counts = new ArrayList<Integer>();
+    for (var threads = 1; threads < max; threads *= 2)
+    {
+      counts.add(threads);
+    }
+    counts.add(max);
+
+    return counts;
+  }
+}
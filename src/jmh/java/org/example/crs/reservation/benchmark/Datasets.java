@@ -0,0 +1,122 @@
+package org.example.crs.reservation.benchmark;
+
+import static java.time.Period.ofDays;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import lombok.experimental.UtilityClass;
+
+import org.example.crs.reservation.OccupancyCalendar;
+import org.example.crs.reservation.ReservationMapRepository;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
+
+/**
+ * Builds the datasets of the benchmarks.
+ *
+ * A dataset looks like the history of the campsite: a night out of two is booked during the next
+ * month, and all the other reservations are in the past (up to ten years ago).
+ */
+@UtilityClass
+public class Datasets
+{
+  /**
+   * Number of days of history the past reservations are spread over.
+   */
+  public static final int HISTORY_DAYS = 3650;
+
+  /**
+   * Number of reservations booking the next month.
+   */
+  public static final int NB_UPCOMING = 15;
+
+  /**
+   * Number of nights a new reservation can arrive at, from tomorrow: its nights all stay inside the
+   * occupancy calendar.
+   */
+  public static final int BOOKABLE_NIGHTS = OccupancyCalendar.NB_NIGHTS - 4;
+
+  /**
+   * @param index The index of a reservation of the dataset.
+   * @return The period of the reservation.
+   */
+  public static ReservationPeriod periodOf(int index)
+  {
+    var today = LocalDate.now();
+
+    // the first ones book the next month, a night out of two
+    if (index < NB_UPCOMING)
+    {
+      var arrivalDate = today.plus(ofDays(1 + 2 * index));
+      return createPeriod(arrivalDate, arrivalDate.plus(ofDays(1)));
+    }
+
+    var arrivalDate = today.minus(ofDays(5 + index % HISTORY_DAYS));
+    return createPeriod(arrivalDate, arrivalDate.plus(ofDays(1 + index % 3)));
+  }
+
+  /**
+   * @param night A night, between 0 and BOOKABLE_NIGHTS.
+   * @return A period of one to three nights, arriving that night after tomorrow.
+   */
+  public static ReservationPeriod bookablePeriodOf(int night)
+  {
+    var arrivalDate = LocalDate.now().plus(ofDays(1 + night));
+    return createPeriod(arrivalDate, arrivalDate.plus(ofDays(1 + night % 3)));
+  }
+
+  /**
+   * @param size The number of periods.
+   * @return The periods of a dataset, shuffled.
+   */
+  public static List<ReservationPeriod> periods(int size)
+  {
+    var periods = new ArrayList<ReservationPeriod>(size);
+    for (var i = 0; i < size; i++)
+    {
+      periods.add(periodOf(i));
+    }
+
+    Collections.shuffle(periods, new Random(42));
+
+    return periods;
+  }
+
+  /**
+   * Creates the reservations of a dataset.
+   *
+   * @param repository The repository to fill.
+   * @param size The number of reservations.
+   * @return The ids of the reservations, by index.
+   */
+  public static UUID[] seed(ReservationMapRepository repository, int size)
+  {
+    var ids = new UUID[size];
+    for (var i = 0; i < size; i++)
+    {
+      ids[i] = repository.create(createBody(periodOf(i))).join().getId();
+    }
+
+    return ids;
+  }
+
+  /**
+   * @param period The period of the reservation.
+   * @return The body creating a reservation for the period.
+   */
+  public static ReservationCreateBody createBody(ReservationPeriod period)
+  {
+    return ReservationCreateBody.builder()
+        .clientEmail("camper@example.org")
+        .clientName("Happy Camper")
+        .arrivalDate(period.getArrivalDate())
+        .departureDate(period.getDepartureDate())
+        .build();
+  }
+}
@@ -0,0 +1,159 @@
+package org.example.crs.reservation.benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.example.crs.reservation.Reservation;
+import org.example.crs.reservation.ReservationMapRepository;
+import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.example.crs.reservation.exception.ReservationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each operation of the map repository.
+ *
+ * The repository runs its work on the calling thread, so the benchmarks measure the operations
+ * themselves and not the thread handoffs. Creations book upcoming nights of a campsite of PITCHES
+ * pitches, through the stripes and the segment tree of the occupancy calendar: once the nights of a
+ * period are full, the refused creation is counted as an operation too. Updates keep the period of
+ * the reservation, so concurrent threads never fail on each other's nights.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReservationMapRepositoryBenchmark
+{
+  /**
+   * The number of pitches of the campsite the creations book: a few thousand creations fill a night.
+   */
+  private static final int PITCHES = 1000;
+
+  /**
+   * A repository only read by the benchmarks, filled once.
+   */
+  @State(Scope.Benchmark)
+  public static class ReadState
+  {
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int size;
+
+    ReservationMapRepository repository;
+    UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+      repository = new ReservationMapRepository(Runnable::run);
+      ids = Datasets.seed(repository, size);
+    }
+
+    UUID randomId()
+    {
+      return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+  }
+
+  /**
+   * A repository modified by the benchmarks, filled again before each iteration.
+   */
+  @State(Scope.Benchmark)
+  public static class WriteState
+  {
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int size;
+
+    ReservationMapRepository repository;
+    UUID[] ids;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+      repository = new ReservationMapRepository(Runnable::run);
+      repository.getOccupancyCalendar().setCapacity(PITCHES);
+      ids = Datasets.seed(repository, size);
+    }
+
+    int randomIndex()
+    {
+      return ThreadLocalRandom.current().nextInt(ids.length);
+    }
+  }
+
+  @Benchmark
+  public Optional<Reservation> findById(ReadState state)
+  {
+    return state.repository.findById(state.randomId()).join();
+  }
+
+  @Benchmark
+  public List<Reservation> findFrom(ReadState state)
+  {
+    return state.repository.findFrom(LocalDate.now()).join();
+  }
+
+  @Benchmark
+  public List<Reservation> findFromExcept(ReadState state)
+  {
+    return state.repository.findFromExcept(LocalDate.now(), Optional.of(state.ids[0])).join();
+  }
+
+  @Benchmark
+  public Optional<Reservation> create(WriteState state)
+  {
+    var period = Datasets.bookablePeriodOf(ThreadLocalRandom.current().nextInt(Datasets.BOOKABLE_NIGHTS));
+    try
+    {
+      return Optional.of(state.repository.create(Datasets.createBody(period)).join());
+    }
+    catch (CompletionException ex)
+    {
+      // the nights are full: the calendar checked them all the same
+      if (ex.getCause() instanceof ReservationException)
+      {
+        return Optional.empty();
+      }
+      throw ex;
+    }
+  }
+
+  @Benchmark
+  public Optional<Reservation> update(WriteState state)
+  {
+    var index = state.randomIndex();
+    var period = Datasets.periodOf(index);
+
+    var body = ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(period.getArrivalDate()))
+        .departureDate(Optional.of(period.getDepartureDate()))
+        .status(Optional.of(ACTIVE))
+        .build();
+
+    return state.repository.update(state.ids[index], body).join();
+  }
+
+  @Benchmark
+  public Optional<Reservation> cancel(WriteState state)
+  {
+    return state.repository.cancel(state.ids[state.randomIndex()]).join();
+  }
+}
@@ -0,0 +1,78 @@
+package org.example.crs.reservation.benchmark;
+
+import static java.time.Period.ofDays;
+import static java.time.Period.ofMonths;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.example.crs.reservation.command.param.Availability;
+import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
+import org.example.crs.reservation.exception.ReservationException;
+import org.example.crs.reservation.utils.ReservationPeriodUtils;
+import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the availabilities extraction from a list of reservation periods, and the validation of
+ * a reservation period.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReservationPeriodUtilsBenchmark
+{
+  @Param({ "10", "1000", "100000", "1000000" })
+  public int size;
+
+  private List<ReservationPeriod> periods;
+
+  private LocalDate checkFrom;
+  private LocalDate checkTo;
+
+  private ReservationPeriod period;
+
+  @Setup
+  public void setup()
+  {
+    periods = Datasets.periods(size);
+
+    checkFrom = LocalDate.now().plus(ofDays(1));
+    checkTo = checkFrom.plus(ofMonths(1));
+
+    period = createPeriod(checkFrom, checkFrom.plus(ofDays(3)));
+  }
+
+  @Benchmark
+  public List<Availability> getReservationAvailabilities()
+      throws ReservationAvailabilityCheckException, ReservationException
+  {
+    return ReservationPeriodUtils.getReservationAvailabilities(checkFrom, checkTo, periods);
+  }
+
+  /**
+   * Does not depend on the dataset, measured for each size so it can be compared on the same runs.
+   */
+  @Benchmark
+  public ReservationPeriod validateReservationPeriod()
+      throws ReservationAvailabilityCheckException, ReservationException
+  {
+    ReservationPeriodUtils.validateReservationPeriod(period);
+    return period;
+  }
+}
@@ -0,0 +1,38 @@
+package org.example.crs;
+
+import static akka.http.javadsl.marshallers.jackson.Jackson.marshaller;
+
+import java.text.SimpleDateFormat;
+
+import lombok.experimental.UtilityClass;
+
+import org.example.crs.reservation.command.ReservationCommands.CommandResponse;
+
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.RequestEntity;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The JSON mapping of the application, shared by the routes, the services and the imports.
+ */
+@UtilityClass
+public class Json
+{
+  /**
+   * The great and unique object mapper of the application!
+   */
+  public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+      .findAndRegisterModules()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+      .setSerializationInclusion(Include.NON_NULL)
+      .setSerializationInclusion(Include.NON_ABSENT)
+      .setDateFormat(new SimpleDateFormat("yyyy-MM-dd"));
+
+  /**
+   * The unique instance of a CommandResponse->RequestEntity marshaller for the application. Used in
+   * the routing system.
+   */
+  public static final Marshaller<CommandResponse, RequestEntity> TO_JSON = marshaller(OBJECT_MAPPER);
+}
@@ -0,0 +1,9 @@
+package org.example.crs;
+
+/**
+ * Marks the messages Akka serializes as JSON, with Jackson (see the serialization bindings of the
+ * configuration): the events and snapshots of the event-sourced registries.
+ */
+public interface JsonSerializable
+{
+}
@@ -1,67 +1,77 @@
 package org.example.crs;
 
 import static akka.http.javadsl.ConnectHttp.toHost;
-import static akka.http.javadsl.marshallers.jackson.Jackson.marshaller;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
+import org.example.crs.reservation.AdmissionControl;
+import org.example.crs.reservation.CampsiteRegistry;
+import org.example.crs.reservation.Campsites;
+import org.example.crs.reservation.CreateBatching;
+import org.example.crs.reservation.EventSourcedReservationRegistry;
+import org.example.crs.reservation.OffHeapReservationRepository;
+import org.example.crs.reservation.ReservationIdGenerator;
+import org.example.crs.reservation.ReservationImport;
 import org.example.crs.reservation.ReservationMapRepository;
+import org.example.crs.reservation.ReservationMetrics;
 import org.example.crs.reservation.ReservationRegistry;
+import org.example.crs.reservation.ReservationRepository;
 import org.example.crs.reservation.ReservationRoute;
 import org.example.crs.reservation.ReservationService;
-import org.example.crs.reservation.command.ReservationCommands.CommandResponse;
+import org.example.crs.reservation.ShardedCampsiteRegistry;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.storage.ReservationArchive;
+import org.example.crs.reservation.storage.ReservationJournal;
 
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Adapter;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.http.javadsl.Http;
-import akka.http.javadsl.marshalling.Marshaller;
-import akka.http.javadsl.model.RequestEntity;
 import akka.stream.Materializer;
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import scala.concurrent.ExecutionContextExecutor;
 
 @Slf4j
 @UtilityClass
 public class ReservationApp
 {
   /**
-   * The great and unique object mapper of the application!
-   */
-  public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
-      .findAndRegisterModules()
-      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-      .setSerializationInclusion(Include.NON_NULL)
-      .setSerializationInclusion(Include.NON_ABSENT)
-      .setDateFormat(new SimpleDateFormat("yyyy-MM-dd"));
-
-  /**
-   * The unique instance of a CommandResponse->RequestEntity marshaller for the application. Used in
-   * the routing system.
+   * @return The main App actor.
    */
-  public static final Marshaller<CommandResponse, RequestEntity> TO_JSON = marshaller(OBJECT_MAPPER);
+  public static Behavior createActor()
+  {
+    return createActor(ConfigFactory.load());
+  }
 
   /**
+   * @param config The application configuration.
    * @return The main App actor.
    */
-  public static Behavior createActor()
+  public static Behavior createActor(Config config)
   {
-    var mapRepository = new ReservationMapRepository();
-    var service = new ReservationService(mapRepository);
-
     return Behaviors.setup(ctx ->
     {
       var system = ctx.getSystem();
-      var config = ConfigFactory.load();
 
-      var registry = ctx.spawn(ReservationRegistry.create(service), "ReservationRegistry");
-      var route = new ReservationRoute(registry, system.scheduler());
+      var executor = system.dispatchers().lookup(DispatcherSelector.fromConfig(config.getString("repository.dispatcher")));
+      var metrics = new ReservationMetrics();
+
+      var route = config.getBoolean("cluster.enabled")
+          ? createClusterRoute(ctx, config, executor, metrics)
+          : createRoute(ctx, config, executor, metrics);
 
       var classicSystem = Adapter.toClassic(system);
       var http = Http.get(classicSystem);
@@ -87,8 +97,285 @@ public class ReservationApp
     });
   }
 
+  /**
+   * Creates the routes of a standalone node, serving all the campsites.
+   *
+   * @param ctx The context of the main actor.
+   * @param config The application configuration.
+   * @param executor The executor running the repository operations.
+   * @param metrics The metrics of the node.
+   * @return The routes.
+   */
+  private static ReservationRoute createRoute(
+      ActorContext<?> ctx,
+      Config config,
+      ExecutionContextExecutor executor,
+      ReservationMetrics metrics)
+  {
+    var system = ctx.getSystem();
+    var cacheSize = config.getInt("service.availability_cache_size");
+
+    var service = new ReservationService(
+        createRepository(system, config, executor, metrics, Optional.empty()), cacheSize, metrics);
+
+    // the other campsites get their partition on their first request
+    var campsites = new Campsites(config.getStringList("campsite.campsites"), id -> new ReservationService(
+        createRepository(system, config, executor, metrics, Optional.of(id)), cacheSize, metrics, id));
+
+    var registry = ctx.spawn(createRegistry(config, service, Optional.empty()), "ReservationRegistry");
+    var campsiteRegistry = ctx.spawn(
+        CampsiteRegistry.create(campsites,
+            (id, campsiteService) -> createRegistry(config, campsiteService, Optional.of(id)),
+            config.getDuration("campsite.passivate_after")),
+        "CampsiteRegistry");
+
+    return new ReservationRoute(registry, service, campsites, campsiteRegistry, system.scheduler(),
+        AdmissionControl.fromConfig(config), ReservationImport.fromConfig(config));
+  }
+
+  /**
+   * Creates the routes of a cluster node: the campsites (the default one included) are sharded over
+   * the nodes, and the routes forward their commands to the node owning them.
+   *
+   * @param ctx The context of the main actor, whose system is part of the cluster.
+   * @param config The application configuration.
+   * @param executor The executor running the repository operations.
+   * @param metrics The metrics of the node.
+   * @return The routes.
+   */
+  private static ReservationRoute createClusterRoute(
+      ActorContext<?> ctx,
+      Config config,
+      ExecutionContextExecutor executor,
+      ReservationMetrics metrics)
+  {
+    var system = ctx.getSystem();
+    var cacheSize = config.getInt("service.availability_cache_size");
+
+    var ids = new ArrayList<>(config.getStringList("campsite.campsites"));
+    if (!ids.contains(ShardedCampsiteRegistry.DEFAULT_CAMPSITE))
+    {
+      ids.add(ShardedCampsiteRegistry.DEFAULT_CAMPSITE);
+    }
+
+    // a partition is only created on the node owning its campsite
+    var campsites = new Campsites(ids, id -> new ReservationService(
+        createRepository(system, config, executor, metrics, Optional.of(id)), cacheSize, metrics, id));
+
+    var region = ShardedCampsiteRegistry.init(system, campsites,
+        (id, campsiteService) -> createRegistry(config, campsiteService, Optional.of(id)));
+    var campsiteRegistry = ctx.spawn(ShardedCampsiteRegistry.create(region), "CampsiteRegistry");
+
+    return new ReservationRoute(campsites, campsiteRegistry, metrics, system.scheduler(),
+        AdmissionControl.fromConfig(config), ReservationImport.fromConfig(config));
+  }
+
+  /**
+   * Creates the registries of a campsite, as configured in the registry block.
+   *
+   * @param config The application configuration.
+   * @param service The service of the campsite.
+   * @param campsiteId The campsite id, empty for the default campsite.
+   * @return The registries behavior: a pool, or a single event-sourced registry.
+   */
+  private static Behavior<Command> createRegistry(
+      Config config,
+      ReservationService service,
+      Optional<String> campsiteId)
+  {
+    if (isEventSourced(config))
+    {
+      var persistenceId = campsiteId.map(id -> "reservations-" + id).orElse("reservations");
+      return EventSourcedReservationRegistry.create(
+          persistenceId, service, config.getInt("registry.event_sourced.snapshot_every"));
+    }
+
+    return ReservationRegistry.pool(
+        service, config.getInt("registry.pool_size"), CreateBatching.fromConfig(config));
+  }
+
+  /**
+   * @param config The application configuration.
+   * @return If the registries are event-sourced.
+   * @throws IllegalArgumentException In case the registry mode is unknown.
+   */
+  private static boolean isEventSourced(Config config)
+  {
+    var mode = config.getString("registry.mode");
+    if (!mode.equals("pool") && !mode.equals("event-sourced"))
+    {
+      throw new IllegalArgumentException("Unknown registry mode: " + mode);
+    }
+
+    return mode.equals("event-sourced");
+  }
+
+  /**
+   * Creates the repository of a campsite, as configured in the repository block, with the capacity of
+   * the campsite block. The files of the other campsites than the default one are kept in their own
+   * sub-directories.
+   *
+   * With event-sourced registries, the repository is a memory only map repository, recovered by its
+   * registry from the events.
+   *
+   * @param system The actor system.
+   * @param config The application configuration.
+   * @param executor The executor running the repository operations.
+   * @param metrics The metrics the repository sizes are registered in.
+   * @param campsiteId The campsite id, empty for the default campsite.
+   * @return The repository.
+   */
+  private static ReservationRepository createRepository(
+      ActorSystem<?> system,
+      Config config,
+      ExecutionContextExecutor executor,
+      ReservationMetrics metrics,
+      Optional<String> campsiteId)
+  {
+    var labels = campsiteId.map(id -> new String[] { "campsite", id }).orElseGet(() -> new String[0]);
+
+    ReservationRepository repository;
+    if (isEventSourced(config))
+    {
+      var mapRepository = new ReservationMapRepository(
+          ReservationIdGenerator.named(config.getString("repository.id_generator")), executor);
+      metrics.registerRepository(mapRepository, labels);
+      repository = mapRepository;
+    }
+    else if (config.getString("repository.store").equals("off-heap"))
+    {
+      repository = new OffHeapReservationRepository(
+          ReservationIdGenerator.named(config.getString("repository.id_generator")), executor);
+    }
+    else
+    {
+      var mapRepository = createMapRepository(config, executor, campsiteId);
+      metrics.registerRepository(mapRepository, labels);
+      scheduleMaintenance(system, config, mapRepository, executor);
+      repository = mapRepository;
+    }
+
+    repository.getOccupancyCalendar().setCapacity(config.getInt("campsite.pitches"));
+
+    return repository;
+  }
+
+  /**
+   * Schedules the snapshots (in durable mode) and the archival (if enabled) of the map repository.
+   *
+   * @param system The actor system.
+   * @param config The application configuration.
+   * @param mapRepository The map repository.
+   * @param executor The executor running the repository operations.
+   */
+  private static void scheduleMaintenance(
+      ActorSystem<?> system,
+      Config config,
+      ReservationMapRepository mapRepository,
+      ExecutionContextExecutor executor)
+  {
+    if (config.getBoolean("repository.durable"))
+    {
+      var interval = config.getDuration("repository.snapshot_interval");
+      system.scheduler().scheduleAtFixedRate(interval, interval, () ->
+      {
+        try
+        {
+          mapRepository.snapshot();
+        }
+        catch (IOException | RuntimeException ex)
+        {
+          log.error("Failed to write the reservations snapshot", ex);
+        }
+      }, executor);
+    }
+
+    if (config.getBoolean("repository.archive.enabled"))
+    {
+      var interval = config.getDuration("repository.archive.interval");
+      system.scheduler().scheduleAtFixedRate(interval, interval, () ->
+      {
+        try
+        {
+          var nbArchived = mapRepository.archive(LocalDate.now());
+          log.info("{} reservations archived", nbArchived);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+          log.error("Failed to archive the reservations", ex);
+        }
+      }, executor);
+    }
+  }
+
+  /**
+   * @param config The application configuration.
+   * @param executor The executor running the repository operations.
+   * @param campsiteId The campsite id, empty for the default campsite.
+   * @return The in-memory repository, restored from its journal in durable mode, with its archive if
+   * enabled.
+   */
+  private static ReservationMapRepository createMapRepository(
+      Config config,
+      Executor executor,
+      Optional<String> campsiteId)
+  {
+    var idGenerator = ReservationIdGenerator.named(config.getString("repository.id_generator"));
+
+    try
+    {
+      var archive = Optional.<ReservationArchive>empty();
+      if (config.getBoolean("repository.archive.enabled"))
+      {
+        archive = Optional.of(ReservationArchive.open(
+            campsiteDirectory(config.getString("repository.archive.directory"), campsiteId)));
+        Runtime.getRuntime().addShutdownHook(new Thread(archive.get()::close));
+      }
+
+      if (!config.getBoolean("repository.durable"))
+      {
+        return archive.isPresent()
+            ? new ReservationMapRepository(archive.get(), idGenerator, executor)
+            : new ReservationMapRepository(idGenerator, executor);
+      }
+
+      var journal = ReservationJournal.open(
+          campsiteDirectory(config.getString("repository.directory"), campsiteId),
+          config.getDuration("repository.group_commit_window"));
+
+      Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+
+      return archive.isPresent()
+          ? new ReservationMapRepository(journal, archive.get(), idGenerator, executor)
+          : new ReservationMapRepository(journal, idGenerator, executor);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException("Failed to restore the reservations", ex);
+    }
+  }
+
+  /**
+   * @param directory A configured directory.
+   * @param campsiteId The campsite id, empty for the default campsite.
+   * @return The directory of the campsite files.
+   */
+  private static Path campsiteDirectory(String directory, Optional<String> campsiteId)
+  {
+    return campsiteId
+        .map(id -> Path.of(directory, "campsites", id))
+        .orElseGet(() -> Path.of(directory));
+  }
+
   public static void main(String[] args)
   {
-    ActorSystem.create(createActor(), "CRS");
+    var config = ConfigFactory.load();
+    if (config.getBoolean("cluster.enabled"))
+    {
+      // the remoting and the cluster settings are in the configuration, only unused in standalone mode
+      config = ConfigFactory.parseString("akka.actor.provider = cluster").withFallback(config);
+    }
+
+    ActorSystem.create(createActor(config), "CRS", config);
   }
 }
@@ -0,0 +1,32 @@
+package org.example.crs.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic counter. Increments never allocate and rarely contend.
+ */
+public class Counter
+{
+  private final LongAdder value = new LongAdder();
+
+  public void increment()
+  {
+    value.increment();
+  }
+
+  /**
+   * @param n The number to add, positive.
+   */
+  public void add(long n)
+  {
+    value.add(n);
+  }
+
+  /**
+   * @return The current value.
+   */
+  public long get()
+  {
+    return value.sum();
+  }
+}
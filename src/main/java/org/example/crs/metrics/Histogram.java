@@ -0,0 +1,130 @@
+package org.example.crs.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in fixed buckets, as a Prometheus histogram. Recording a duration never
+ * allocates: it finds the bucket with a binary search and increments two adders.
+ */
+public class Histogram
+{
+  /**
+   * Upper bounds of the buckets, in seconds.
+   */
+  public static final double[] DEFAULT_BUCKETS = {
+      0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+  private final double[] bounds;
+
+  /**
+   * Upper bounds of the buckets, in nanoseconds.
+   */
+  private final long[] boundsNanos;
+
+  /**
+   * One adder per bucket, plus one for the durations greater than every bound.
+   */
+  private final LongAdder[] buckets;
+
+  private final LongAdder sumNanos = new LongAdder();
+
+  public Histogram()
+  {
+    this(DEFAULT_BUCKETS);
+  }
+
+  /**
+   * @param bounds The upper bounds of the buckets, in seconds, sorted.
+   */
+  public Histogram(double[] bounds)
+  {
+    this.bounds = bounds.clone();
+    this.boundsNanos = new long[bounds.length];
+    this.buckets = new LongAdder[bounds.length + 1];
+
+    for (var i = 0; i < bounds.length; i++)
+    {
+      boundsNanos[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+    for (var i = 0; i < buckets.length; i++)
+    {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @param nanos A duration, in nanoseconds.
+   */
+  public void record(long nanos)
+  {
+    var low = 0;
+    var high = boundsNanos.length;
+    while (low < high)
+    {
+      var mid = (low + high) >>> 1;
+      if (boundsNanos[mid] < nanos)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    buckets[low].increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Records the time elapsed since a System.nanoTime() value.
+   *
+   * @param startNanos The System.nanoTime() value at the start.
+   */
+  public void recordSince(long startNanos)
+  {
+    record(System.nanoTime() - startNanos);
+  }
+
+  double[] getBounds()
+  {
+    return bounds;
+  }
+
+  /**
+   * @return The number of durations per bucket (not cumulative), the last one being over every bound.
+   */
+  long[] getBucketCounts()
+  {
+    var counts = new long[buckets.length];
+    for (var i = 0; i < buckets.length; i++)
+    {
+      counts[i] = buckets[i].sum();
+    }
+
+    return counts;
+  }
+
+  /**
+   * @return The sum of the durations, in seconds.
+   */
+  double getSumSeconds()
+  {
+    return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  /**
+   * @return The number of durations recorded.
+   */
+  public long getCount()
+  {
+    var count = 0L;
+    for (var bucket : buckets)
+    {
+      count += bucket.sum();
+    }
+
+    return count;
+  }
+}
@@ -0,0 +1,211 @@
+package org.example.crs.metrics;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Holds the metrics of the application, and renders them in the Prometheus text format.
+ *
+ * Metrics are registered once (e.g. at startup, or the first time a label value is seen) and kept
+ * by their users, so recording never goes through the registry.
+ */
+public class MetricsRegistry
+{
+  private enum Type
+  {
+    COUNTER, GAUGE, HISTOGRAM
+  }
+
+  @RequiredArgsConstructor
+  private static class Family
+  {
+    private final String name;
+    private final String help;
+    private final Type type;
+    private final List<Sample> samples = new ArrayList<>();
+  }
+
+  @RequiredArgsConstructor
+  private static class Sample
+  {
+    /**
+     * The rendered labels, like {operation="create"}, or an empty string.
+     */
+    private final String labels;
+
+    private final Object metric;
+  }
+
+  private final Map<String, Family> families = new LinkedHashMap<>();
+
+  /**
+   * @param name The metric name.
+   * @param help The metric description.
+   * @param labels The label names and values, alternated.
+   * @return The counter registered.
+   */
+  public Counter counter(String name, String help, String... labels)
+  {
+    var counter = new Counter();
+    register(name, help, Type.COUNTER, labels, counter);
+
+    return counter;
+  }
+
+  /**
+   * Registers a counter maintained by someone else, read when rendering.
+   *
+   * @param name The metric name.
+   * @param help The metric description.
+   * @param value Reads the counter value.
+   * @param labels The label names and values, alternated.
+   */
+  public void counter(String name, String help, DoubleSupplier value, String... labels)
+  {
+    register(name, help, Type.COUNTER, labels, value);
+  }
+
+  /**
+   * @param name The metric name.
+   * @param help The metric description.
+   * @param value Reads the gauge value.
+   * @param labels The label names and values, alternated.
+   */
+  public void gauge(String name, String help, DoubleSupplier value, String... labels)
+  {
+    register(name, help, Type.GAUGE, labels, value);
+  }
+
+  /**
+   * @param name The metric name.
+   * @param help The metric description.
+   * @param labels The label names and values, alternated.
+   * @return The histogram registered, with the default buckets.
+   */
+  public Histogram histogram(String name, String help, String... labels)
+  {
+    var histogram = new Histogram();
+    register(name, help, Type.HISTOGRAM, labels, histogram);
+
+    return histogram;
+  }
+
+  /**
+   * @return The metrics, in the Prometheus text format.
+   */
+  public synchronized String render()
+  {
+    var out = new StringBuilder();
+
+    for (var family : families.values())
+    {
+      out.append(format("# HELP %s %s\n", family.name, family.help));
+      out.append(format("# TYPE %s %s\n", family.name, family.type.name().toLowerCase()));
+
+      for (var sample : family.samples)
+      {
+        if (sample.metric instanceof Histogram)
+        {
+          renderHistogram(out, family.name, sample.labels, (Histogram) sample.metric);
+        }
+        else if (sample.metric instanceof Counter)
+        {
+          renderValue(out, family.name, sample.labels, ((Counter) sample.metric).get());
+        }
+        else
+        {
+          renderValue(out, family.name, sample.labels, ((DoubleSupplier) sample.metric).getAsDouble());
+        }
+      }
+    }
+
+    return out.toString();
+  }
+
+  private synchronized void register(String name, String help, Type type, String[] labels, Object metric)
+  {
+    var family = families.computeIfAbsent(name, __ -> new Family(name, help, type));
+    if (family.type != type)
+    {
+      throw new IllegalArgumentException(format("%s is already registered as a %s", name, family.type));
+    }
+
+    family.samples.add(new Sample(renderLabels(labels), metric));
+  }
+
+  private static void renderHistogram(StringBuilder out, String name, String labels, Histogram histogram)
+  {
+    var bounds = histogram.getBounds();
+    var counts = histogram.getBucketCounts();
+
+    var cumulative = 0L;
+    for (var i = 0; i < bounds.length; i++)
+    {
+      cumulative += counts[i];
+      renderValue(out, name + "_bucket", withLe(labels, Double.toString(bounds[i])), cumulative);
+    }
+    cumulative += counts[bounds.length];
+
+    renderValue(out, name + "_bucket", withLe(labels, "+Inf"), cumulative);
+    renderValue(out, name + "_sum", labels, histogram.getSumSeconds());
+    renderValue(out, name + "_count", labels, cumulative);
+  }
+
+  private static void renderValue(StringBuilder out, String name, String labels, double value)
+  {
+    out.append(name).append(labels).append(' ');
+    if (value == Math.rint(value) && !Double.isInfinite(value))
+    {
+      out.append((long) value);
+    }
+    else
+    {
+      out.append(value);
+    }
+    out.append('\n');
+  }
+
+  private static String withLe(String labels, String le)
+  {
+    var leLabel = format("le=\"%s\"", le);
+    if (labels.isEmpty())
+    {
+      return "{" + leLabel + "}";
+    }
+
+    return labels.substring(0, labels.length() - 1) + "," + leLabel + "}";
+  }
+
+  private static String renderLabels(String[] labels)
+  {
+    if (labels.length % 2 != 0)
+    {
+      throw new IllegalArgumentException("Labels must be given as name/value pairs");
+    }
+    if (labels.length == 0)
+    {
+      return "";
+    }
+
+    var out = new StringBuilder("{");
+    for (var i = 0; i < labels.length; i += 2)
+    {
+      if (i > 0)
+      {
+        out.append(',');
+      }
+      out.append(labels[i]).append("=\"")
+          .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+          .append('"');
+    }
+
+    return out.append('}').toString();
+  }
+}
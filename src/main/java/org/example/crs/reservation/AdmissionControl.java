@@ -0,0 +1,105 @@
+package org.example.crs.reservation;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+
+import org.example.crs.reservation.ReservationMetrics.Operation;
+
+import com.typesafe.config.Config;
+
+/**
+ * Bounds the number of requests of each operation being processed by the registries at the same
+ * time. A request over the limit is refused right away, instead of waiting in a mailbox until its
+ * ask times out.
+ */
+public class AdmissionControl
+{
+  private final int[] limits = new int[Operation.values().length];
+
+  private final AtomicInteger[] inFlight = new AtomicInteger[Operation.values().length];
+
+  /**
+   * How long the clients should wait before retrying a refused request.
+   */
+  @Getter
+  private final Duration retryAfter;
+
+  /**
+   * @param limits The maximum number of requests in flight, by operation. Missing operations are not
+   * limited.
+   * @param retryAfter How long the clients should wait before retrying a refused request.
+   */
+  public AdmissionControl(Map<Operation, Integer> limits, Duration retryAfter)
+  {
+    this.retryAfter = retryAfter;
+
+    for (var operation : Operation.values())
+    {
+      this.limits[operation.ordinal()] = limits.getOrDefault(operation, Integer.MAX_VALUE);
+      this.inFlight[operation.ordinal()] = new AtomicInteger();
+    }
+  }
+
+  /**
+   * @param config The application configuration.
+   * @return The admission control configured in the admission block.
+   */
+  public static AdmissionControl fromConfig(Config config)
+  {
+    var limits = new EnumMap<Operation, Integer>(Operation.class);
+    for (var operation : Operation.values())
+    {
+      var path = "admission.max_in_flight." + operation.name().toLowerCase();
+      if (config.hasPath(path))
+      {
+        limits.put(operation, config.getInt(path));
+      }
+    }
+
+    return new AdmissionControl(limits, config.getDuration("admission.retry_after"));
+  }
+
+  /**
+   * @param operation The operation requested.
+   * @return If the request is admitted, in which case it must be released once processed.
+   */
+  public boolean tryAcquire(Operation operation)
+  {
+    var counter = inFlight[operation.ordinal()];
+    var limit = limits[operation.ordinal()];
+
+    while (true)
+    {
+      var current = counter.get();
+      if (current >= limit)
+      {
+        return false;
+      }
+      if (counter.compareAndSet(current, current + 1))
+      {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param operation The operation of an admitted request, now processed.
+   */
+  public void release(Operation operation)
+  {
+    inFlight[operation.ordinal()].decrementAndGet();
+  }
+
+  /**
+   * @param operation An operation.
+   * @return The number of requests of the operation being processed.
+   */
+  public int getInFlight(Operation operation)
+  {
+    return inFlight[operation.ordinal()].get();
+  }
+}
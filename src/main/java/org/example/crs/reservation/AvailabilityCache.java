@@ -0,0 +1,216 @@
+package org.example.crs.reservation;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import lombok.Value;
+
+import org.example.crs.reservation.command.param.Availability;
+
+/**
+ * Keeps the last computed availabilities by checked window, evicting the least recently used ones.
+ *
+ * A window is only depending on its own nights, so a change of nights only invalidates the windows
+ * overlapping them. A computation running while nights change is not cached, as it may have read
+ * the nights before the change.
+ *
+ * Concurrent misses of the same window share a single computation (single-flight), as long as no
+ * nights changed in between: a lookup made after a change never gets a computation started before.
+ */
+public class AvailabilityCache
+{
+  @Value
+  private static class Window
+  {
+    long from;
+    long to;
+    int minFree;
+  }
+
+  /**
+   * A computation of a window, started at a given version.
+   */
+  @Value
+  private static class Flight
+  {
+    Window window;
+    long version;
+  }
+
+  private final Map<Window, List<Availability>> windows;
+
+  private final Map<Flight, CompletableFuture<List<Availability>>> flights = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented on every invalidation.
+   */
+  private final AtomicLong version = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  /**
+   * @param capacity The maximum number of windows kept.
+   */
+  public AvailabilityCache(int capacity)
+  {
+    this.windows = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Window, List<Availability>> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @param compute Computes the availabilities of the window when they are not cached.
+   * @return The promise of the availabilities of the window, with at least one free pitch.
+   */
+  public CompletableFuture<List<Availability>> get(
+      LocalDate checkFrom,
+      LocalDate checkTo,
+      Supplier<List<Availability>> compute)
+  {
+    return get(checkFrom, checkTo, 1, compute);
+  }
+
+  /**
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @param minFree The number of free pitches wanted every night.
+   * @param compute Computes the availabilities of the window when they are not cached.
+   * @return The promise of the availabilities of the window.
+   */
+  public CompletableFuture<List<Availability>> get(
+      LocalDate checkFrom,
+      LocalDate checkTo,
+      int minFree,
+      Supplier<List<Availability>> compute)
+  {
+    var window = new Window(checkFrom.toEpochDay(), checkTo.toEpochDay(), minFree);
+
+    synchronized (windows)
+    {
+      var cached = windows.get(window);
+      if (cached != null)
+      {
+        hits.increment();
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+
+    var versionBefore = version.get();
+
+    // joins the computation of the same window if one is running since the last change
+    var flight = new Flight(window, versionBefore);
+    var promise = new CompletableFuture<List<Availability>>();
+    var running = flights.putIfAbsent(flight, promise);
+    if (running != null)
+    {
+      coalesced.increment();
+      return running;
+    }
+
+    misses.increment();
+
+    try
+    {
+      var availabilities = List.copyOf(compute.get());
+
+      synchronized (windows)
+      {
+        // invalidations are done under the lock too, so none can happen between the check and the put
+        if (version.get() == versionBefore)
+        {
+          windows.put(window, availabilities);
+        }
+      }
+
+      promise.complete(availabilities);
+    }
+    catch (RuntimeException ex)
+    {
+      promise.completeExceptionally(ex);
+    }
+    finally
+    {
+      flights.remove(flight, promise);
+    }
+
+    return promise;
+  }
+
+  /**
+   * Forgets the windows overlapping some nights.
+   *
+   * @param from The epoch-day of the first night changed.
+   * @param to The epoch-day after the last night changed.
+   */
+  public void invalidate(long from, long to)
+  {
+    synchronized (windows)
+    {
+      version.incrementAndGet();
+      windows.keySet().removeIf(window -> window.getFrom() < to && from < window.getTo());
+    }
+  }
+
+  /**
+   * Forgets every window.
+   */
+  public void clear()
+  {
+    synchronized (windows)
+    {
+      version.incrementAndGet();
+      windows.clear();
+    }
+  }
+
+  /**
+   * @return The number of windows cached.
+   */
+  public int size()
+  {
+    synchronized (windows)
+    {
+      return windows.size();
+    }
+  }
+
+  /**
+   * @return The number of lookups answered from the cache.
+   */
+  public long getHits()
+  {
+    return hits.sum();
+  }
+
+  /**
+   * @return The number of lookups which had to compute the availabilities.
+   */
+  public long getMisses()
+  {
+    return misses.sum();
+  }
+
+  /**
+   * @return The number of lookups which joined a computation already running.
+   */
+  public long getCoalesced()
+  {
+    return coalesced.sum();
+  }
+}
@@ -0,0 +1,268 @@
+package org.example.crs.reservation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import org.example.crs.reservation.command.ReservationCommands.Command;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+
+/**
+ * Forwards the commands of every campsite to the registries of its partition.
+ *
+ * The registries of a campsite are spawned on its first command, and stopped once it has not
+ * received any for a while (passivation). A passivated campsite keeps its reservations, which only
+ * live in its repository, but drops its cached availabilities; its registries are spawned again on
+ * its next command.
+ *
+ * The registries of a campsite are only spawned again once the previous ones are terminated: the
+ * commands received meanwhile are kept, then forwarded to the new ones. An event-sourced registry
+ * then never runs next to its predecessor, writing the same events.
+ */
+public class CampsiteRegistry extends AbstractBehavior<Command>
+{
+  /**
+   * A command for the registries of a campsite.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  public static class CampsiteCommand implements Command
+  {
+    private final String campsiteId;
+    private final Command command;
+  }
+
+  /**
+   * Tells the registry to passivate the idle campsites.
+   */
+  private static enum Passivate implements Command
+  {
+    INSTANCE
+  }
+
+  /**
+   * Tells the registry the registries of a campsite are terminated.
+   */
+  @RequiredArgsConstructor
+  private static class RegistryTerminated implements Command
+  {
+    private final String campsiteId;
+  }
+
+  @RequiredArgsConstructor
+  private static class Partition
+  {
+    private final ActorRef<Command> registry;
+
+    /**
+     * The System.nanoTime() value when the partition received its last command.
+     */
+    private long lastCommand;
+
+    /**
+     * If its registries are being stopped.
+     */
+    private boolean stopping;
+
+    /**
+     * The commands received while stopping, for the next registries.
+     */
+    private final List<Command> pending = new ArrayList<>();
+  }
+
+  private final Campsites campsites;
+
+  /**
+   * Creates the registries of a campsite, given its id and service.
+   */
+  private final BiFunction<String, ReservationService, Behavior<Command>> registries;
+
+  private final long passivateAfterNanos;
+
+  /**
+   * The campsites whose registries are running (or stopping), by id.
+   */
+  private final Map<String, Partition> partitions = new HashMap<>();
+
+  /**
+   * Incremented for every spawn, so registries being stopped never clash with their successor.
+   */
+  private long incarnations;
+
+  /**
+   * @param context The context, given by the Behavior.setup() call.
+   * @param campsites The campsites served.
+   * @param registries Creates the registries of a campsite, given its id and service.
+   * @param passivateAfter How long a campsite can stay without commands before being passivated.
+   */
+  public CampsiteRegistry(
+      ActorContext<Command> context,
+      Campsites campsites,
+      BiFunction<String, ReservationService, Behavior<Command>> registries,
+      Duration passivateAfter)
+  {
+    super(context);
+    this.campsites = campsites;
+    this.registries = registries;
+    this.passivateAfterNanos = passivateAfter.toNanos();
+  }
+
+  /**
+   * The builder we use the create this actor, with a pool of registries for each campsite.
+   *
+   * @param campsites The campsites served.
+   * @param poolSize The number of registries of each campsite.
+   * @param passivateAfter How long a campsite can stay without commands before being passivated.
+   * @return The actor which forwards the commands to the registries of the campsites.
+   */
+  public static Behavior<Command> create(Campsites campsites, int poolSize, Duration passivateAfter)
+  {
+    return create(campsites, (id, service) -> ReservationRegistry.pool(service, poolSize), passivateAfter);
+  }
+
+  /**
+   * The builder we use the create this actor.
+   *
+   * @param campsites The campsites served.
+   * @param registries Creates the registries of a campsite, given its id and service.
+   * @param passivateAfter How long a campsite can stay without commands before being passivated.
+   * @return The actor which forwards the commands to the registries of the campsites.
+   */
+  public static Behavior<Command> create(
+      Campsites campsites,
+      BiFunction<String, ReservationService, Behavior<Command>> registries,
+      Duration passivateAfter)
+  {
+    return Behaviors.setup(ctx -> Behaviors.withTimers(timers ->
+    {
+      // an idle campsite is passivated between 1 and 1.5 times the delay after its last command
+      timers.startTimerWithFixedDelay(Passivate.INSTANCE, passivateAfter.dividedBy(2));
+
+      return new CampsiteRegistry(ctx, campsites, registries, passivateAfter);
+    }));
+  }
+
+  /**
+   * @return The events receiver.
+   */
+  @Override
+  public Receive<Command> createReceive()
+  {
+    return newReceiveBuilder()
+        .onMessage(CampsiteCommand.class, this::onCampsiteCommand)
+        .onMessageEquals(Passivate.INSTANCE, this::onPassivate)
+        .onMessage(RegistryTerminated.class, this::onRegistryTerminated)
+        .build();
+  }
+
+  /**
+   * Forwards a command to the registries of its campsite, spawning them if needed.
+   *
+   * @param command The campsite command.
+   * @return The current actor.
+   */
+  private Behavior<Command> onCampsiteCommand(CampsiteCommand command)
+  {
+    var id = command.getCampsiteId();
+
+    var partition = partitions.get(id);
+    if (partition == null)
+    {
+      partition = spawn(id);
+    }
+    else if (partition.stopping)
+    {
+      partition.pending.add(command.getCommand());
+      return this;
+    }
+
+    partition.lastCommand = System.nanoTime();
+    partition.registry.tell(command.getCommand());
+
+    return this;
+  }
+
+  /**
+   * Stops the registries of the campsites without commands for a while.
+   *
+   * @return The current actor.
+   */
+  private Behavior<Command> onPassivate()
+  {
+    var now = System.nanoTime();
+
+    for (var entry : partitions.entrySet())
+    {
+      var partition = entry.getValue();
+      if (partition.stopping || now - partition.lastCommand < passivateAfterNanos)
+      {
+        continue;
+      }
+
+      getContext().stop(partition.registry);
+      campsites.service(entry.getKey()).passivate();
+      partition.stopping = true;
+
+      getContext().getLog().info("Campsite {} passivated", entry.getKey());
+    }
+
+    return this;
+  }
+
+  /**
+   * Forgets the registries of a campsite once terminated, and spawns new ones if commands arrived
+   * meanwhile.
+   *
+   * @param terminated The termination message.
+   * @return The current actor.
+   */
+  private Behavior<Command> onRegistryTerminated(RegistryTerminated terminated)
+  {
+    var id = terminated.campsiteId;
+
+    var partition = partitions.remove(id);
+    if (!partition.stopping)
+    {
+      getContext().getLog().warn("Registries of campsite {} terminated unexpectedly", id);
+    }
+
+    if (!partition.pending.isEmpty())
+    {
+      var next = spawn(id);
+      next.lastCommand = System.nanoTime();
+      partition.pending.forEach(next.registry::tell);
+    }
+
+    return this;
+  }
+
+  /**
+   * @param id The campsite id.
+   * @return The new partition, with its registries running.
+   */
+  private Partition spawn(String id)
+  {
+    var registry = getContext().spawn(
+        registries.apply(id, campsites.service(id)), "campsite-" + id + "-" + ++incarnations);
+    getContext().watchWith(registry, new RegistryTerminated(id));
+
+    var partition = new Partition(registry);
+    partitions.put(id, partition);
+
+    getContext().getLog().info("Campsite {} activated", id);
+
+    return partition;
+  }
+}
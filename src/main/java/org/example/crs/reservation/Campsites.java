@@ -0,0 +1,84 @@
+package org.example.crs.reservation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The campsites served by the node, each one with its own partition: its own reservations, occupancy
+ * calendar and availability cache, behind its own service.
+ *
+ * Only the campsites declared up front can be served, but their partition is only created on their
+ * first use, so a node can declare many campsites and only pay for the ones actually requested.
+ * Partitions never share anything but the metrics, so requests on different campsites never
+ * contend with each other.
+ */
+public class Campsites
+{
+  /**
+   * Campsite ids are part of the URLs and of the actor names.
+   */
+  private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private final Set<String> ids;
+
+  /**
+   * Creates the service of a campsite partition, given its id.
+   */
+  private final Function<String, ReservationService> factory;
+
+  private final Map<String, ReservationService> services = new ConcurrentHashMap<>();
+
+  /**
+   * @param ids The ids of the campsites served.
+   * @param factory Creates the service of a campsite partition, given its id.
+   */
+  public Campsites(Collection<String> ids, Function<String, ReservationService> factory)
+  {
+    for (var id : ids)
+    {
+      if (!ID_PATTERN.matcher(id).matches())
+      {
+        throw new IllegalArgumentException("Invalid campsite id: " + id);
+      }
+    }
+
+    this.ids = Set.copyOf(ids);
+    this.factory = factory;
+  }
+
+  /**
+   * @param id The campsite id.
+   * @return If the campsite is served.
+   */
+  public boolean exists(String id)
+  {
+    return ids.contains(id);
+  }
+
+  /**
+   * @param id The campsite id.
+   * @return The service of the campsite partition, created on first use.
+   * @throws IllegalArgumentException In case the campsite is not served.
+   */
+  public ReservationService service(String id)
+  {
+    if (!exists(id))
+    {
+      throw new IllegalArgumentException("Unknown campsite: " + id);
+    }
+
+    return services.computeIfAbsent(id, factory);
+  }
+
+  /**
+   * @return The number of campsite partitions created so far.
+   */
+  public int size()
+  {
+    return services.size();
+  }
+}
@@ -0,0 +1,65 @@
+package org.example.crs.reservation;
+
+import java.time.Duration;
+
+import lombok.Value;
+
+import com.typesafe.config.Config;
+
+/**
+ * How a registry groups the creations it receives, so they are booked by the repository in a single
+ * pass (see ReservationRepository.createAll()) rather than one by one.
+ */
+@Value
+public class CreateBatching
+{
+  /**
+   * Every creation is booked on its own.
+   */
+  public static final CreateBatching NONE = new CreateBatching(Duration.ZERO, 1);
+
+  /**
+   * How long a batch waits for more creations after its first one. Without any delay, a batch takes
+   * the creations already waiting in the mailbox of the registry, without waiting for more.
+   */
+  private Duration window;
+
+  /**
+   * The maximum number of creations of a batch, which is booked right away once full.
+   */
+  private int maxSize;
+
+  /**
+   * @param window How long a batch waits for more creations after its first one.
+   * @param maxSize The maximum number of creations of a batch, one to not batch them.
+   */
+  public CreateBatching(Duration window, int maxSize)
+  {
+    if (window.isNegative() || maxSize < 1)
+    {
+      throw new IllegalArgumentException("Invalid create batching: " + window + ", " + maxSize);
+    }
+
+    this.window = window;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param config The application configuration.
+   * @return The batching configured in the registry.create_batch block.
+   */
+  public static CreateBatching fromConfig(Config config)
+  {
+    return new CreateBatching(
+        config.getDuration("registry.create_batch.window"),
+        config.getInt("registry.create_batch.max_size"));
+  }
+
+  /**
+   * @return If the creations are grouped at all.
+   */
+  public boolean isEnabled()
+  {
+    return maxSize > 1;
+  }
+}
@@ -0,0 +1,461 @@
+package org.example.crs.reservation;
+
+import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
+import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
+import static org.example.crs.reservation.ReservationMapRepository.bookedPeriod;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CANCEL;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CREATE;
+import static org.example.crs.reservation.ReservationMetrics.Operation.UPDATE;
+import static org.example.crs.reservation.ReservationRegistry.populateResponseErrorFields;
+import static org.example.crs.reservation.exception.ReservationException.notAvailable;
+import static org.example.crs.reservation.exception.ReservationException.notReactivableWithoutPeriod;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.validateReservationPeriod;
+
+import java.util.ArrayList;
+
+import org.example.crs.reservation.ReservationMetrics.Operation;
+import org.example.crs.reservation.command.ReservationCommands.CancelReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.command.ReservationCommands.CommandResponse;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
+import org.example.crs.reservation.event.ReservationEvents.Event;
+import org.example.crs.reservation.event.ReservationEvents.ReservationCanceled;
+import org.example.crs.reservation.event.ReservationEvents.ReservationCreated;
+import org.example.crs.reservation.event.ReservationEvents.ReservationUpdated;
+import org.example.crs.reservation.event.ReservationEvents.ReservationsSnapshot;
+import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
+import org.example.crs.reservation.exception.ReservationException;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.http.javadsl.model.StatusCodes;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.RecoveryCompleted;
+import akka.persistence.typed.SnapshotAdapter;
+import akka.persistence.typed.javadsl.CommandHandler;
+import akka.persistence.typed.javadsl.Effect;
+import akka.persistence.typed.javadsl.EventHandler;
+import akka.persistence.typed.javadsl.EventSourcedBehavior;
+import akka.persistence.typed.javadsl.RetentionCriteria;
+import akka.persistence.typed.javadsl.SignalHandler;
+
+/**
+ * A registry which persists every change of the reservations as an event, before replying.
+ *
+ * It is the only writer of its repository, a memory only ReservationMapRepository which is the state
+ * of the behavior: a write is checked against the occupancy calendar, persisted in the journal, then
+ * applied to the repository by the event handler, one command at a time. On start, the repository is
+ * recovered from the latest snapshot and the events persisted after it.
+ *
+ * Reads do not change anything, they are forwarded to a plain registry sharing the same service.
+ *
+ * There must be a single registry per persistence id, so it does not go through a pool.
+ */
+public class EventSourcedReservationRegistry extends EventSourcedBehavior<Command, Event, ReservationMapRepository>
+{
+  /**
+   * Number of snapshots kept, older ones are deleted.
+   */
+  private static final int KEEP_NB_SNAPSHOTS = 2;
+
+  private final ActorContext<Command> context;
+
+  private final ReservationService service;
+
+  /**
+   * The state of the registry, only written by the event handler.
+   */
+  private final ReservationMapRepository repository;
+
+  /**
+   * Number of events between two snapshots.
+   */
+  private final int snapshotEvery;
+
+  /**
+   * Answers the reads, from the same service.
+   */
+  private final ActorRef<Command> reader;
+
+  /**
+   * @param context The context, given by the Behavior.setup() call.
+   * @param persistenceId The id of the events of the registry, in the journal.
+   * @param service The reservations service, over the repository.
+   * @param repository The repository of the registry, memory only.
+   * @param snapshotEvery Number of events between two snapshots.
+   */
+  public EventSourcedReservationRegistry(
+      ActorContext<Command> context,
+      PersistenceId persistenceId,
+      ReservationService service,
+      ReservationMapRepository repository,
+      int snapshotEvery)
+  {
+    super(persistenceId);
+    this.context = context;
+    this.service = service;
+    this.repository = repository;
+    this.snapshotEvery = snapshotEvery;
+    this.reader = context.spawn(ReservationRegistry.create(service), "reader");
+  }
+
+  /**
+   * The builder we use the create this actor.
+   *
+   * @param persistenceId The id of the events of the registry, in the journal.
+   * @param service The reservations service, over a memory only ReservationMapRepository not written
+   * by anything else.
+   * @param snapshotEvery Number of events between two snapshots.
+   * @return The actor which manages events received from routing.
+   * @throws IllegalArgumentException In case the service does not use a ReservationMapRepository.
+   */
+  public static Behavior<Command> create(String persistenceId, ReservationService service, int snapshotEvery)
+  {
+    if (!(service.getRepository() instanceof ReservationMapRepository))
+    {
+      throw new IllegalArgumentException("An event-sourced registry needs a map repository");
+    }
+
+    var repository = (ReservationMapRepository) service.getRepository();
+
+    return Behaviors.setup(ctx -> new EventSourcedReservationRegistry(
+        ctx, PersistenceId.ofUniqueId(persistenceId), service, repository, snapshotEvery));
+  }
+
+  @Override
+  public ReservationMapRepository emptyState()
+  {
+    return repository;
+  }
+
+  @Override
+  public CommandHandler<Command, Event, ReservationMapRepository> commandHandler()
+  {
+    return newCommandHandlerBuilder()
+        .forAnyState()
+        .onCommand(CreateReservationCmd.class, this::onCreateReservation)
+        .onCommand(CreateReservationsCmd.class, this::onCreateReservations)
+        .onCommand(UpdateReservationCmd.class, this::onUpdateReservation)
+        .onCommand(CancelReservationCmd.class, this::onCancelReservation)
+        .onCommand(GetReservationCmd.class, this::forwardToReader)
+        .onCommand(GetAvailabilitiesCmd.class, this::forwardToReader)
+        .build();
+  }
+
+  @Override
+  public EventHandler<ReservationMapRepository, Event> eventHandler()
+  {
+    return newEventHandlerBuilder()
+        .forAnyState()
+        .onEvent(ReservationCreated.class, (state, event) ->
+        {
+          state.restore(event.getReservation());
+          return state;
+        })
+        .onEvent(ReservationUpdated.class, (state, event) ->
+        {
+          state.restore(event.getReservation());
+          return state;
+        })
+        .onEvent(ReservationCanceled.class, (state, event) ->
+        {
+          state.findLive(event.getId()).ifPresent(r -> state.restore(r.withStatus(CANCELED)));
+          return state;
+        })
+        .build();
+  }
+
+  @Override
+  public SignalHandler<ReservationMapRepository> signalHandler()
+  {
+    return newSignalHandlerBuilder()
+        .onSignal(RecoveryCompleted.instance(), state ->
+        {
+          context.getLog().info("Registry {} recovered with {} reservations", persistenceId(), state.getLiveSize());
+        })
+        .build();
+  }
+
+  @Override
+  public RetentionCriteria retentionCriteria()
+  {
+    return RetentionCriteria.snapshotEvery(snapshotEvery, KEEP_NB_SNAPSHOTS);
+  }
+
+  /**
+   * The repository is not serializable as is, its reservations are.
+   */
+  @Override
+  public SnapshotAdapter<ReservationMapRepository> snapshotAdapter()
+  {
+    return new SnapshotAdapter<>()
+    {
+      @Override
+      public Object toJournal(ReservationMapRepository state)
+      {
+        return new ReservationsSnapshot(state.getLiveReservations());
+      }
+
+      @Override
+      public ReservationMapRepository fromJournal(Object snapshot)
+      {
+        ((ReservationsSnapshot) snapshot).getReservations().forEach(repository::restore);
+        return repository;
+      }
+    };
+  }
+
+  /**
+   * Handles when a user want to create a reservation.
+   *
+   * @param state The repository.
+   * @param command The create command.
+   * @return The effect: the creation persisted, or the error replied.
+   */
+  private Effect<Event, ReservationMapRepository> onCreateReservation(
+      ReservationMapRepository state,
+      CreateReservationCmd command)
+  {
+    var start = System.nanoTime();
+    var body = command.getBody();
+
+    try
+    {
+      validateReservationPeriod(body);
+
+      if (!state.getOccupancyCalendar().isFree(body))
+      {
+        throw notAvailable();
+      }
+    }
+    catch (ReservationAvailabilityCheckException | ReservationException ex)
+    {
+      return replyError(new CreateReservationResponse(), command.getReplyTo(), ex, CREATE, start);
+    }
+
+    var reservation = Reservation.fromCreate(body).withId(state.nextId());
+
+    return Effect().persist(new ReservationCreated(reservation)).thenReply(command.getReplyTo(), __ ->
+    {
+      var response = new CreateReservationResponse();
+      response.setReservation(reservation);
+      response.setStatus(StatusCodes.CREATED);
+
+      service.getMetrics().recordCommand(CREATE, start);
+      return response;
+    });
+  }
+
+  /**
+   * Handles a batch of creations (an import): the available ones are persisted at once.
+   *
+   * @param state The repository.
+   * @param command The batch create command.
+   * @return The effect: the creations persisted, and the responses replied.
+   */
+  private Effect<Event, ReservationMapRepository> onCreateReservations(
+      ReservationMapRepository state,
+      CreateReservationsCmd command)
+  {
+    var start = System.nanoTime();
+    var calendar = state.getOccupancyCalendar();
+
+    var events = new ArrayList<Event>();
+    var booked = new ArrayList<Reservation>();
+    var responses = new ArrayList<CreateReservationResponse>();
+
+    for (var body : command.getBodies())
+    {
+      var response = new CreateReservationResponse();
+      responses.add(response);
+
+      try
+      {
+        validateReservationPeriod(body);
+
+        // occupied meanwhile, so the next ones of the batch see these nights taken
+        if (!calendar.tryOccupy(body))
+        {
+          throw notAvailable();
+        }
+      }
+      catch (ReservationAvailabilityCheckException | ReservationException ex)
+      {
+        populateResponseErrorFields(response, ex);
+        continue;
+      }
+
+      var reservation = Reservation.fromCreate(body).withId(state.nextId());
+      booked.add(reservation);
+      events.add(new ReservationCreated(reservation));
+
+      response.setReservation(reservation);
+      response.setStatus(StatusCodes.CREATED);
+    }
+
+    // the event handler occupies them again
+    booked.forEach(calendar::release);
+
+    var response = new CreateReservationsResponse();
+    response.setResponses(responses);
+
+    var effect = events.isEmpty() ? Effect().none() : Effect().persist(events);
+
+    return effect.thenReply(command.getReplyTo(), __ ->
+    {
+      for (var i = 0; i < responses.size(); i++)
+      {
+        service.getMetrics().recordCommand(CREATE, start);
+      }
+      return response;
+    });
+  }
+
+  /**
+   * Handles when a user want to update a reservation.
+   *
+   * @param state The repository.
+   * @param command The update command.
+   * @return The effect: the update persisted, or the error replied.
+   */
+  private Effect<Event, ReservationMapRepository> onUpdateReservation(
+      ReservationMapRepository state,
+      UpdateReservationCmd command)
+  {
+    var start = System.nanoTime();
+    var body = command.getBody();
+
+    var maybeReservation = state.findLive(command.getId());
+    if (maybeReservation.isEmpty())
+    {
+      return replyNotFound(new UpdateReservationResponse(), command.getReplyTo(), UPDATE, start);
+    }
+
+    var reservation = maybeReservation.get();
+
+    try
+    {
+      // same rules than the service: a reactivation must come with a period to check
+      if (!body.isPeriodUpdate())
+      {
+        if (body.getStatus().isPresent() && body.getStatus().get() == ACTIVE)
+        {
+          throw notReactivableWithoutPeriod();
+        }
+      }
+      else
+      {
+        validateReservationPeriod(createPeriod(body));
+      }
+
+      var calendar = state.getOccupancyCalendar();
+      var current = bookedPeriod(reservation);
+      var next = bookedPeriod(reservation, body);
+      if (next.isPresent() && !(current.isPresent()
+          ? calendar.isFree(next.get(), current.get())
+          : calendar.isFree(next.get())))
+      {
+        throw notAvailable();
+      }
+    }
+    catch (ReservationAvailabilityCheckException | ReservationException ex)
+    {
+      return replyError(new UpdateReservationResponse(), command.getReplyTo(), ex, UPDATE, start);
+    }
+
+    var updated = reservation.applyUpdate(body);
+
+    return Effect().persist(new ReservationUpdated(updated)).thenReply(command.getReplyTo(), __ ->
+    {
+      var response = new UpdateReservationResponse();
+      response.setReservation(updated);
+
+      service.getMetrics().recordCommand(UPDATE, start);
+      return response;
+    });
+  }
+
+  /**
+   * Handles when a user want to cancel a reservation.
+   *
+   * @param state The repository.
+   * @param command The cancel command.
+   * @return The effect: the cancellation persisted, or the reply.
+   */
+  private Effect<Event, ReservationMapRepository> onCancelReservation(
+      ReservationMapRepository state,
+      CancelReservationCmd command)
+  {
+    var start = System.nanoTime();
+
+    var maybeReservation = state.findLive(command.getId());
+    if (maybeReservation.isEmpty())
+    {
+      return replyNotFound(new CancelReservationResponse(), command.getReplyTo(), CANCEL, start);
+    }
+
+    var canceled = maybeReservation.get().withStatus(CANCELED);
+
+    var response = new CancelReservationResponse();
+    response.setReservation(canceled);
+
+    // nothing to persist when it is already canceled
+    var effect = maybeReservation.get().getStatus() == CANCELED
+        ? Effect().none()
+        : Effect().persist(new ReservationCanceled(command.getId()));
+
+    return effect.thenReply(command.getReplyTo(), __ ->
+    {
+      service.getMetrics().recordCommand(CANCEL, start);
+      return response;
+    });
+  }
+
+  /**
+   * @param state The repository.
+   * @param command A read command.
+   * @return The effect: nothing, the reader replies.
+   */
+  private Effect<Event, ReservationMapRepository> forwardToReader(ReservationMapRepository state, Command command)
+  {
+    reader.tell(command);
+
+    return Effect().none();
+  }
+
+  private <R extends CommandResponse> Effect<Event, ReservationMapRepository> replyError(
+      R response,
+      ActorRef<R> replyTo,
+      Exception ex,
+      Operation operation,
+      long start)
+  {
+    populateResponseErrorFields(response, ex);
+    service.getMetrics().recordCommand(operation, start);
+
+    return Effect().reply(replyTo, response);
+  }
+
+  private <R extends CommandResponse> Effect<Event, ReservationMapRepository> replyNotFound(
+      R response,
+      ActorRef<R> replyTo,
+      Operation operation,
+      long start)
+  {
+    response.setStatus(StatusCodes.NOT_FOUND);
+    service.getMetrics().recordCommand(operation, start);
+
+    return Effect().reply(replyTo, response);
+  }
+}
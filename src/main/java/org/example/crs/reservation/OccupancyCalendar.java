@@ -0,0 +1,651 @@
+package org.example.crs.reservation;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+import org.example.crs.reservation.command.param.Availability;
+import org.example.crs.reservation.utils.EpochDayPeriod;
+import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
+
+/**
+ * Keeps the number of pitches occupied by active reservations, per night, out of the capacity of
+ * the campsite (its number of pitches).
+ *
+ * Nights are keyed by epoch-day inside a ring of NB_NIGHTS slots starting today. Nights outside of
+ * the ring are considered free (no reservation can be made that far), and past nights are cleared
+ * as days roll over.
+ *
+ * The counts are the leaves of a segment tree keeping the max and the min count of every range of
+ * slots, so checking that a period has a free pitch every night, or finding the next night with
+ * (or without) enough free pitches, takes a logarithmic time whatever the number of nights. Windows
+ * wrapping around the end of the ring are split in two ranges of slots.
+ *
+ * Every change of nights (tryOccupy, tryMove, occupy, release) locks only the stripes of the nights
+ * involved, so bookings for nights that do not overlap never wait for each other. The tree itself is
+ * never locked: every node is a versioned count, and after a change of the counts below it, it is
+ * refreshed twice with a compare-and-set from its children. When both refreshes fail, a concurrent
+ * one succeeded after the change and took it into account.
+ *
+ * A check under the stripes only reads the nodes covering the locked nights, so it is exact. The
+ * other queries (isFree, getAvailabilities) read the counts as they are, while the bookings go on.
+ *
+ * Listeners are told about every change of nights, right after it happened.
+ */
+public class OccupancyCalendar
+{
+  /**
+   * Listens to the changes of the calendar.
+   */
+  @FunctionalInterface
+  public static interface NightsListener
+  {
+    /**
+     * Called after some nights have been occupied or released.
+     *
+     * @param from The epoch-day of the first night changed.
+     * @param to The epoch-day after the last night changed.
+     */
+    void nightsChanged(long from, long to);
+  }
+
+  /**
+   * Number of nights tracked from today. Must be a power of two.
+   */
+  public static final int NB_NIGHTS = 1024;
+
+  private static final int SLOT_MASK = NB_NIGHTS - 1;
+
+  /**
+   * Number of night locks. One per bit of a long, so a set of stripes fits in a single mask.
+   */
+  private static final int NB_STRIPES = Long.SIZE;
+
+  /**
+   * Max and min counts of the slots: node 1 is the root, the children of node i are 2i and 2i + 1,
+   * and the count of slot s is the leaf NB_NIGHTS + s (in 'max' only). Every node holds a version in
+   * its high bits, so a compare-and-set never succeeds over a count changed meanwhile.
+   */
+  private final AtomicLongArray max = new AtomicLongArray(2 * NB_NIGHTS);
+  private final AtomicLongArray min = new AtomicLongArray(NB_NIGHTS);
+
+  private final ReentrantLock[] stripes = IntStream.range(0, NB_STRIPES)
+      .mapToObj(i -> new ReentrantLock())
+      .toArray(ReentrantLock[]::new);
+
+  private final List<NightsListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * The number of pitches of the campsite.
+   */
+  private volatile int capacity;
+
+  /**
+   * The epoch-day of the first tracked night (today, once rolled).
+   */
+  private volatile long firstNight = LocalDate.now().toEpochDay();
+
+  /**
+   * Creates the calendar of a campsite with a single pitch.
+   */
+  public OccupancyCalendar()
+  {
+    this(1);
+  }
+
+  /**
+   * @param capacity The number of pitches of the campsite.
+   */
+  public OccupancyCalendar(int capacity)
+  {
+    this.capacity = requirePositive(capacity);
+  }
+
+  /**
+   * @return The number of pitches of the campsite.
+   */
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Changes the number of pitches of the campsite. The nights already occupied stay so, even when
+   * they now exceed the capacity.
+   *
+   * @param capacity The number of pitches of the campsite.
+   */
+  public void setCapacity(int capacity)
+  {
+    this.capacity = requirePositive(capacity);
+
+    var first = firstNight;
+    notifyListeners(first, first + NB_NIGHTS);
+  }
+
+  /**
+   * @param listener A listener to tell about the changes of nights.
+   */
+  public void addListener(NightsListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Occupies one more pitch every night of a period (even when there is none left).
+   *
+   * @param period The reservation period.
+   */
+  public void occupy(ReservationPeriod period)
+  {
+    apply(period, 1);
+  }
+
+  /**
+   * Frees one pitch every night of a period.
+   *
+   * @param period The reservation period.
+   */
+  public void release(ReservationPeriod period)
+  {
+    apply(period, -1);
+  }
+
+  /**
+   * Atomically checks that a pitch is free every night of a period and occupies it.
+   *
+   * @param period The reservation period.
+   * @return If a pitch was free every night, and is now occupied.
+   */
+  public boolean tryOccupy(ReservationPeriod period)
+  {
+    return tryMove(Optional.empty(), Optional.of(period));
+  }
+
+  /**
+   * Atomically moves a reservation from its current nights to new ones. A pitch must be free every
+   * new night (the pitch of the reservation is considered as such on its current nights).
+   *
+   * @param current The nights currently occupied by the reservation, if any.
+   * @param next The nights the reservation wants to occupy, if any.
+   * @return If the move has been done.
+   */
+  public boolean tryMove(Optional<ReservationPeriod> current, Optional<ReservationPeriod> next)
+  {
+    var locked = lockStripes(current, next);
+    try
+    {
+      if (next.isPresent())
+      {
+        var isFree = current
+            .map(c -> isFree(next.get(), c))
+            .orElseGet(() -> isFree(next.get()));
+        if (!isFree)
+        {
+          return false;
+        }
+      }
+
+      roll();
+
+      // the new nights first, so readers may see the reservation twice for a moment, never nowhere
+      next.ifPresent(n -> update(arrivalOf(n), departureOf(n), 1));
+      current.ifPresent(c -> update(arrivalOf(c), departureOf(c), -1));
+
+      next.ifPresent(n -> notifyListeners(arrivalOf(n), departureOf(n)));
+      current.ifPresent(c -> notifyListeners(arrivalOf(c), departureOf(c)));
+
+      return true;
+    }
+    finally
+    {
+      unlockStripes(locked);
+    }
+  }
+
+  /**
+   * @param period The period to check.
+   * @return If a pitch is free every night of the period.
+   */
+  public boolean isFree(ReservationPeriod period)
+  {
+    return isFree(arrivalOf(period), departureOf(period), 0, 0);
+  }
+
+  /**
+   * @param period The period to check.
+   * @param ignored A period whose pitch must be considered as free (e.g. the current period of a
+   * reservation we want to move).
+   * @return If a pitch is free every night of the period, ignoring the pitch of the ignored period.
+   */
+  public boolean isFree(ReservationPeriod period, ReservationPeriod ignored)
+  {
+    return isFree(arrivalOf(period), departureOf(period), arrivalOf(ignored), departureOf(ignored));
+  }
+
+  /**
+   * Extracts the periods with at least one free pitch every night between two dates.
+   *
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @return The list of availabilities found, or an empty list.
+   */
+  public List<Availability> getAvailabilities(LocalDate checkFrom, LocalDate checkTo)
+  {
+    return getAvailabilities(checkFrom, checkTo, 1);
+  }
+
+  /**
+   * Extracts the periods with at least a number of free pitches every night between two dates. Each
+   * period found costs a couple of tree descents, the nights in between are never visited.
+   *
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @param minFree The number of free pitches wanted every night.
+   * @return The list of availabilities found, with the pitches still free every of their nights,
+   * or an empty list.
+   */
+  public List<Availability> getAvailabilities(LocalDate checkFrom, LocalDate checkTo, int minFree)
+  {
+    roll();
+
+    var from = checkFrom.toEpochDay();
+    var to = checkTo.toEpochDay();
+
+    var pitches = capacity;
+    var threshold = pitches - minFree;
+
+    var availabilities = new ArrayList<Availability>();
+    if (threshold < 0)
+    {
+      return availabilities;
+    }
+
+    var day = from;
+    while (day < to)
+    {
+      var runStart = findNight(day, to, threshold, false);
+      if (runStart >= to)
+      {
+        break;
+      }
+
+      var runEnd = findNight(runStart, to, threshold, true);
+      availabilities.add(EpochDayPeriod.toAvailability(runStart, runEnd, pitches - maxOf(runStart, runEnd)));
+
+      day = runEnd;
+    }
+
+    return availabilities;
+  }
+
+  private boolean isFree(long from, long to, long ignoreFrom, long ignoreTo)
+  {
+    roll();
+
+    from = clampFrom(from);
+    to = clampTo(to);
+
+    var pitches = capacity;
+    var ignoredFrom = Math.max(from, ignoreFrom);
+    var ignoredTo = Math.min(to, ignoreTo);
+
+    if (ignoredFrom >= ignoredTo)
+    {
+      return maxOf(from, to) < pitches;
+    }
+
+    // the nights of the ignored period count one pitch less
+    return maxOf(from, ignoredFrom) < pitches &&
+        maxOf(ignoredFrom, ignoredTo) <= pitches &&
+        maxOf(ignoredTo, to) < pitches;
+  }
+
+  /**
+   * Adds a number of occupied pitches to the nights of a period, under their stripes, then tells the
+   * listeners.
+   */
+  private void apply(ReservationPeriod period, int delta)
+  {
+    var locked = lockStripes(Optional.of(period), Optional.empty());
+    try
+    {
+      roll();
+      update(arrivalOf(period), departureOf(period), delta);
+    }
+    finally
+    {
+      unlockStripes(locked);
+    }
+
+    notifyListeners(arrivalOf(period), departureOf(period));
+  }
+
+  /**
+   * Adds a number of occupied pitches to the nights [from, to) inside the ring, never going below
+   * zero, then refreshes their ancestors.
+   */
+  private void update(long from, long to, int delta)
+  {
+    from = clampFrom(from);
+    to = clampTo(to);
+    if (from >= to)
+    {
+      return;
+    }
+
+    for (var day = from; day < to; day++)
+    {
+      max.updateAndGet(NB_NIGHTS + slotOf(day), leaf -> versioned(leaf, Math.max(0, countOf(leaf) + delta)));
+    }
+
+    var slot = slotOf(from);
+    var end = slot + (int) (to - from);
+    if (end <= NB_NIGHTS)
+    {
+      refreshAncestors(slot, end);
+    }
+    else
+    {
+      refreshAncestors(slot, NB_NIGHTS);
+      refreshAncestors(0, end - NB_NIGHTS);
+    }
+  }
+
+  /**
+   * Refreshes the ancestors of the slots [from, to), level by level up to the root.
+   */
+  private void refreshAncestors(int from, int to)
+  {
+    var first = (NB_NIGHTS + from) >>> 1;
+    var last = (NB_NIGHTS + to - 1) >>> 1;
+    for (; first > 0; first >>>= 1, last >>>= 1)
+    {
+      for (var node = first; node <= last; node++)
+      {
+        // a refresh may fail because of a concurrent one which read the children before our change,
+        // but then the second one starts after it
+        refresh(node);
+        refresh(node);
+      }
+    }
+  }
+
+  /**
+   * Sets the max and the min counts of a node from its children, unless they changed meanwhile.
+   */
+  private void refresh(int node)
+  {
+    var maxNode = max.get(node);
+    max.compareAndSet(node, maxNode, versioned(maxNode, Math.max(maxAt(2 * node), maxAt(2 * node + 1))));
+
+    var minNode = min.get(node);
+    min.compareAndSet(node, minNode, versioned(minNode, Math.min(minAt(2 * node), minAt(2 * node + 1))));
+  }
+
+  private int maxAt(int node)
+  {
+    return countOf(max.get(node));
+  }
+
+  private int minAt(int node)
+  {
+    // the leaves are only kept in the max tree
+    return countOf(node >= NB_NIGHTS ? max.get(node) : min.get(node));
+  }
+
+  /**
+   * @return The next version of a node, with a new count.
+   */
+  private static long versioned(long node, int count)
+  {
+    return (((node >>> 32) + 1) << 32) | (count & 0xffffffffL);
+  }
+
+  private static int countOf(long node)
+  {
+    return (int) node;
+  }
+
+  private void notifyListeners(long from, long to)
+  {
+    from = clampFrom(from);
+    to = clampTo(to);
+    if (from < to)
+    {
+      for (var listener : listeners)
+      {
+        listener.nightsChanged(from, to);
+      }
+    }
+  }
+
+  /**
+   * @return The max count of the nights [from, to), zero outside of the ring.
+   */
+  private int maxOf(long from, long to)
+  {
+    from = clampFrom(from);
+    to = clampTo(to);
+    if (from >= to)
+    {
+      return 0;
+    }
+
+    var slot = slotOf(from);
+    var end = slot + (int) (to - from);
+    if (end <= NB_NIGHTS)
+    {
+      return maxOfSlots(slot, end);
+    }
+
+    return Math.max(maxOfSlots(slot, NB_NIGHTS), maxOfSlots(0, end - NB_NIGHTS));
+  }
+
+  /**
+   * @return The max count of the slots [from, to), going up the tree from both ends.
+   */
+  private int maxOfSlots(int from, int to)
+  {
+    var result = 0;
+    for (from += NB_NIGHTS, to += NB_NIGHTS; from < to; from >>>= 1, to >>>= 1)
+    {
+      if ((from & 1) == 1)
+      {
+        result = Math.max(result, maxAt(from++));
+      }
+      if ((to & 1) == 1)
+      {
+        result = Math.max(result, maxAt(--to));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Finds the first night of [from, to) whose count is above a threshold (or at most the threshold
+   * when 'above' is false). The nights outside of the ring count zero.
+   *
+   * @return The epoch-day of the night found, or 'to' if none.
+   */
+  private long findNight(long from, long to, int threshold, boolean above)
+  {
+    var first = firstNight;
+    var last = first + NB_NIGHTS;
+
+    if (from < first)
+    {
+      if (!above)
+      {
+        return from;
+      }
+      from = first;
+    }
+    if (from >= to)
+    {
+      return to;
+    }
+    if (from >= last)
+    {
+      return above ? to : from;
+    }
+
+    var end = Math.min(to, last);
+    var slot = slotOf(from);
+    var endSlot = slot + (int) (end - from);
+
+    var found = firstSlot(1, 0, NB_NIGHTS, slot, Math.min(endSlot, NB_NIGHTS), threshold, above);
+    if (found >= 0)
+    {
+      return from + (found - slot);
+    }
+    if (endSlot > NB_NIGHTS)
+    {
+      found = firstSlot(1, 0, NB_NIGHTS, 0, endSlot - NB_NIGHTS, threshold, above);
+      if (found >= 0)
+      {
+        return from + (NB_NIGHTS - slot) + found;
+      }
+    }
+
+    // after the ring, every night is free
+    return above ? to : end;
+  }
+
+  /**
+   * Descends the tree, skipping the nodes whose counts are all on the wrong side of the threshold.
+   *
+   * @return The first slot of [from, to) found under the node covering [nodeFrom, nodeTo), or -1.
+   */
+  private int firstSlot(int node, int nodeFrom, int nodeTo, int from, int to, int threshold, boolean above)
+  {
+    if (nodeTo <= from || to <= nodeFrom || (above ? maxAt(node) <= threshold : minAt(node) > threshold))
+    {
+      return -1;
+    }
+    if (node >= NB_NIGHTS)
+    {
+      return nodeFrom;
+    }
+
+    var middle = (nodeFrom + nodeTo) >>> 1;
+    var found = firstSlot(2 * node, nodeFrom, middle, from, to, threshold, above);
+
+    return found >= 0 ? found : firstSlot(2 * node + 1, middle, nodeTo, from, to, threshold, above);
+  }
+
+  /**
+   * Locks the stripes of every night of the periods, in ascending stripe order.
+   *
+   * @return The mask of the locked stripes.
+   */
+  private long lockStripes(Optional<ReservationPeriod> current, Optional<ReservationPeriod> next)
+  {
+    var mask = current.map(OccupancyCalendar::stripesOf).orElse(0L) |
+        next.map(OccupancyCalendar::stripesOf).orElse(0L);
+
+    for (var remaining = mask; remaining != 0; remaining &= remaining - 1)
+    {
+      stripes[Long.numberOfTrailingZeros(remaining)].lock();
+    }
+
+    return mask;
+  }
+
+  private void unlockStripes(long mask)
+  {
+    for (var remaining = mask; remaining != 0; remaining &= remaining - 1)
+    {
+      stripes[Long.numberOfTrailingZeros(remaining)].unlock();
+    }
+  }
+
+  /**
+   * @return The mask of the stripes guarding the nights of a period.
+   */
+  private static long stripesOf(ReservationPeriod period)
+  {
+    var from = arrivalOf(period);
+    var to = Math.min(departureOf(period), from + NB_STRIPES);
+
+    var mask = 0L;
+    for (var day = from; day < to; day++)
+    {
+      mask |= 1L << (day & (NB_STRIPES - 1));
+    }
+
+    return mask;
+  }
+
+  /**
+   * Clears the nights that are now past, so their slots can be reused by the next ones.
+   */
+  private void roll()
+  {
+    var today = LocalDate.now().toEpochDay();
+    if (today <= firstNight)
+    {
+      return;
+    }
+
+    synchronized (this)
+    {
+      var first = firstNight;
+      if (today <= first)
+      {
+        return;
+      }
+
+      var to = Math.min(today, first + NB_NIGHTS);
+      for (var day = first; day < to; day++)
+      {
+        max.updateAndGet(NB_NIGHTS + slotOf(day), leaf -> versioned(leaf, 0));
+        refreshAncestors(slotOf(day), slotOf(day) + 1);
+      }
+      notifyListeners(first, to);
+
+      firstNight = today;
+    }
+  }
+
+  private long clampFrom(long day)
+  {
+    return Math.max(day, firstNight);
+  }
+
+  private long clampTo(long day)
+  {
+    return Math.min(day, firstNight + NB_NIGHTS);
+  }
+
+  private static int requirePositive(int capacity)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("A campsite has at least one pitch: " + capacity);
+    }
+
+    return capacity;
+  }
+
+  private static int slotOf(long day)
+  {
+    return (int) (day & SLOT_MASK);
+  }
+
+  private static long arrivalOf(ReservationPeriod period)
+  {
+    return period.getArrivalDate().toEpochDay();
+  }
+
+  private static long departureOf(ReservationPeriod period)
+  {
+    return period.getDepartureDate().toEpochDay();
+  }
+}
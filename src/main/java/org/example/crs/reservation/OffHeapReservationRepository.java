@@ -0,0 +1,423 @@
+package org.example.crs.reservation;
+
+import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
+import static org.example.crs.reservation.ReservationMapRepository.bookedPeriod;
+import static org.example.crs.reservation.exception.ReservationException.notAvailable;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.example.crs.reservation.Reservation.ReservationStatus;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.example.crs.reservation.storage.DepartureIndex;
+import org.example.crs.reservation.storage.StringRegion;
+import org.example.crs.reservation.storage.UuidIndex;
+
+/**
+ * Implements the reservations repository interface off the Java heap, for a large number of
+ * reservations kept in memory.
+ *
+ * Every reservation is a fixed-width record in direct buffers, by pages of RECORDS_PER_PAGE: id (2
+ * longs), arrival and departure (epoch-days, 2 ints), client email and name (2 references in an
+ * interned StringRegion), status (1 byte), padded to RECORD_SIZE. Ids are mapped to record numbers by
+ * a primitive UuidIndex. The heap only holds the index arrays, whatever the number of reservations,
+ * and Reservation objects are only created when they are read.
+ *
+ * Writes are applied under an exclusive lock (a record is written by several puts), reads share it.
+ * The nights are booked in the occupancy calendar as in the map repository. The active records are
+ * also indexed by departure, so a scan from a date only reads the records departing at this date or
+ * after, SCAN_CHUNK records per read lock: the writes go on during a long scan.
+ *
+ * The reservations are only kept in memory.
+ *
+ * @see the ReservationRepository interface for more documentation.
+ */
+public class OffHeapReservationRepository implements ReservationRepository
+{
+  private static final int RECORD_SIZE = 40;
+
+  private static final int PAGE_BITS = 16;
+  private static final int RECORDS_PER_PAGE = 1 << PAGE_BITS;
+
+  /**
+   * The number of records a scan reads under a single read lock.
+   */
+  private static final int SCAN_CHUNK = 1024;
+
+  /*
+   * Offsets inside a record.
+   */
+  private static final int MSB = 0;
+  private static final int LSB = 8;
+  private static final int ARRIVAL = 16;
+  private static final int DEPARTURE = 20;
+  private static final int EMAIL = 24;
+  private static final int NAME = 28;
+  private static final int STATUS = 32;
+
+  private static final ReservationStatus[] STATUSES = ReservationStatus.values();
+
+  private final List<ByteBuffer> pages = new ArrayList<>();
+
+  private final UuidIndex index = new UuidIndex(RECORDS_PER_PAGE);
+
+  private final StringRegion strings = new StringRegion();
+
+  /**
+   * The active records, by departure epoch-day.
+   */
+  private final DepartureIndex activeByDeparture = new DepartureIndex();
+
+  private int nbRecords;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final OccupancyCalendar occupancyCalendar = new OccupancyCalendar();
+
+  private final ReservationIdGenerator idGenerator;
+
+  /**
+   * The executor running the writes and the scans.
+   */
+  private final Executor executor;
+
+  /**
+   * Creates a repository with time-ordered ids.
+   *
+   * @param executor The executor running the writes and the scans.
+   */
+  public OffHeapReservationRepository(Executor executor)
+  {
+    this(ReservationIdGenerator.timeOrdered(), executor);
+  }
+
+  /**
+   * @param idGenerator The generator of the new reservation ids.
+   * @param executor The executor running the writes and the scans.
+   */
+  public OffHeapReservationRepository(ReservationIdGenerator idGenerator, Executor executor)
+  {
+    this.idGenerator = idGenerator;
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletableFuture<Reservation> create(ReservationCreateBody body)
+  {
+    return CompletableFuture.supplyAsync(() ->
+    {
+      // the nights are booked first, so two overlapping creations can not both succeed
+      if (!occupancyCalendar.tryOccupy(body))
+      {
+        throw new CompletionException(notAvailable());
+      }
+
+      var reservation = Reservation.fromCreate(body).withId(idGenerator.next());
+
+      lock.writeLock().lock();
+      try
+      {
+        var record = nbRecords;
+        if (record == pages.size() * RECORDS_PER_PAGE)
+        {
+          pages.add(ByteBuffer.allocateDirect(RECORDS_PER_PAGE * RECORD_SIZE));
+        }
+
+        write(record, reservation);
+        index.put(reservation.getId().getMostSignificantBits(), reservation.getId().getLeastSignificantBits(), record);
+        activeByDeparture.add((int) reservation.getDepartureDate().toEpochDay(), record);
+        nbRecords++;
+      }
+      catch (RuntimeException | Error ex)
+      {
+        // the record is not counted, so it is overwritten by the next creation
+        occupancyCalendar.release(body);
+        throw ex;
+      }
+      finally
+      {
+        lock.writeLock().unlock();
+      }
+
+      return reservation;
+    }, executor);
+  }
+
+  @Override
+  public CompletableFuture<Optional<Reservation>> update(UUID id, ReservationUpdateBody body)
+  {
+    return CompletableFuture.supplyAsync(() ->
+    {
+      lock.writeLock().lock();
+      try
+      {
+        var record = recordOf(id);
+        if (record == UuidIndex.NONE)
+        {
+          return Optional.<Reservation>empty();
+        }
+
+        var reservation = read(record);
+
+        // moved while holding the lock, so concurrent updates are applied one after the other
+        if (!occupancyCalendar.tryMove(bookedPeriod(reservation), bookedPeriod(reservation, body)))
+        {
+          throw new CompletionException(notAvailable());
+        }
+
+        var updated = reservation.applyUpdate(body);
+        try
+        {
+          write(record, updated);
+        }
+        catch (RuntimeException | Error ex)
+        {
+          // the record may be partially written, and the previous version interned its strings already
+          write(record, reservation);
+          bookedPeriod(updated).ifPresent(occupancyCalendar::release);
+          bookedPeriod(reservation).ifPresent(occupancyCalendar::occupy);
+          throw ex;
+        }
+
+        if (reservation.getStatus() == ACTIVE)
+        {
+          activeByDeparture.remove((int) reservation.getDepartureDate().toEpochDay(), record);
+        }
+        if (updated.getStatus() == ACTIVE)
+        {
+          activeByDeparture.add((int) updated.getDepartureDate().toEpochDay(), record);
+        }
+
+        return Optional.of(updated);
+      }
+      finally
+      {
+        lock.writeLock().unlock();
+      }
+    }, executor);
+  }
+
+  @Override
+  public CompletableFuture<Optional<Reservation>> findById(UUID id)
+  {
+    // a single record read is cheaper than handing it over to another thread
+    lock.readLock().lock();
+    try
+    {
+      var record = recordOf(id);
+
+      return CompletableFuture.completedFuture(record == UuidIndex.NONE
+          ? Optional.empty()
+          : Optional.of(read(record)));
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public CompletableFuture<List<Reservation>> findFrom(LocalDate startAt)
+  {
+    return findFromExcept(startAt, Optional.empty());
+  }
+
+  @Override
+  public CompletableFuture<List<Reservation>> findFromExcept(
+      LocalDate startAt,
+      Optional<UUID> ignoreId)
+  {
+    var start = (int) startAt.toEpochDay();
+
+    return CompletableFuture.supplyAsync(() ->
+    {
+      int[] records;
+
+      lock.readLock().lock();
+      try
+      {
+        records = activeByDeparture.from(start);
+      }
+      finally
+      {
+        lock.readLock().unlock();
+      }
+
+      var found = new ArrayList<Reservation>(records.length);
+      for (var chunk = 0; chunk < records.length; chunk += SCAN_CHUNK)
+      {
+        lock.readLock().lock();
+        try
+        {
+          for (var i = chunk; i < Math.min(chunk + SCAN_CHUNK, records.length); i++)
+          {
+            var page = pageOf(records[i]);
+            var offset = offsetOf(records[i]);
+
+            // the record may have been canceled or moved since the index was read
+            if (page.get(offset + STATUS) != ACTIVE.ordinal() || page.getInt(offset + DEPARTURE) < start)
+            {
+              continue;
+            }
+
+            var reservation = read(records[i]);
+            if (ignoreId.isEmpty() || !ignoreId.get().equals(reservation.getId()))
+            {
+              found.add(reservation);
+            }
+          }
+        }
+        finally
+        {
+          lock.readLock().unlock();
+        }
+      }
+
+      return found;
+    }, executor);
+  }
+
+  @Override
+  public CompletableFuture<Optional<Reservation>> cancel(UUID id)
+  {
+    return update(id, ReservationUpdateBody.builder()
+        .status(Optional.of(ReservationStatus.CANCELED))
+        .build());
+  }
+
+  /**
+   * The read lock is only taken to read each record, so the writes go on during the iteration.
+   */
+  @Override
+  public Iterator<Reservation> iterator()
+  {
+    return new Iterator<>()
+    {
+      private int record;
+
+      @Override
+      public boolean hasNext()
+      {
+        return record < size();
+      }
+
+      @Override
+      public Reservation next()
+      {
+        lock.readLock().lock();
+        try
+        {
+          if (record >= nbRecords)
+          {
+            throw new NoSuchElementException();
+          }
+
+          return read(record++);
+        }
+        finally
+        {
+          lock.readLock().unlock();
+        }
+      }
+    };
+  }
+
+  @Override
+  public OccupancyCalendar getOccupancyCalendar()
+  {
+    return occupancyCalendar;
+  }
+
+  /**
+   * @return The number of reservations stored.
+   */
+  public int size()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return nbRecords;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The number of off-heap bytes reserved for the records and the strings.
+   */
+  public long getOffHeapBytes()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return (long) pages.size() * RECORDS_PER_PAGE * RECORD_SIZE + strings.sizeInBytes();
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int recordOf(UUID id)
+  {
+    return index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+  }
+
+  /**
+   * Writes a reservation in a record. Must be called with the write lock.
+   */
+  private void write(int record, Reservation reservation)
+  {
+    var page = pageOf(record);
+    var offset = offsetOf(record);
+
+    page.putLong(offset + MSB, reservation.getId().getMostSignificantBits())
+        .putLong(offset + LSB, reservation.getId().getLeastSignificantBits())
+        .putInt(offset + ARRIVAL, (int) reservation.getArrivalDate().toEpochDay())
+        .putInt(offset + DEPARTURE, (int) reservation.getDepartureDate().toEpochDay())
+        .putInt(offset + EMAIL, strings.intern(reservation.getClientEmail()))
+        .putInt(offset + NAME, strings.intern(reservation.getClientName()))
+        .put(offset + STATUS, (byte) reservation.getStatus().ordinal());
+  }
+
+  /**
+   * Reads the reservation of a record. Must be called with the read (or the write) lock.
+   */
+  private Reservation read(int record)
+  {
+    var page = pageOf(record);
+    var offset = offsetOf(record);
+
+    return Reservation.builder()
+        .id(new UUID(page.getLong(offset + MSB), page.getLong(offset + LSB)))
+        .arrivalDate(LocalDate.ofEpochDay(page.getInt(offset + ARRIVAL)))
+        .departureDate(LocalDate.ofEpochDay(page.getInt(offset + DEPARTURE)))
+        .clientEmail(strings.get(page.getInt(offset + EMAIL)))
+        .clientName(strings.get(page.getInt(offset + NAME)))
+        .status(STATUSES[page.get(offset + STATUS)])
+        .build();
+  }
+
+  private ByteBuffer pageOf(int record)
+  {
+    return pages.get(record >>> PAGE_BITS);
+  }
+
+  private static int offsetOf(int record)
+  {
+    return (record & (RECORDS_PER_PAGE - 1)) * RECORD_SIZE;
+  }
+}
@@ -5,28 +5,32 @@ import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
 import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
 
 import java.time.LocalDate;
-import java.time.Period;
 import java.util.UUID;
 import java.util.function.Predicate;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
+import lombok.With;
 
 import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
 import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 /**
  * Describes a Reservation.
+ *
+ * Reservations are immutable: an update creates a new version, which replaces the previous one.
+ * They can be shared between threads and read without any lock, a reader never sees half of an
+ * update.
  */
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
+@Value
+@With
+@Builder(toBuilder = true)
+@JsonDeserialize(builder = Reservation.ReservationBuilder.class)
 public class Reservation implements ReservationPeriod
 {
   public static enum ReservationStatus
@@ -50,13 +54,18 @@ public class Reservation implements ReservationPeriod
   @Builder.Default
   private ReservationStatus status = ACTIVE;
 
+  @JsonPOJOBuilder(withPrefix = "")
+  public static class ReservationBuilder
+  {
+  }
+
   /**
    * @return The number of days of the reservation.
    */
   @JsonIgnore
   public int getNbDays()
   {
-    return Period.between(arrivalDate, departureDate).getDays();
+    return (int) (departureDate.toEpochDay() - arrivalDate.toEpochDay());
   }
 
   /**
@@ -77,15 +86,16 @@ public class Reservation implements ReservationPeriod
    * Applies optional updates on a reservation.
    *
    * @param body The reservation update body.
-   * @return The current reservation, updated.
+   * @return A new version of the reservation, updated. The current one is left untouched.
    */
   public Reservation applyUpdate(ReservationUpdateBody body)
   {
-    body.getArrivalDate().ifPresent(this::setArrivalDate);
-    body.getDepartureDate().ifPresent(this::setDepartureDate);
-    body.getStatus().ifPresent(this::setStatus);
+    var updated = toBuilder();
+    body.getArrivalDate().ifPresent(updated::arrivalDate);
+    body.getDepartureDate().ifPresent(updated::departureDate);
+    body.getStatus().ifPresent(updated::status);
 
-    return this;
+    return updated.build();
   }
 
   /**
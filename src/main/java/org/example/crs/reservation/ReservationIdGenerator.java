@@ -0,0 +1,53 @@
+package org.example.crs.reservation;
+
+import java.util.UUID;
+
+/**
+ * Generates the ids of the new reservations.
+ *
+ * Implementations must be safe to call from several threads at once, and must never return the
+ * same id twice.
+ */
+@FunctionalInterface
+public interface ReservationIdGenerator
+{
+  /**
+   * @return A new reservation id.
+   */
+  UUID next();
+
+  /**
+   * @return A generator of time-ordered ids (UUID version 7).
+   * @see TimeOrderedIdGenerator
+   */
+  static ReservationIdGenerator timeOrdered()
+  {
+    return new TimeOrderedIdGenerator();
+  }
+
+  /**
+   * @return A generator of random ids (UUID version 4), drawn from a shared SecureRandom.
+   */
+  static ReservationIdGenerator random()
+  {
+    return UUID::randomUUID;
+  }
+
+  /**
+   * @param name The name of a generator: "time-ordered" or "random".
+   * @return The corresponding generator.
+   * @throws IllegalArgumentException In case the name is unknown.
+   */
+  static ReservationIdGenerator named(String name)
+  {
+    switch (name)
+    {
+      case "time-ordered":
+        return timeOrdered();
+      case "random":
+        return random();
+      default:
+        throw new IllegalArgumentException("Unknown reservation id generator: " + name);
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package org.example.crs.reservation;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.Json.OBJECT_MAPPER;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.validateReservationPeriod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsResponse;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.command.param.ReservationImportResult;
+import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
+import org.example.crs.reservation.exception.ReservationException;
+
+import akka.NotUsed;
+import akka.http.javadsl.model.StatusCodes;
+import akka.japi.Pair;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.typesafe.config.Config;
+
+/**
+ * Imports reservations streamed as lines, and streams back the result of each line.
+ *
+ * The lines are read as they arrive, then parsed and validated in parallel. The valid ones are
+ * booked by batches: each batch is sorted by arrival date, then booked in that order by the
+ * registries in a single command. The report gives the result of every line, in the order of the
+ * file. Every stage is backpressured: a slow booking (or a slow client reading the report) slows the
+ * reading of the file down, which is never loaded entirely.
+ */
+@Value
+public class ReservationImport
+{
+  /**
+   * The formats of the imported lines.
+   */
+  public static enum Format
+  {
+    /**
+     * A JSON create body per line.
+     */
+    NDJSON,
+
+    /**
+     * clientEmail,clientName,arrivalDate,departureDate per line (the fields can not contain a comma),
+     * with an optional header line.
+     */
+    CSV
+  }
+
+  public static final String INVALID_LINE_MESSAGE = "Invalid line";
+
+  public static final String NOT_BOOKED_MESSAGE = "The reservation could not be booked, please retry";
+
+  public static final String UNKNOWN_OUTCOME_MESSAGE =
+      "The registries did not reply in time, the reservation may have been booked: check it before retrying";
+
+  private static final ByteString NEW_LINE = ByteString.fromString("\n");
+
+  private static final String CSV_HEADER = "clientEmail";
+
+  private static final int NB_CSV_FIELDS = 4;
+
+  /**
+   * A line of the file, once parsed and validated.
+   */
+  @RequiredArgsConstructor
+  private static class ImportLine
+  {
+    private final long line;
+
+    /**
+     * The create body, if the line is valid.
+     */
+    private final ReservationCreateBody body;
+
+    /**
+     * The result of the line, when it is invalid.
+     */
+    private final ReservationImportResult error;
+  }
+
+  /**
+   * The number of lines parsed and validated at the same time.
+   */
+  private int parallelism;
+
+  /**
+   * The number of reservations booked by a single command.
+   */
+  private int batchSize;
+
+  /**
+   * The maximum length of a line, in bytes; a longer one fails the import.
+   */
+  private int maxLineBytes;
+
+  /**
+   * @param parallelism The number of lines parsed and validated at the same time.
+   * @param batchSize The number of reservations booked by a single command.
+   * @param maxLineBytes The maximum length of a line, in bytes.
+   */
+  public ReservationImport(int parallelism, int batchSize, int maxLineBytes)
+  {
+    if (parallelism < 1 || batchSize < 1 || maxLineBytes < 1)
+    {
+      throw new IllegalArgumentException("Invalid import: " + parallelism + ", " + batchSize + ", " + maxLineBytes);
+    }
+
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+    this.maxLineBytes = maxLineBytes;
+  }
+
+  /**
+   * @param config The application configuration.
+   * @return The import configured in the import block.
+   */
+  public static ReservationImport fromConfig(Config config)
+  {
+    return new ReservationImport(
+        config.getInt("import.parallelism"),
+        config.getInt("import.batch_size"),
+        Math.toIntExact(config.getBytes("import.max_line_size")));
+  }
+
+  /**
+   * @param format The format of the lines.
+   * @param createAll Books the bodies of a batch, in the given order, replying a response per body.
+   * @param executor Runs the parsing and the validation of the lines.
+   * @return The flow from the bytes of the file to the bytes of the report, one JSON result per line.
+   */
+  public Flow<ByteString, ByteString, NotUsed> flow(
+      Format format,
+      Function<List<ReservationCreateBody>, CompletionStage<CreateReservationsResponse>> createAll,
+      Executor executor)
+  {
+    return Flow.of(ByteString.class)
+        .via(Framing.delimiter(NEW_LINE, maxLineBytes, FramingTruncation.ALLOW))
+        .zipWithIndex()
+        .map(numbered -> Pair.create(numbered.second() + 1, numbered.first().utf8String().strip()))
+        .filter(numbered -> !isSkipped(format, numbered.first(), numbered.second()))
+        .mapAsync(parallelism, numbered -> CompletableFuture.supplyAsync(() ->
+            parse(format, numbered.first(), numbered.second()), executor))
+        .grouped(batchSize)
+        .mapAsync(1, batch -> book(batch, createAll))
+        .mapConcat(results -> results)
+        .map(ReservationImport::toJsonLine);
+  }
+
+  /**
+   * @param format The format of the line.
+   * @param number The number of the line.
+   * @param text The line, without its spaces around.
+   * @return If there is nothing to import from the line: a blank line, or the header.
+   */
+  private static boolean isSkipped(Format format, long number, String text)
+  {
+    return text.isEmpty() || (format == Format.CSV && number == 1 && text.startsWith(CSV_HEADER));
+  }
+
+  /**
+   * @param format The format of the line.
+   * @param number The number of the line.
+   * @param text The line, without its spaces around.
+   * @return The line parsed and validated.
+   */
+  private static ImportLine parse(Format format, long number, String text)
+  {
+    try
+    {
+      var body = format == Format.CSV
+          ? parseCsv(text)
+          : OBJECT_MAPPER.readValue(text, ReservationCreateBody.class);
+
+      if (body.getClientEmail() == null || body.getClientName() == null ||
+          body.getArrivalDate() == null || body.getDepartureDate() == null)
+      {
+        return invalid(number, INVALID_LINE_MESSAGE);
+      }
+
+      validateReservationPeriod(body);
+
+      return new ImportLine(number, body, null);
+    }
+    catch (ReservationAvailabilityCheckException | ReservationException ex)
+    {
+      return invalid(number, ex.getLocalizedMessage());
+    }
+    catch (IOException | RuntimeException ex)
+    {
+      return invalid(number, INVALID_LINE_MESSAGE);
+    }
+  }
+
+  /**
+   * @param text The CSV line.
+   * @return The create body.
+   * @throws IllegalArgumentException In case the line does not have the expected fields.
+   */
+  private static ReservationCreateBody parseCsv(String text)
+  {
+    var fields = text.split(",", -1);
+    if (fields.length != NB_CSV_FIELDS)
+    {
+      throw new IllegalArgumentException(INVALID_LINE_MESSAGE);
+    }
+
+    return ReservationCreateBody.builder()
+        .clientEmail(fields[0].strip())
+        .clientName(fields[1].strip())
+        .arrivalDate(LocalDate.parse(fields[2].strip()))
+        .departureDate(LocalDate.parse(fields[3].strip()))
+        .build();
+  }
+
+  private static ImportLine invalid(long number, String message)
+  {
+    return new ImportLine(number, null, ReservationImportResult.builder()
+        .line(number)
+        .statusCode(StatusCodes.BAD_REQUEST.intValue())
+        .error(message)
+        .build());
+  }
+
+  /**
+   * Books the valid lines of a batch, by arrival date.
+   *
+   * When the command times out, the registries may still have booked the batch: its lines are
+   * reported with a 504, so that the client checks them instead of importing them twice. The other
+   * failures happen before the command is processed, its lines can be imported again (503).
+   *
+   * @param batch The lines of the batch, in the order of the file.
+   * @param createAll Books the bodies of a batch.
+   * @return The promise of the results of the lines, in the order of the file.
+   */
+  private static CompletionStage<List<ReservationImportResult>> book(
+      List<ImportLine> batch,
+      Function<List<ReservationCreateBody>, CompletionStage<CreateReservationsResponse>> createAll)
+  {
+    var valid = batch.stream()
+        .filter(line -> line.body != null)
+        .sorted(comparing(line -> line.body.getArrivalDate()))
+        .collect(toList());
+
+    if (valid.isEmpty())
+    {
+      return CompletableFuture.completedFuture(batch.stream().map(line -> line.error).collect(toList()));
+    }
+
+    var booked = createAll.apply(valid.stream().map(line -> line.body).collect(toList()));
+
+    return booked.handle((response, ex) ->
+    {
+      var cause = ex instanceof CompletionException ? ex.getCause() : ex;
+
+      var results = new HashMap<Long, ReservationImportResult>();
+      for (var i = 0; i < valid.size(); i++)
+      {
+        var number = valid.get(i).line;
+        var result = ReservationImportResult.builder().line(number);
+
+        if (cause instanceof TimeoutException)
+        {
+          result.statusCode(StatusCodes.GATEWAY_TIMEOUT.intValue()).error(UNKNOWN_OUTCOME_MESSAGE);
+        }
+        else if (cause != null)
+        {
+          result.statusCode(StatusCodes.SERVICE_UNAVAILABLE.intValue()).error(NOT_BOOKED_MESSAGE);
+        }
+        else
+        {
+          var created = response.getResponses().get(i);
+          result.statusCode(created.getStatusCode()).error(created.getError()).reservation(created.getReservation());
+        }
+
+        results.put(number, result.build());
+      }
+
+      return batch.stream()
+          .map(line -> line.error != null ? line.error : results.get(line.line))
+          .collect(toList());
+    });
+  }
+
+  private static ByteString toJsonLine(ReservationImportResult result)
+  {
+    try
+    {
+      return ByteString.fromArrayUnsafe(OBJECT_MAPPER.writeValueAsBytes(result)).concat(NEW_LINE);
+    }
+    catch (JsonProcessingException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
@@ -1,63 +1,389 @@
 package org.example.crs.reservation;
 
-import static java.util.function.Predicate.not;
 import static java.util.stream.Collectors.toList;
 import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
-import static org.example.crs.reservation.utils.PredicateUtils.alwaysTrue;
+import static org.example.crs.reservation.exception.ReservationException.notAvailable;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.example.crs.reservation.storage.ReservationArchive;
+import org.example.crs.reservation.storage.ReservationJournal;
+import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
 
 /**
  * Implements the reservations repository interface using a in-memory concurrent hash map.
  *
+ * Active reservations are also indexed by their departure date (as an epoch-day), so looking for
+ * reservations from a date only touches the ones finishing at this date or after, and never reads
+ * the canceled ones.
+ *
+ * Writes book their nights in the occupancy calendar atomically: a creation or an update whose
+ * nights are already taken fails with a ReservationException.
+ *
+ * In durable mode, every write is also appended to a journal, and completes once synced on disk.
+ * A write the journal refuses is not applied, and a write it fails to sync is reverted in memory.
+ *
+ * Reservations are immutable: an update swaps a new version in the map, so lookups and scans read
+ * consistent reservations without any lock, and can hand them out as they are.
+ *
+ * New reservations get their ids from a ReservationIdGenerator, time-ordered by default.
+ *
+ * With an archive, the reservations whose stay is over can be moved out of memory (see archive()).
+ * They are still found by id, read from the archive on the executor, but can not be updated anymore.
+ *
+ * Writes and scans run on the executor given at construction. Lookups by id only read the map, so
+ * they are answered right away on the calling thread.
+ *
  * @see the ReservationRepository interface for more documentation.
  */
 public class ReservationMapRepository implements ReservationRepository
 {
   private final Map<UUID, Reservation> reservations = new ConcurrentHashMap();
 
+  /**
+   * Ids of the active reservations, by departure epoch-day. The sets are immutable: the skip list may
+   * apply a remapping function more than once, so they are replaced rather than changed.
+   */
+  private final NavigableMap<Long, Set<UUID>> activeByDeparture = new ConcurrentSkipListMap<>();
+
+  private final OccupancyCalendar occupancyCalendar = new OccupancyCalendar();
+
+  /**
+   * The write-ahead log, in durable mode.
+   */
+  private final Optional<ReservationJournal> journal;
+
+  /**
+   * The versions which failed to reach the disk, with the versions they replaced (by identity).
+   */
+  private final Map<Reservation, Optional<Reservation>> failedWrites =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  /**
+   * Held (shared) by the writes from their journal append until they are applied in memory.
+   */
+  private final ReadWriteLock journaledWrites = new ReentrantReadWriteLock();
+
+  /**
+   * The executor running the writes and the scans.
+   */
+  private final Executor executor;
+
+  private final ReservationIdGenerator idGenerator;
+
+  /**
+   * The cold tier of the reservations whose stay is over, if any.
+   */
+  private final Optional<ReservationArchive> archive;
+
+  /**
+   * Creates a memory only repository, with time-ordered ids.
+   *
+   * @param executor The executor running the writes and the scans.
+   */
+  public ReservationMapRepository(Executor executor)
+  {
+    this(ReservationIdGenerator.timeOrdered(), executor);
+  }
+
+  /**
+   * Creates a memory only repository.
+   *
+   * @param idGenerator The generator of the new reservation ids.
+   * @param executor The executor running the writes and the scans.
+   */
+  public ReservationMapRepository(ReservationIdGenerator idGenerator, Executor executor)
+  {
+    this(Optional.empty(), Optional.empty(), idGenerator, executor);
+  }
+
+  /**
+   * Creates a memory only repository, archiving the reservations whose stay is over.
+   *
+   * @param archive The archive of the reservations.
+   * @param idGenerator The generator of the new reservation ids.
+   * @param executor The executor running the writes and the scans.
+   */
+  public ReservationMapRepository(ReservationArchive archive, ReservationIdGenerator idGenerator, Executor executor)
+  {
+    this(Optional.empty(), Optional.of(archive), idGenerator, executor);
+  }
+
+  /**
+   * Creates a durable repository: the reservations are restored from the journal, then every write
+   * is journaled and completes once it is on disk. New reservations get time-ordered ids.
+   *
+   * @param journal The reservations journal.
+   * @param executor The executor running the writes and the scans.
+   * @throws IOException In case the journal can not be replayed.
+   */
+  public ReservationMapRepository(ReservationJournal journal, Executor executor) throws IOException
+  {
+    this(journal, ReservationIdGenerator.timeOrdered(), executor);
+  }
+
+  /**
+   * Creates a durable repository: the reservations are restored from the journal, then every write
+   * is journaled and completes once it is on disk.
+   *
+   * @param journal The reservations journal.
+   * @param idGenerator The generator of the new reservation ids.
+   * @param executor The executor running the writes and the scans.
+   * @throws IOException In case the journal can not be replayed.
+   */
+  public ReservationMapRepository(
+      ReservationJournal journal,
+      ReservationIdGenerator idGenerator,
+      Executor executor) throws IOException
+  {
+    this(Optional.of(journal), Optional.empty(), idGenerator, executor);
+    journal.replay(this::restore);
+  }
+
+  /**
+   * Creates a durable repository, archiving the reservations whose stay is over.
+   *
+   * @param journal The reservations journal.
+   * @param archive The archive of the reservations.
+   * @param idGenerator The generator of the new reservation ids.
+   * @param executor The executor running the writes and the scans.
+   * @throws IOException In case the journal can not be replayed.
+   */
+  public ReservationMapRepository(
+      ReservationJournal journal,
+      ReservationArchive archive,
+      ReservationIdGenerator idGenerator,
+      Executor executor) throws IOException
+  {
+    this(Optional.of(journal), Optional.of(archive), idGenerator, executor);
+    journal.replay(this::restore);
+  }
+
+  private ReservationMapRepository(
+      Optional<ReservationJournal> journal,
+      Optional<ReservationArchive> archive,
+      ReservationIdGenerator idGenerator,
+      Executor executor)
+  {
+    this.journal = journal;
+    this.archive = archive;
+    this.idGenerator = idGenerator;
+    this.executor = executor;
+  }
+
   @Override
   public CompletableFuture<Reservation> create(ReservationCreateBody body)
   {
     return CompletableFuture.supplyAsync(() ->
     {
-      var id = UUID.randomUUID();
+      // the nights are booked first, so two overlapping creations can not both succeed
+      if (!occupancyCalendar.tryOccupy(body))
+      {
+        throw new CompletionException(notAvailable());
+      }
+
+      return book(body);
+    }, executor).thenCompose(reservation -> whenDurable(reservation, null));
+  }
 
-      var reservation = Reservation.fromCreate(body);
-      reservation.setId(id);
+  /**
+   * Records a creation whose nights are already occupied: journals it, then puts it in the map and
+   * in the index. In case anything fails, its changes are undone (its nights included).
+   *
+   * @param body The creation.
+   * @return The reservation created.
+   */
+  private Reservation book(ReservationCreateBody body)
+  {
+    try
+    {
+      var reservation = Reservation.fromCreate(body).withId(idGenerator.next());
 
-      reservations.put(id, reservation);
+      journaledWrites.readLock().lock();
+      try
+      {
+        // journaled before being applied, so a write refused by the journal is never seen
+        journal.ifPresent(j -> j.append(reservation));
+
+        reservations.put(reservation.getId(), reservation);
+        index(reservation);
+      }
+      catch (RuntimeException ex)
+      {
+        reservations.remove(reservation.getId(), reservation);
+        unindex(reservation);
+        throw ex;
+      }
+      finally
+      {
+        journaledWrites.readLock().unlock();
+      }
 
       return reservation;
+    }
+    catch (RuntimeException ex)
+    {
+      occupancyCalendar.release(body);
+      throw ex;
+    }
+  }
+
+  /**
+   * Books the whole batch in a single task of the executor, and waits for a single journal sync.
+   */
+  @Override
+  public List<CompletableFuture<Reservation>> createAll(List<ReservationCreateBody> bodies)
+  {
+    var results = new ArrayList<CompletableFuture<Reservation>>(bodies.size());
+    for (var i = 0; i < bodies.size(); i++)
+    {
+      results.add(new CompletableFuture<>());
+    }
+
+    CompletableFuture.runAsync(() ->
+    {
+      var created = new ArrayList<Reservation>(bodies.size());
+      for (var i = 0; i < bodies.size(); i++)
+      {
+        var body = bodies.get(i);
+
+        // booked in order, so a creation sees the nights taken by the previous ones of the batch
+        if (!occupancyCalendar.tryOccupy(body))
+        {
+          results.get(i).completeExceptionally(notAvailable());
+          created.add(null);
+          continue;
+        }
+
+        try
+        {
+          created.add(book(body));
+        }
+        catch (RuntimeException ex)
+        {
+          // only this creation fails, the previous ones of the batch are kept
+          results.get(i).completeExceptionally(ex);
+          created.add(null);
+        }
+      }
+
+      whenDurable(created).whenComplete((__, ex) ->
+      {
+        for (var i = 0; i < created.size(); i++)
+        {
+          if (created.get(i) == null)
+          {
+            continue;
+          }
+
+          if (ex != null)
+          {
+            revert(created.get(i), null);
+            results.get(i).completeExceptionally(ex);
+          }
+          else
+          {
+            results.get(i).complete(created.get(i));
+          }
+        }
+      });
+    }, executor).exceptionally(ex ->
+    {
+      results.forEach(r -> r.completeExceptionally(ex));
+      return null;
     });
+
+    return results;
   }
 
   @Override
   public CompletableFuture<Optional<Reservation>> update(UUID id, ReservationUpdateBody body)
   {
+    // the version replaced by the update, to put it back if the update does not reach the disk
+    var replaced = new Reservation[1];
+
     return CompletableFuture.supplyAsync(() ->
-        Optional.ofNullable(reservations.computeIfPresent(id, (__, reservation) ->
+    {
+      journaledWrites.readLock().lock();
+      try
+      {
+        return Optional.ofNullable(reservations.computeIfPresent(id, (__, reservation) ->
         {
-          // partial update on what we need to update only
-          return reservation.applyUpdate(body);
-        }))
-    );
+          // moves the booked nights while holding the reservation entry, so concurrent updates of
+          // the same reservation are applied one after the other
+          if (!occupancyCalendar.tryMove(bookedPeriod(reservation), bookedPeriod(reservation, body)))
+          {
+            throw new CompletionException(notAvailable());
+          }
+
+          // partial update on what we need to update only, as a new version swapped in by the map
+          var updated = reservation.applyUpdate(body);
+
+          // journaled while holding the entry, so the log keeps the order of the updates
+          try
+          {
+            journal.ifPresent(j -> j.append(updated));
+          }
+          catch (RuntimeException ex)
+          {
+            bookedPeriod(updated).ifPresent(occupancyCalendar::release);
+            bookedPeriod(reservation).ifPresent(occupancyCalendar::occupy);
+            throw ex;
+          }
+
+          unindex(reservation);
+          index(updated);
+
+          replaced[0] = reservation;
+          return updated;
+        }));
+      }
+      finally
+      {
+        journaledWrites.readLock().unlock();
+      }
+    }, executor).thenCompose(updated -> updated
+        .map(reservation -> whenDurable(reservation, replaced[0]).thenApply(Optional::of))
+        .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty())));
   }
 
   @Override
   public CompletableFuture<Optional<Reservation>> findById(UUID id)
   {
-    return CompletableFuture.supplyAsync(() -> Optional.ofNullable(reservations.get(id)));
+    // a single map read is cheaper than handing it over to another thread
+    var reservation = reservations.get(id);
+    if (reservation != null || archive.isEmpty())
+    {
+      return CompletableFuture.completedFuture(Optional.ofNullable(reservation));
+    }
+
+    // the archive reads from the disk
+    return CompletableFuture.supplyAsync(() ->
+        Optional.ofNullable(reservations.get(id)).or(() -> archive.get().findById(id)),
+        executor);
   }
 
   @Override
@@ -71,24 +397,42 @@ public class ReservationMapRepository implements ReservationRepository
       LocalDate startAt,
       Optional<UUID> ignoreId)
   {
-    // if ignoreId is not provided, the filter has not effect.
-    Predicate<Reservation> filterById = ignoreId.map(id ->
-        not((Reservation r) -> r.getId().equals(ignoreId.get()))
-    ).orElseGet(alwaysTrue());
-
-    Predicate<Reservation> filterByDate = not((r) -> r.getDepartureDate().isBefore(startAt));
+    var start = startAt.toEpochDay();
 
     return CompletableFuture.supplyAsync(() ->
-        reservations.values()
+        // taking only reservations with departure date greater or equal to startAt
+        activeByDeparture.tailMap(start, true)
+            .values()
             .stream()
+            .flatMap(Set::stream)
             // ignored reservation if necessary
-            .filter(filterById)
-            // taking only reservations with departure date greater or equal to startAt
-            .filter(filterByDate)
-            .collect(toList())
+            .filter(id -> ignoreId.isEmpty() || !ignoreId.get().equals(id))
+            .map(reservations::get)
+            // the reservation may have been updated since we read the index
+            .filter(Objects::nonNull)
+            .filter(r -> r.getStatus() != CANCELED && r.getDepartureDate().toEpochDay() >= start)
+            .distinct()
+            .collect(toList()),
+        executor
     );
   }
 
+  /**
+   * The archived reservations are not iterated.
+   */
+  @Override
+  public Iterator<Reservation> iterator()
+  {
+    // weakly consistent, never throws a ConcurrentModificationException
+    return reservations.values().iterator();
+  }
+
+  @Override
+  public OccupancyCalendar getOccupancyCalendar()
+  {
+    return occupancyCalendar;
+  }
+
   @Override
   public CompletableFuture<Optional<Reservation>> cancel(UUID id)
   {
@@ -96,4 +440,281 @@ public class ReservationMapRepository implements ReservationRepository
         .status(Optional.of(CANCELED))
         .build());
   }
+
+  /**
+   * Writes a snapshot of the reservations, so the journal can forget the writes before it. Does
+   * nothing for a memory only repository.
+   *
+   * @throws IOException In case the snapshot can not be written.
+   */
+  public synchronized void snapshot() throws IOException
+  {
+    if (journal.isPresent())
+    {
+      journal.get().snapshot(() ->
+      {
+        // waits for the writes journaled before the roll to be applied, so they are iterated
+        journaledWrites.writeLock().lock();
+        journaledWrites.writeLock().unlock();
+
+        return iterator();
+      });
+    }
+  }
+
+  /**
+   * Moves the reservations whose stay is over (active or canceled) to the archive, and forgets them.
+   * Does nothing without an archive.
+   *
+   * Canceled reservations whose stay is not over yet are kept, as they can still be reactivated. The
+   * reservations kept in memory are then bounded by the booking horizon.
+   *
+   * @param before The reservations whose departure is before this date are archived.
+   * @return The number of reservations archived.
+   * @throws IOException In case the archive (or the following snapshot) can not be written.
+   */
+  public synchronized int archive(LocalDate before) throws IOException
+  {
+    if (archive.isEmpty())
+    {
+      return 0;
+    }
+
+    var end = before.toEpochDay();
+    var over = reservations.values().stream()
+        .filter(r -> r.getDepartureDate().toEpochDay() < end)
+        .collect(toList());
+
+    if (over.isEmpty())
+    {
+      return 0;
+    }
+
+    // archived first, so a reservation is always found either in memory or in the archive
+    archive.get().append(over);
+
+    var nbArchived = 0;
+    for (var reservation : over)
+    {
+      // only this version: if it has been updated meanwhile, it stays in memory and is archived again
+      // next time
+      if (reservations.remove(reservation.getId(), reservation))
+      {
+        unindex(reservation);
+        nbArchived++;
+      }
+    }
+
+    // the journal must forget them too, or they would be restored on boot
+    snapshot();
+
+    return nbArchived;
+  }
+
+  /**
+   * @return The number of reservations kept in memory.
+   */
+  public int getLiveSize()
+  {
+    return reservations.size();
+  }
+
+  /**
+   * @return A copy of the reservations kept in memory.
+   */
+  List<Reservation> getLiveReservations()
+  {
+    return List.copyOf(reservations.values());
+  }
+
+  /**
+   * @param id The reservation id.
+   * @return The reservation kept in memory, if any (the archive is not read).
+   */
+  Optional<Reservation> findLive(UUID id)
+  {
+    return Optional.ofNullable(reservations.get(id));
+  }
+
+  /**
+   * @return A new reservation id, from the generator of the repository.
+   */
+  UUID nextId()
+  {
+    return idGenerator.next();
+  }
+
+  /**
+   * @return The archive of the reservations, if any.
+   */
+  public Optional<ReservationArchive> getArchive()
+  {
+    return archive;
+  }
+
+  /**
+   * Puts back a reservation read from the journal (or from the events of an event-sourced registry),
+   * without any availability check.
+   *
+   * @param reservation The reservation state to restore.
+   */
+  void restore(Reservation reservation)
+  {
+    reservations.compute(reservation.getId(), (__, previous) ->
+    {
+      if (previous != null)
+      {
+        unindex(previous);
+        bookedPeriod(previous).ifPresent(occupancyCalendar::release);
+      }
+
+      index(reservation);
+      bookedPeriod(reservation).ifPresent(occupancyCalendar::occupy);
+
+      return reservation;
+    });
+  }
+
+  /**
+   * @param result The result of a write.
+   * @return The promise of the result, completed once the write is on disk in durable mode.
+   */
+  private <T> CompletableFuture<T> whenDurable(T result)
+  {
+    return journal
+        .map(j -> j.sync().thenApply(__ -> result))
+        .orElseGet(() -> CompletableFuture.completedFuture(result));
+  }
+
+  /**
+   * @param written A reservation version, journaled but maybe not synced yet.
+   * @param replaced The version it replaced, or null for a creation.
+   * @return The promise of the written version, completed once it is on disk in durable mode.
+   * In case the journal fails to sync it, the write is reverted in memory.
+   */
+  private CompletableFuture<Reservation> whenDurable(Reservation written, Reservation replaced)
+  {
+    return whenDurable(written).whenComplete((__, ex) ->
+    {
+      if (ex != null)
+      {
+        revert(written, replaced);
+      }
+    });
+  }
+
+  /**
+   * Reverts a write which did not reach the disk.
+   *
+   * The journal stops at the first failed sync, so the reverted writes are the last ones of their
+   * reservations, but their callbacks may run in any order: the failed versions are kept, and the
+   * reservation goes back to the last version which is not one of them.
+   *
+   * @param written The version which is not durable.
+   * @param replaced The version it replaced, or null for a creation.
+   */
+  private void revert(Reservation written, Reservation replaced)
+  {
+    failedWrites.put(written, Optional.ofNullable(replaced));
+
+    reservations.compute(written.getId(), (__, current) ->
+    {
+      var reverted = current;
+      while (reverted != null && failedWrites.containsKey(reverted))
+      {
+        reverted = failedWrites.get(reverted).orElse(null);
+      }
+
+      if (reverted == current)
+      {
+        return current;
+      }
+
+      unindex(current);
+      bookedPeriod(current).ifPresent(occupancyCalendar::release);
+
+      if (reverted != null)
+      {
+        index(reverted);
+        bookedPeriod(reverted).ifPresent(occupancyCalendar::occupy);
+      }
+
+      return reverted;
+    });
+  }
+
+  /**
+   * @param reservation A reservation.
+   * @return The nights booked by the reservation, if it is active.
+   */
+  static Optional<ReservationPeriod> bookedPeriod(Reservation reservation)
+  {
+    // an immutable reservation is its own period, no need to copy it
+    return Reservation.activeOnly().test(reservation)
+        ? Optional.of(reservation)
+        : Optional.empty();
+  }
+
+  /**
+   * @param reservation A reservation.
+   * @param body An update of the reservation.
+   * @return The nights the reservation would book once updated, if it stays active.
+   */
+  static Optional<ReservationPeriod> bookedPeriod(Reservation reservation, ReservationUpdateBody body)
+  {
+    if (body.getStatus().orElse(reservation.getStatus()) == CANCELED)
+    {
+      return Optional.empty();
+    }
+
+    return Optional.of(createPeriod(
+        body.getArrivalDate().orElse(reservation.getArrivalDate()),
+        body.getDepartureDate().orElse(reservation.getDepartureDate())));
+  }
+
+  /**
+   * Adds a reservation in the departure index, if it is active.
+   *
+   * @param reservation The reservation to index.
+   */
+  private void index(Reservation reservation)
+  {
+    if (reservation.getStatus() == CANCELED)
+    {
+      return;
+    }
+
+    activeByDeparture.compute(reservation.getDepartureDate().toEpochDay(), (__, ids) ->
+    {
+      if (ids == null)
+      {
+        return Set.of(reservation.getId());
+      }
+
+      var added = new HashSet<>(ids);
+      added.add(reservation.getId());
+      return Collections.unmodifiableSet(added);
+    });
+  }
+
+  /**
+   * Removes a reservation from the departure index.
+   *
+   * @param reservation The reservation to remove, as it is currently indexed.
+   */
+  private void unindex(Reservation reservation)
+  {
+    // the empty sets are removed, so the index does not keep every past departure
+    activeByDeparture.computeIfPresent(reservation.getDepartureDate().toEpochDay(), (__, ids) ->
+    {
+      if (!ids.contains(reservation.getId()))
+      {
+        return ids;
+      }
+
+      var removed = new HashSet<>(ids);
+      removed.remove(reservation.getId());
+      return removed.isEmpty() ? null : Collections.unmodifiableSet(removed);
+    });
+  }
 }
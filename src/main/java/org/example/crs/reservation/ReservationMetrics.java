@@ -0,0 +1,207 @@
+package org.example.crs.reservation;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lombok.Getter;
+
+import org.example.crs.metrics.Counter;
+import org.example.crs.metrics.Histogram;
+import org.example.crs.metrics.MetricsRegistry;
+
+/**
+ * The metrics of the reservations: requests by operation and status code, requests shed, time spent
+ * in the registries and in the repository, and the availability cache statistics.
+ *
+ * Everything is registered up front (or the first time a status code is seen), so recording only
+ * increments adders.
+ */
+public class ReservationMetrics
+{
+  /**
+   * The operations measured.
+   */
+  public static enum Operation
+  {
+    CREATE, GET, UPDATE, CANCEL, AVAILABILITIES, EXPORT, IMPORT;
+
+    private final String label = name().toLowerCase();
+  }
+
+  private static final int MAX_STATUS_CODE = 599;
+
+  @Getter
+  private final MetricsRegistry registry;
+
+  private final Histogram[] requestDurations = new Histogram[Operation.values().length];
+
+  /**
+   * Request counters by operation, then by status code, created when first seen.
+   */
+  @SuppressWarnings("unchecked")
+  private final AtomicReferenceArray<Counter>[] requestCounters = new AtomicReferenceArray[Operation.values().length];
+
+  private final Counter[] shedRequests = new Counter[Operation.values().length];
+
+  private final Histogram[] commandDurations = new Histogram[Operation.values().length];
+
+  private final Histogram[] repositoryDurations = new Histogram[Operation.values().length];
+
+  /**
+   * Number of times the default availabilities window has been rendered.
+   */
+  @Getter
+  private final Counter defaultWindowRenders;
+
+  public ReservationMetrics()
+  {
+    this(new MetricsRegistry());
+  }
+
+  /**
+   * @param registry The registry to register the metrics in.
+   */
+  public ReservationMetrics(MetricsRegistry registry)
+  {
+    this.registry = registry;
+
+    for (var operation : Operation.values())
+    {
+      var i = operation.ordinal();
+
+      requestCounters[i] = new AtomicReferenceArray<>(MAX_STATUS_CODE + 1);
+      requestDurations[i] = registry.histogram("crs_request_duration_seconds",
+          "Time to answer the HTTP requests.", "operation", operation.label);
+      shedRequests[i] = registry.counter("crs_requests_shed_total",
+          "Number of requests refused because too many were in flight.", "operation", operation.label);
+      commandDurations[i] = registry.histogram("crs_registry_command_duration_seconds",
+          "Time from the reception of a command by a registry to its reply.", "operation", operation.label);
+
+      // availabilities are read from the occupancy calendar, not the repository
+      if (operation != Operation.AVAILABILITIES)
+      {
+        repositoryDurations[i] = registry.histogram("crs_repository_operation_duration_seconds",
+            "Time to complete the repository operations.", "operation", operation.label);
+      }
+    }
+
+    defaultWindowRenders = registry.counter("crs_default_availabilities_renders_total",
+        "Number of times the default availabilities response has been rendered.");
+  }
+
+  /**
+   * Registers the statistics of an availability cache.
+   *
+   * @param cache The cache.
+   * @param labels The label names and values of the cache, alternated.
+   */
+  public void registerCache(AvailabilityCache cache, String... labels)
+  {
+    registry.counter("crs_availability_cache_hits_total",
+        "Availability lookups answered from the cache.", cache::getHits, labels);
+    registry.counter("crs_availability_cache_misses_total",
+        "Availability lookups which had to compute the availabilities.", cache::getMisses, labels);
+    registry.counter("crs_availability_cache_coalesced_total",
+        "Availability lookups which joined a computation already running.", cache::getCoalesced, labels);
+    registry.gauge("crs_availability_cache_size",
+        "Number of availability windows cached.", cache::size, labels);
+  }
+
+  /**
+   * Registers the sizes of the map repository: live set, and archive if any.
+   *
+   * @param repository The repository.
+   * @param labels The label names and values of the repository, alternated.
+   */
+  public void registerRepository(ReservationMapRepository repository, String... labels)
+  {
+    registry.gauge("crs_reservations_live",
+        "Number of reservations kept in memory.", repository::getLiveSize, labels);
+
+    repository.getArchive().ifPresent(archive ->
+    {
+      registry.gauge("crs_reservations_archived",
+          "Number of reservations moved to the archive.", archive::size, labels);
+      registry.gauge("crs_archive_size_bytes",
+          "Size of the archive on disk.", archive::sizeInBytes, labels);
+    });
+  }
+
+  /**
+   * Registers the requests in flight of an admission control.
+   *
+   * @param admission The admission control.
+   */
+  public void registerAdmission(AdmissionControl admission)
+  {
+    for (var operation : Operation.values())
+    {
+      registry.gauge("crs_requests_in_flight", "Number of requests being processed by the registries.",
+          () -> admission.getInFlight(operation), "operation", operation.label);
+    }
+  }
+
+  /**
+   * @param operation The operation requested.
+   * @param statusCode The response status code.
+   * @param startNanos The System.nanoTime() value when the request was received.
+   */
+  public void recordRequest(Operation operation, int statusCode, long startNanos)
+  {
+    requestDurations[operation.ordinal()].recordSince(startNanos);
+    requestCounter(operation, statusCode).increment();
+  }
+
+  /**
+   * @param operation The operation of a request refused by the admission control.
+   */
+  public void recordShed(Operation operation)
+  {
+    shedRequests[operation.ordinal()].increment();
+  }
+
+  /**
+   * @param operation The operation of the command.
+   * @param startNanos The System.nanoTime() value when the command was received.
+   */
+  public void recordCommand(Operation operation, long startNanos)
+  {
+    commandDurations[operation.ordinal()].recordSince(startNanos);
+  }
+
+  /**
+   * @param operation The repository operation.
+   * @param startNanos The System.nanoTime() value when the operation was called.
+   */
+  public void recordRepository(Operation operation, long startNanos)
+  {
+    repositoryDurations[operation.ordinal()].recordSince(startNanos);
+  }
+
+  /**
+   * @return The requests counter of an operation and a status code.
+   */
+  private Counter requestCounter(Operation operation, int statusCode)
+  {
+    var counters = requestCounters[operation.ordinal()];
+    var code = statusCode < 0 || statusCode > MAX_STATUS_CODE ? 0 : statusCode;
+
+    var counter = counters.get(code);
+    if (counter != null)
+    {
+      return counter;
+    }
+
+    synchronized (counters)
+    {
+      counter = counters.get(code);
+      if (counter == null)
+      {
+        counter = registry.counter("crs_requests_total", "Number of HTTP requests answered.",
+            "operation", operation.label, "status", Integer.toString(code));
+        counters.set(code, counter);
+      }
+
+      return counter;
+    }
+  }
+}
@@ -1,11 +1,19 @@
 package org.example.crs.reservation;
 
-import static java.time.LocalDate.now;
-import static java.time.Period.ofDays;
-import static java.time.Period.ofMonths;
+import static org.example.crs.reservation.ReservationMetrics.Operation.AVAILABILITIES;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CANCEL;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CREATE;
+import static org.example.crs.reservation.ReservationMetrics.Operation.GET;
+import static org.example.crs.reservation.ReservationMetrics.Operation.UPDATE;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import lombok.RequiredArgsConstructor;
 
 import org.example.crs.reservation.command.ReservationCommands.CancelReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
@@ -13,40 +21,161 @@ import org.example.crs.reservation.command.ReservationCommands.Command;
 import org.example.crs.reservation.command.ReservationCommands.CommandResponse;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsResponse;
 import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesCmd;
 import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
 import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.ReservationIdCommand;
 import org.example.crs.reservation.command.ReservationCommands.UpdateReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
 import org.example.crs.reservation.exception.ReservationException;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
+import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
 import akka.http.javadsl.model.StatusCodes;
+import akka.routing.ConsistentHash;
 
 /**
  * Manages events from routing and call the service methods to do operations on reservations.
+ *
+ * With a create batching, the creations are grouped and booked by the repository in a single pass,
+ * in the order they were received; each one still gets its own response. The creations still
+ * pending when the registry restarts or stops are refused with a 503, instead of letting their asks
+ * time out.
  */
 public class ReservationRegistry extends AbstractBehavior<Command>
 {
+  /**
+   * Number of points each routee gets on the hash ring, so the ids spread evenly over the pool.
+   */
+  private static final int VIRTUAL_NODES_FACTOR = 10;
+
+  public static final String NOT_BOOKED_MESSAGE = "The registry stopped before booking the reservation, please retry";
+
+  /**
+   * Tells the registry to book the pending creations.
+   */
+  private static enum FlushCreations implements Command
+  {
+    INSTANCE
+  }
+
+  /**
+   * A creation waiting for its batch.
+   */
+  @RequiredArgsConstructor
+  private static class PendingCreation
+  {
+    private final CreateReservationCmd command;
+
+    /**
+     * The System.nanoTime() value when it was received.
+     */
+    private final long start;
+  }
+
+  /**
+   * Routes the commands over a pool of registries: by consistent hash of the reservation id for the
+   * commands targeting one, round-robin for the others.
+   */
+  private static class RegistryPool extends AbstractBehavior<Command>
+  {
+    private final List<ActorRef<Command>> routees;
+
+    private final ConsistentHash<ActorRef<Command>> ring;
+
+    /**
+     * The index of the next routee of the commands which do not target a reservation.
+     */
+    private int next;
+
+    private RegistryPool(ActorContext<Command> context, List<ActorRef<Command>> routees)
+    {
+      super(context);
+      this.routees = routees;
+      this.ring = ConsistentHash.create(routees, VIRTUAL_NODES_FACTOR);
+    }
+
+    @Override
+    public Receive<Command> createReceive()
+    {
+      return newReceiveBuilder()
+          .onMessage(Command.class, command ->
+          {
+            routeeOf(command).tell(command);
+            return this;
+          })
+          .build();
+    }
+
+    private ActorRef<Command> routeeOf(Command command)
+    {
+      if (command instanceof ReservationIdCommand)
+      {
+        return ring.nodeFor(((ReservationIdCommand) command).getId().toString());
+      }
+
+      var routee = routees.get(next);
+      next = (next + 1) % routees.size();
+
+      return routee;
+    }
+  }
+
   /**
    * The reservations service.
    */
   private final ReservationService service;
 
+  private final CreateBatching batching;
+
+  /**
+   * The timers, to close the batches after their window.
+   */
+  private final TimerScheduler<Command> timers;
+
+  /**
+   * The creations of the current batch, in the order they were received.
+   */
+  private final List<PendingCreation> pendingCreations = new ArrayList<>();
+
   /**
    * @param context The context, given by the Behavior.setup() call.
    * @param service The reservations service.
    */
   public ReservationRegistry(ActorContext<Command> context, ReservationService service)
+  {
+    this(context, service, CreateBatching.NONE, null);
+  }
+
+  /**
+   * @param context The context, given by the Behavior.setup() call.
+   * @param service The reservations service.
+   * @param batching How the creations are grouped.
+   * @param timers The timers, to close the batches after their window.
+   */
+  public ReservationRegistry(
+      ActorContext<Command> context,
+      ReservationService service,
+      CreateBatching batching,
+      TimerScheduler<Command> timers)
   {
     super(context);
     this.service = service;
+    this.batching = batching;
+    this.timers = timers;
   }
 
   /**
@@ -57,7 +186,61 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   public static Behavior<Command> create(ReservationService service)
   {
-    return Behaviors.setup(ctx -> new ReservationRegistry(ctx, service));
+    return create(service, CreateBatching.NONE);
+  }
+
+  /**
+   * The builder we use the create this actor, grouping the creations.
+   *
+   * @param service The reservation service.
+   * @param batching How the creations are grouped.
+   * @return The actor which manages events received from routing.
+   */
+  public static Behavior<Command> create(ReservationService service, CreateBatching batching)
+  {
+    return Behaviors.setup(ctx -> Behaviors.withTimers(timers ->
+        new ReservationRegistry(ctx, service, batching, timers)));
+  }
+
+  /**
+   * The builder we use to create a pool of registries sharing the load.
+   *
+   * Commands targeting a reservation are routed by consistent hash of its id, so all the operations
+   * on a given reservation go through the same registry. Other commands (creations, availabilities)
+   * are sent to the registries in turn, so each one gets its share of them.
+   *
+   * @param service The reservation service.
+   * @param poolSize The number of registries.
+   * @return The router, which forwards the events received from routing to the registries.
+   */
+  public static Behavior<Command> pool(ReservationService service, int poolSize)
+  {
+    return pool(service, poolSize, CreateBatching.NONE);
+  }
+
+  /**
+   * The builder we use to create a pool of registries sharing the load, each one grouping the
+   * creations it receives.
+   *
+   * @param service The reservation service.
+   * @param poolSize The number of registries.
+   * @param batching How the creations are grouped by each registry.
+   * @return The router, which forwards the events received from routing to the registries.
+   */
+  public static Behavior<Command> pool(ReservationService service, int poolSize, CreateBatching batching)
+  {
+    return Behaviors.setup(ctx ->
+    {
+      var routees = new ArrayList<ActorRef<Command>>(poolSize);
+      for (var i = 0; i < poolSize; i++)
+      {
+        routees.add(ctx.spawn(
+            Behaviors.supervise(create(service, batching)).onFailure(SupervisorStrategy.restart()),
+            "registry-" + i));
+      }
+
+      return new RegistryPool(ctx, routees);
+    });
   }
 
   /**
@@ -68,10 +251,14 @@ public class ReservationRegistry extends AbstractBehavior<Command>
   {
     return newReceiveBuilder()
         .onMessage(CreateReservationCmd.class, this::onCreateReservation)
+        .onMessage(CreateReservationsCmd.class, this::onCreateReservations)
         .onMessage(UpdateReservationCmd.class, this::onUpdateReservation)
         .onMessage(GetReservationCmd.class, this::onGetReservation)
         .onMessage(GetAvailabilitiesCmd.class, this::onGetAvailabilities)
         .onMessage(CancelReservationCmd.class, this::onCancelReservation)
+        .onMessageEquals(FlushCreations.INSTANCE, this::onFlushCreations)
+        .onSignal(PreRestart.class, signal -> onStopped())
+        .onSignal(PostStop.class, signal -> onStopped())
         .build();
   }
 
@@ -83,19 +270,148 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   private Behavior<Command> onCreateReservation(CreateReservationCmd command)
   {
-    service.create(command.getBody()).whenCompleteAsync((reservation, ex) ->
+    var start = System.nanoTime();
+
+    if (!batching.isEnabled())
     {
-      var response = new CreateReservationResponse();
-      if (ex != null)
+      replyCreated(service.create(command.getBody()), command, start);
+      return this;
+    }
+
+    pendingCreations.add(new PendingCreation(command, start));
+
+    if (pendingCreations.size() >= batching.getMaxSize())
+    {
+      timers.cancel(FlushCreations.INSTANCE);
+      return onFlushCreations();
+    }
+
+    if (pendingCreations.size() == 1)
+    {
+      if (batching.getWindow().isZero())
       {
-        populateResponseErrorFields(response, ex);
+        // queued behind the creations already in the mailbox, which join the batch
+        getContext().getSelf().tell(FlushCreations.INSTANCE);
       }
       else
       {
-        response.setReservation(reservation);
-        response.setStatus(StatusCodes.CREATED);
+        timers.startSingleTimer(FlushCreations.INSTANCE, batching.getWindow());
       }
+    }
+
+    return this;
+  }
+
+  /**
+   * Books the pending creations as a single batch, and replies to each one.
+   *
+   * @return The current actor.
+   */
+  private Behavior<Command> onFlushCreations()
+  {
+    if (pendingCreations.isEmpty())
+    {
+      return this;
+    }
+
+    var bodies = new ArrayList<ReservationCreateBody>(pendingCreations.size());
+    pendingCreations.forEach(p -> bodies.add(p.command.getBody()));
+
+    // when the repository throws, the creations stay pending, and are refused on the restart
+    var created = service.createAll(bodies);
+
+    var batch = new ArrayList<>(pendingCreations);
+    pendingCreations.clear();
+
+    for (var i = 0; i < created.size(); i++)
+    {
+      var pending = batch.get(i);
+      replyCreated(created.get(i), pending.command, pending.start);
+    }
+
+    return this;
+  }
+
+  /**
+   * Refuses the pending creations, lost with the state of the registry when it restarts or stops.
+   *
+   * @return The current actor.
+   */
+  private Behavior<Command> onStopped()
+  {
+    for (var pending : pendingCreations)
+    {
+      var response = new CreateReservationResponse();
+      response.setStatus(StatusCodes.SERVICE_UNAVAILABLE);
+      response.setMaybeException(Optional.of(new IllegalStateException(NOT_BOOKED_MESSAGE)));
 
+      service.getMetrics().recordCommand(CREATE, pending.start);
+      pending.command.getReplyTo().tell(response);
+    }
+
+    pendingCreations.clear();
+
+    return this;
+  }
+
+  /**
+   * Replies to a create command once its reservation is created.
+   *
+   * @param reservation The promise of the reservation created.
+   * @param command The create command.
+   * @param start The System.nanoTime() value when the command was received.
+   */
+  private void replyCreated(CompletableFuture<Reservation> reservation, CreateReservationCmd command, long start)
+  {
+    reservation.handle(ReservationRegistry::toCreateResponse).thenAccept(response ->
+    {
+      service.getMetrics().recordCommand(CREATE, start);
+      command.getReplyTo().tell(response);
+    });
+  }
+
+  /**
+   * @param created The reservation created, or null.
+   * @param ex The error, if the creation failed.
+   * @return The create response.
+   */
+  private static CreateReservationResponse toCreateResponse(Reservation created, Throwable ex)
+  {
+    var response = new CreateReservationResponse();
+    if (ex != null)
+    {
+      populateResponseErrorFields(response, ex);
+    }
+    else
+    {
+      response.setReservation(created);
+      response.setStatus(StatusCodes.CREATED);
+    }
+
+    return response;
+  }
+
+  /**
+   * Handles a batch of creations (an import): they are booked by the repository in a single pass,
+   * in the given order, then replied all at once.
+   *
+   * @param command The batch create command.
+   * @return The current actor.
+   */
+  private Behavior<Command> onCreateReservations(CreateReservationsCmd command)
+  {
+    var start = System.nanoTime();
+
+    var responses = service.createAll(command.getBodies()).stream()
+        .map(created -> created.handle(ReservationRegistry::toCreateResponse))
+        .collect(Collectors.toList());
+
+    CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).thenRun(() ->
+    {
+      var response = new CreateReservationsResponse();
+      response.setResponses(responses.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+
+      responses.forEach(__ -> service.getMetrics().recordCommand(CREATE, start));
       command.getReplyTo().tell(response);
     });
 
@@ -110,10 +426,12 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   private Behavior<Command> onUpdateReservation(UpdateReservationCmd command) throws Exception
   {
+    var start = System.nanoTime();
+
     var id = command.getId();
     var body = command.getBody();
 
-    service.update(id, body).whenCompleteAsync((reservation, ex) ->
+    service.update(id, body).whenComplete((reservation, ex) ->
     {
       var response = new UpdateReservationResponse();
       if (ex != null)
@@ -128,6 +446,7 @@ public class ReservationRegistry extends AbstractBehavior<Command>
         });
       }
 
+      service.getMetrics().recordCommand(UPDATE, start);
       command.getReplyTo().tell(response);
     });
 
@@ -142,9 +461,11 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   private Behavior<Command> onGetReservation(GetReservationCmd command) throws Exception
   {
+    var start = System.nanoTime();
+
     var id = command.getId();
 
-    service.findById(id).whenCompleteAsync((reservation, ex) ->
+    service.findById(id).whenComplete((reservation, ex) ->
     {
       var response = new GetReservationResponse();
       if (ex != null)
@@ -159,6 +480,7 @@ public class ReservationRegistry extends AbstractBehavior<Command>
         });
       }
 
+      service.getMetrics().recordCommand(GET, start);
       command.getReplyTo().tell(response);
     });
 
@@ -173,10 +495,12 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   private Behavior<Command> onGetAvailabilities(GetAvailabilitiesCmd command) throws Exception
   {
-    var checkFrom = command.getMaybeCheckFrom().orElseGet(() -> now().plus(ofDays(1)));
-    var checkTo = command.getMaybeCheckTo().orElseGet(() -> checkFrom.plus(ofMonths(1)));
+    var start = System.nanoTime();
 
-    service.getAvailabilities(checkFrom, checkTo).whenCompleteAsync((availabilities, ex) ->
+    var checkFrom = command.getMaybeCheckFrom().orElseGet(ReservationService::defaultCheckFrom);
+    var checkTo = command.getMaybeCheckTo().orElseGet(() -> ReservationService.defaultCheckTo(checkFrom));
+
+    service.getAvailabilities(checkFrom, checkTo, command.getMinFreePitches()).whenComplete((availabilities, ex) ->
     {
       var response = new GetAvailabilitiesResponse();
       response.setFrom(checkFrom);
@@ -191,6 +515,7 @@ public class ReservationRegistry extends AbstractBehavior<Command>
         response.setAvailabilities(availabilities);
       }
 
+      service.getMetrics().recordCommand(AVAILABILITIES, start);
       command.getReplyTo().tell(response);
     });
 
@@ -205,9 +530,11 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    */
   private Behavior<Command> onCancelReservation(CancelReservationCmd command) throws Exception
   {
+    var start = System.nanoTime();
+
     var id = command.getId();
 
-    service.cancelReservation(id).whenCompleteAsync((reservation, ex) ->
+    service.cancelReservation(id).whenComplete((reservation, ex) ->
     {
       var response = new CancelReservationResponse();
       if (ex != null)
@@ -222,6 +549,7 @@ public class ReservationRegistry extends AbstractBehavior<Command>
         });
       }
 
+      service.getMetrics().recordCommand(CANCEL, start);
       command.getReplyTo().tell(response);
     });
 
@@ -232,7 +560,7 @@ public class ReservationRegistry extends AbstractBehavior<Command>
    * @param response The actor response for a command.
    * @param ex An exception we must use to populate the response error attributes.
    */
-  private void populateResponseErrorFields(CommandResponse response, Throwable ex)
+  static void populateResponseErrorFields(CommandResponse response, Throwable ex)
   {
     if (ex instanceof CompletionException)
     {
@@ -1,10 +1,12 @@
 package org.example.crs.reservation;
 
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
@@ -15,15 +17,37 @@ import org.example.crs.reservation.command.param.ReservationUpdateBody;
 public interface ReservationRepository
 {
   /**
+   * Creates a reservation, if all its nights are still free. The check and the booking are atomic.
+   *
    * @param body The reservation create body.
-   * @return The promise of the reservation created.
+   * @return The promise of the reservation created, failed with a ReservationException if the period
+   * is not available.
    */
   CompletableFuture<Reservation> create(ReservationCreateBody body);
 
   /**
+   * Creates reservations as a batch: each one is created if all its nights are still free once the
+   * previous ones of the batch are booked, as if they were created one after the other.
+   *
+   * By default, the reservations are simply created one by one.
+   *
+   * @param bodies The reservation create bodies, in the order they must be booked.
+   * @return The promise of each reservation created, in the same order, failed with a
+   * ReservationException if its period is not available.
+   */
+  default List<CompletableFuture<Reservation>> createAll(List<ReservationCreateBody> bodies)
+  {
+    return bodies.stream().map(this::create).collect(Collectors.toList());
+  }
+
+  /**
+   * Updates a reservation. If the update books new nights, they must still be free (the current
+   * nights of the reservation are considered as such). The check and the booking are atomic.
+   *
    * @param id The reservation id.
    * @param body The reservation update body.
-   * @return The promise of the optional reservation updated.
+   * @return The promise of the optional reservation updated, failed with a ReservationException if
+   * the new period is not available.
    */
   CompletableFuture<Optional<Reservation>> update(UUID id, ReservationUpdateBody body);
 
@@ -35,19 +59,32 @@ public interface ReservationRepository
 
   /**
    * @param startAt The date from which we want to get reservations.
-   * @return The list of reservations that finish at the 'startAt' date or after.
+   * @return The list of active reservations that finish at the 'startAt' date or after.
    */
   CompletableFuture<List<Reservation>> findFrom(LocalDate startAt);
 
   /**
    * @param startAt The date from which we want to get reservations.
    * @param ignoreId A reservation id we want to exclude.
-   * @return The list of reservations that finish at the 'startAt' date or after, excluding ignoreId
-   * if provided.
+   * @return The list of active reservations that finish at the 'startAt' date or after, excluding
+   * ignoreId if provided.
    */
   CompletableFuture<List<Reservation>> findFromExcept(
       LocalDate startAt,
       Optional<UUID> ignoreId);
 
   CompletableFuture<Optional<Reservation>> cancel(UUID id);
+
+  /**
+   * Iterates over the reservations stored (active or canceled), reading them one at a time: none
+   * are copied beforehand. The reservations written meanwhile may or may not be seen.
+   *
+   * @return The iterator of the reservations, in no particular order.
+   */
+  Iterator<Reservation> iterator();
+
+  /**
+   * @return The occupancy calendar of the active reservations, kept in step with the writes.
+   */
+  OccupancyCalendar getOccupancyCalendar();
 }
@@ -2,23 +2,44 @@ package org.example.crs.reservation;
 
 import static akka.http.javadsl.marshallers.jackson.Jackson.unmarshaller;
 import static akka.http.javadsl.server.PathMatchers.segment;
-import static org.example.crs.ReservationApp.OBJECT_MAPPER;
-import static org.example.crs.ReservationApp.TO_JSON;
+import static org.example.crs.Json.OBJECT_MAPPER;
+import static org.example.crs.Json.TO_JSON;
+import static org.example.crs.reservation.ReservationMetrics.Operation.AVAILABILITIES;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CANCEL;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CREATE;
+import static org.example.crs.reservation.ReservationMetrics.Operation.EXPORT;
+import static org.example.crs.reservation.ReservationMetrics.Operation.GET;
+import static org.example.crs.reservation.ReservationMetrics.Operation.IMPORT;
+import static org.example.crs.reservation.ReservationMetrics.Operation.UPDATE;
 
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import lombok.RequiredArgsConstructor;
 
 import org.example.crs.UnexpectedErrorResponse;
+import org.example.crs.reservation.CampsiteRegistry.CampsiteCommand;
+import org.example.crs.reservation.Reservation.ReservationStatus;
+import org.example.crs.reservation.ReservationImport.Format;
+import org.example.crs.reservation.ReservationMetrics.Operation;
 import org.example.crs.reservation.command.ReservationCommands.CancelReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
 import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.command.ReservationCommands.CommandResponse;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsResponse;
 import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesCmd;
 import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
 import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
@@ -31,22 +52,122 @@ import org.example.crs.reservation.command.param.ReservationUpdateBody;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Scheduler;
 import akka.actor.typed.javadsl.AskPattern;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RetryAfter;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.RejectionHandler;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 /**
  * Provides the reservations routing system.
+ *
+ * The /reservations routes serve the default campsite. When campsites are given, the same routes
+ * are served for each of them under /campsites/{campsiteId}/reservations, by their own partition.
+ *
+ * In cluster mode, every campsite (the default one included) is owned by a single node: the
+ * commands are forwarded to it, and the default availabilities are asked to it as well.
+ *
+ * Requests going to the registries go through an admission control first: over the limit of
+ * requests in flight for their operation, they are refused right away with a 503.
+ *
+ * GET /reservations/export streams the reservations of a campsite as newline-delimited JSON, read
+ * from its repository as the client consumes them. It needs the local service of the campsite, so
+ * it is not served in cluster mode.
+ *
+ * POST /reservations/import creates the reservations of a NDJSON or CSV file, streamed to the
+ * registries by batches (see ReservationImport), and streams back the result of each line as
+ * newline-delimited JSON.
  */
-@RequiredArgsConstructor
 public class ReservationRoute extends AllDirectives
 {
+  public static final String OVERLOADED_MESSAGE = "Too many requests, please retry later";
+
+  public static final String UNKNOWN_CAMPSITE_MESSAGE = "Unknown campsite";
+
+  public static final String EXPORT_NOT_AVAILABLE_MESSAGE = "The export is not available in cluster mode";
+
+  public static final String INVALID_EXPORT_FILTER_MESSAGE = "Invalid export filter";
+
+  public static final String UNSUPPORTED_IMPORT_MESSAGE = "The import needs an application/x-ndjson or a text/csv file";
+
+  public static final ContentType.WithFixedCharset NDJSON_CONTENT_TYPE =
+      MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8).toContentType();
+
+  /**
+   * The most bytes of reservations sent in a single chunk, when the client is slower than the reads.
+   */
+  private static final long EXPORT_CHUNK_BYTES = 64 * 1024;
+
+  private static final ByteString NEW_LINE = ByteString.fromString("\n");
+
+  /**
+   * How long the registries have to book a batch of an import.
+   */
+  private static final Duration IMPORT_BATCH_TIMEOUT = Duration.ofSeconds(10);
+
+  /**
+   * Where the commands of a campsite go, and the service answering its default availabilities.
+   */
+  @RequiredArgsConstructor
+  private static class Partition
+  {
+    private final ActorRef<Command> registry;
+
+    /**
+     * Wraps the commands before sending them to the registry.
+     */
+    private final UnaryOperator<Command> envelope;
+
+    /**
+     * The local service of the campsite, empty when it is owned by another node.
+     */
+    private final Optional<ReservationService> service;
+
+    /**
+     * The last default availabilities response, reused as long as the service serves the same bytes.
+     */
+    private volatile HttpResponse defaultAvailabilitiesResponse = HttpResponse.create();
+  }
+
   /**
-   * The reservations Actor.
+   * The partition of the default campsite.
    */
-  private final ActorRef<Command> registryActor;
+  private final Partition defaultPartition;
+
+  private final ReservationMetrics metrics;
+
+  /**
+   * The campsites served under /campsites, if any.
+   */
+  private final Optional<Campsites> campsites;
+
+  /**
+   * The actor forwarding the commands to the registries of the campsites.
+   */
+  private final Optional<ActorRef<Command>> campsiteRegistry;
+
+  /**
+   * If the campsites are owned by the nodes of a cluster, so their services are not local.
+   */
+  private final boolean clustered;
+
+  /**
+   * The partitions of the campsites requested so far, by id.
+   */
+  private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
 
   /**
    * The system scheduler.
@@ -54,151 +175,549 @@ public class ReservationRoute extends AllDirectives
   private final Scheduler scheduler;
 
   /**
-   * @return /reservations route
+   * Bounds the requests in flight to the registries.
+   */
+  private final AdmissionControl admission;
+
+  private final ReservationImport importer;
+
+  private static final ContentType.WithCharset METRICS_CONTENT_TYPE =
+      ContentTypes.create(MediaTypes.TEXT_PLAIN, HttpCharsets.UTF_8);
+
+  /**
+   * @param registryActor The reservations Actor.
+   * @param service The reservations service.
+   * @param scheduler The system scheduler.
+   * @param admission Bounds the requests in flight to the registries.
+   * @param importer How the imports are read and booked.
+   */
+  public ReservationRoute(
+      ActorRef<Command> registryActor,
+      ReservationService service,
+      Scheduler scheduler,
+      AdmissionControl admission,
+      ReservationImport importer)
+  {
+    this(new Partition(registryActor, UnaryOperator.identity(), Optional.of(service)), service.getMetrics(),
+        Optional.empty(), Optional.empty(), false, scheduler, admission, importer);
+  }
+
+  /**
+   * @param registryActor The reservations Actor of the default campsite.
+   * @param service The reservations service of the default campsite.
+   * @param campsites The campsites served under /campsites.
+   * @param campsiteRegistry The actor forwarding the commands to the registries of the campsites.
+   * @param scheduler The system scheduler.
+   * @param admission Bounds the requests in flight to the registries.
+   * @param importer How the imports are read and booked.
+   */
+  public ReservationRoute(
+      ActorRef<Command> registryActor,
+      ReservationService service,
+      Campsites campsites,
+      ActorRef<Command> campsiteRegistry,
+      Scheduler scheduler,
+      AdmissionControl admission,
+      ReservationImport importer)
+  {
+    this(new Partition(registryActor, UnaryOperator.identity(), Optional.of(service)), service.getMetrics(),
+        Optional.of(campsites), Optional.of(campsiteRegistry), false, scheduler, admission, importer);
+  }
+
+  /**
+   * Creates the routes of a cluster node: the commands of every campsite, the default one included,
+   * go to the node owning it.
+   *
+   * @param campsites The campsites served under /campsites, the default one included.
+   * @param campsiteRegistry The actor forwarding the commands to the nodes owning the campsites.
+   * @param metrics The metrics of the node.
+   * @param scheduler The system scheduler.
+   * @param admission Bounds the requests in flight to the registries.
+   * @param importer How the imports are read and booked.
+   */
+  public ReservationRoute(
+      Campsites campsites,
+      ActorRef<Command> campsiteRegistry,
+      ReservationMetrics metrics,
+      Scheduler scheduler,
+      AdmissionControl admission,
+      ReservationImport importer)
+  {
+    this(new Partition(campsiteRegistry,
+            command -> new CampsiteCommand(ShardedCampsiteRegistry.DEFAULT_CAMPSITE, command),
+            Optional.empty()),
+        metrics, Optional.of(campsites), Optional.of(campsiteRegistry), true, scheduler, admission, importer);
+  }
+
+  private ReservationRoute(
+      Partition defaultPartition,
+      ReservationMetrics metrics,
+      Optional<Campsites> campsites,
+      Optional<ActorRef<Command>> campsiteRegistry,
+      boolean clustered,
+      Scheduler scheduler,
+      AdmissionControl admission,
+      ReservationImport importer)
+  {
+    this.defaultPartition = defaultPartition;
+    this.metrics = metrics;
+    this.campsites = campsites;
+    this.campsiteRegistry = campsiteRegistry;
+    this.clustered = clustered;
+    this.scheduler = scheduler;
+    this.admission = admission;
+    this.importer = importer;
+
+    metrics.registerAdmission(admission);
+  }
+
+  /**
+   * @return /reservations, /campsites/{campsiteId}/reservations and /metrics routes
    */
   public Route getRoute()
   {
-    return pathPrefix("reservations", () ->
-        concat(
-            createReservationRoute(),
-            getAvailabilitiesRoute(),
-            getReservationRoutes()
-        )
+    return concat(
+        pathPrefix("reservations", () -> reservationRoutes(defaultPartition)),
+        pathPrefix("campsites", () ->
+            pathPrefix(segment(), campsiteId ->
+                pathPrefix("reservations", () -> campsiteRoutes(campsiteId))
+            )
+        ),
+        metricsRoute()
     ).seal(RejectionHandler.defaultHandler(), getExceptionHandler());
   }
 
   /**
+   * @param partition The partition of the campsite.
+   * @return The reservations routes of a campsite.
+   */
+  private Route reservationRoutes(Partition partition)
+  {
+    return concat(
+        // first: the POST / route would take an import for a creation, and /{id} "export" for an id
+        exportRoute(partition),
+        importRoute(partition),
+        createReservationRoute(partition),
+        getAvailabilitiesRoute(partition),
+        getReservationRoutes(partition)
+    );
+  }
+
+  /**
+   * @param campsiteId The campsite id.
+   * @return The reservations routes of the campsite, or a 404 if it is not served.
+   */
+  private Route campsiteRoutes(String campsiteId)
+  {
+    if (campsites.isEmpty() || !campsites.get().exists(campsiteId))
+    {
+      var response = new CommandResponse();
+      response.setStatus(StatusCodes.NOT_FOUND);
+      response.setMaybeException(Optional.of(new IllegalArgumentException(UNKNOWN_CAMPSITE_MESSAGE)));
+
+      return complete(response.getStatus(), response, TO_JSON);
+    }
+
+    // the service (and so the partition) of the campsite is only created on its first request, on
+    // the node owning it in cluster mode
+    var partition = partitions.computeIfAbsent(campsiteId, id -> new Partition(
+        campsiteRegistry.get(),
+        command -> new CampsiteCommand(id, command),
+        clustered ? Optional.empty() : Optional.of(campsites.get().service(id))));
+
+    return reservationRoutes(partition);
+  }
+
+  /**
+   * @param partition The partition of the campsite.
    * @return The POST /reservation route.
    */
-  private Route createReservationRoute()
+  private Route createReservationRoute(Partition partition)
   {
-    return post(() ->
+    return post(() -> measured(CREATE, () ->
         entity(
             unmarshaller(OBJECT_MAPPER, ReservationCreateBody.class),
-            body -> onSuccess(createReservation(body), performed ->
+            body -> admitted(CREATE, () -> createReservation(partition, body), performed ->
                 complete(performed.getStatus(), performed, TO_JSON)
             )
         )
-    );
+    ));
   }
 
   /**
-   * @return The GET /reservation route (with optional from & to parameters)
+   * @param partition The partition of the campsite.
+   * @return The GET /reservation route (with optional from & to parameters, and the optional number
+   * of free pitches wanted every night, one by default)
    */
-  private Route getAvailabilitiesRoute()
+  private Route getAvailabilitiesRoute(Partition partition)
   {
-    return pathEnd(() ->
+    return pathEnd(() -> measured(AVAILABILITIES, () ->
         parameterOptional("from", from ->
             parameterOptional("to", to ->
-            {
-              var maybeFrom = from.map(LocalDate::parse);
-              var maybeTo = to.map(LocalDate::parse);
+                parameterOptional(StringUnmarshallers.INTEGER, "pitches", pitches ->
+                {
+                  if (from.isEmpty() && to.isEmpty() && pitches.isEmpty() && partition.service.isPresent())
+                  {
+                    return onSuccess(getDefaultAvailabilities(partition), response -> complete(response));
+                  }
 
-              return onSuccess(getAvailabilities(maybeFrom, maybeTo), performed ->
-                  complete(performed.getStatus(), performed, TO_JSON)
-              );
-            })
+                  var maybeFrom = from.map(LocalDate::parse);
+                  var maybeTo = to.map(LocalDate::parse);
+                  var minFreePitches = pitches.orElse(1);
+
+                  return admitted(AVAILABILITIES, () -> getAvailabilities(partition, maybeFrom, maybeTo, minFreePitches), performed ->
+                      complete(performed.getStatus(), performed, TO_JSON)
+                  );
+                })
+            )
         )
-    );
+    ));
+  }
+
+  /**
+   * @param partition The partition of the campsite.
+   * @return The GET /reservation/export route (with optional from, to and status filters), streaming
+   * one JSON reservation per line
+   */
+  private Route exportRoute(Partition partition)
+  {
+    return path("export", () -> get(() -> measured(EXPORT, () ->
+        parameterOptional("from", from ->
+            parameterOptional("to", to ->
+                parameterOptional("status", status ->
+                {
+                  if (partition.service.isEmpty())
+                  {
+                    return completeWithError(StatusCodes.NOT_IMPLEMENTED, EXPORT_NOT_AVAILABLE_MESSAGE);
+                  }
+
+                  Optional<LocalDate> maybeFrom;
+                  Optional<LocalDate> maybeTo;
+                  Optional<ReservationStatus> maybeStatus;
+                  try
+                  {
+                    maybeFrom = from.map(LocalDate::parse);
+                    maybeTo = to.map(LocalDate::parse);
+                    maybeStatus = status.map(s -> ReservationStatus.valueOf(s.toUpperCase()));
+                  }
+                  catch (DateTimeParseException | IllegalArgumentException ex)
+                  {
+                    return completeWithError(StatusCodes.BAD_REQUEST, INVALID_EXPORT_FILTER_MESSAGE);
+                  }
+
+                  var service = partition.service.get();
+
+                  // pulled from the repository as the client reads them (chunked transfer encoding)
+                  var lines = Source.fromIterator(() -> service.export(maybeFrom, maybeTo, maybeStatus))
+                      .map(ReservationRoute::toJsonLine)
+                      .batchWeighted(EXPORT_CHUNK_BYTES, line -> (long) line.size(), line -> line, ByteString::concat);
+
+                  return complete(HttpResponse.create()
+                      .withStatus(StatusCodes.OK)
+                      .withEntity(HttpEntities.createChunked(NDJSON_CONTENT_TYPE, lines)));
+                })
+            )
+        )
+    )));
+  }
+
+  /**
+   * @param partition The partition of the campsite.
+   * @return The POST /reservation/import route, streaming the result of each line of the file
+   */
+  private Route importRoute(Partition partition)
+  {
+    // the file is streamed, whatever its size
+    return path("import", () -> post(() -> measured(IMPORT, () -> withoutSizeLimit(() ->
+        extractRequestEntity(entity -> extractExecutionContext(executor ->
+        {
+          var mediaType = entity.getContentType().mediaType();
+          var type = mediaType.mainType() + "/" + mediaType.subType();
+
+          Format format;
+          if (type.equals(NDJSON_CONTENT_TYPE.mediaType().toString()))
+          {
+            format = Format.NDJSON;
+          }
+          else if (type.equals(MediaTypes.TEXT_CSV.toString()))
+          {
+            format = Format.CSV;
+          }
+          else
+          {
+            return completeWithError(StatusCodes.UNSUPPORTED_MEDIA_TYPE, UNSUPPORTED_IMPORT_MESSAGE);
+          }
+
+          // the import is admitted as a whole, until its report is fully streamed (or fails)
+          if (!admission.tryAcquire(IMPORT))
+          {
+            return shed(IMPORT);
+          }
+
+          var report = entity.getDataBytes()
+              .via(importer.flow(format, bodies ->
+                  this.<CreateReservationsResponse>ask(partition, ref -> new CreateReservationsCmd(bodies, ref),
+                      IMPORT_BATCH_TIMEOUT), executor))
+              .watchTermination((mat, done) ->
+              {
+                done.whenComplete((__, ex) -> admission.release(IMPORT));
+                return mat;
+              });
+
+          return complete(HttpResponse.create()
+              .withStatus(StatusCodes.OK)
+              .withEntity(HttpEntities.createChunked(NDJSON_CONTENT_TYPE, report)));
+        }))
+    ))));
   }
 
   /**
    * Returns a specified reservation routes. GET to retrieve the reservation. PUT to update the
    * reservation. And DELETE to cancel the reservation.
    *
+   * @param partition The partition of the campsite.
    * @return The /reservation/{id} routes.
    */
-  private Route getReservationRoutes()
+  private Route getReservationRoutes(Partition partition)
   {
     return path(segment(), idStr ->
     {
       var id = UUID.fromString(idStr);
 
       return concat(
-          get(() ->
-              onSuccess(getReservation(id), performed ->
+          get(() -> measured(GET, () ->
+              admitted(GET, () -> getReservation(partition, id), performed ->
                   complete(performed.getStatus(), performed, TO_JSON)
               )
-          ),
-          put(() ->
+          )),
+          put(() -> measured(UPDATE, () ->
               entity(
                   unmarshaller(OBJECT_MAPPER, ReservationUpdateBody.class),
-                  body -> onSuccess(updateReservation(id, body), performed ->
+                  body -> admitted(UPDATE, () -> updateReservation(partition, id, body), performed ->
                       complete(performed.getStatus(), performed, TO_JSON)
                   )
               )
-          ),
-          delete(() ->
-              onSuccess(cancelReservation(id), performed ->
+          )),
+          delete(() -> measured(CANCEL, () ->
+              admitted(CANCEL, () -> cancelReservation(partition, id), performed ->
                   complete(performed.getStatus(), performed, TO_JSON)
               )
-          )
+          ))
       );
     });
   }
 
+  /**
+   * @return The GET /metrics route, in the Prometheus text format.
+   */
+  private Route metricsRoute()
+  {
+    return path("metrics", () ->
+        get(() ->
+            complete(HttpResponse.create()
+                .withStatus(StatusCodes.OK)
+                .withEntity(HttpEntities.create(METRICS_CONTENT_TYPE, metrics.getRegistry().render())))
+        )
+    );
+  }
+
+  /**
+   * Records the duration and the status code of the responses of a route.
+   *
+   * @param operation The operation of the route.
+   * @param inner The route to measure.
+   * @return The measured route.
+   */
+  private Route measured(Operation operation, Supplier<Route> inner)
+  {
+    return extractRequestContext(__ ->
+    {
+      var start = System.nanoTime();
+
+      return mapResponse(response ->
+      {
+        metrics.recordRequest(operation, response.status().intValue(), start);
+        return response;
+      }, inner);
+    });
+  }
+
+  /**
+   * Sends a command to the registries if the admission control lets it in, otherwise refuses the
+   * request with a 503.
+   *
+   * @param operation The operation of the command.
+   * @param command Sends the command.
+   * @param inner Builds the route from the command response.
+   * @return The route.
+   */
+  private <T extends CommandResponse> Route admitted(
+      Operation operation,
+      Supplier<CompletionStage<T>> command,
+      Function<T, Route> inner)
+  {
+    if (!admission.tryAcquire(operation))
+    {
+      return shed(operation);
+    }
+
+    var performed = command.get().whenComplete((__, ex) -> admission.release(operation));
+
+    return onSuccess(performed, inner);
+  }
+
+  /**
+   * @param operation The operation of a request the admission control refused.
+   * @return The route refusing the request with a 503.
+   */
+  private Route shed(Operation operation)
+  {
+    metrics.recordShed(operation);
+
+    var response = new CommandResponse();
+    response.setStatus(StatusCodes.SERVICE_UNAVAILABLE);
+    response.setMaybeException(Optional.of(new IllegalStateException(OVERLOADED_MESSAGE)));
+
+    return respondWithHeader(RetryAfter.create(admission.getRetryAfter().toSeconds()), () ->
+        complete(response.getStatus(), response, TO_JSON)
+    );
+  }
+
   /**
    * Sends the create command.
    *
+   * @param partition The partition of the campsite.
    * @param body The reservation create body.
    * @return The promise of the creation response.
    */
-  private CompletionStage<CreateReservationResponse> createReservation(ReservationCreateBody body)
+  private CompletionStage<CreateReservationResponse> createReservation(Partition partition, ReservationCreateBody body)
   {
-    return AskPattern.ask(registryActor,
-        ref -> new CreateReservationCmd(body, ref), Duration.ofSeconds(3), scheduler);
+    return ask(partition, ref -> new CreateReservationCmd(body, ref), Duration.ofSeconds(3));
   }
 
   /**
    * Sends the update command.
    *
+   * @param partition The partition of the campsite.
    * @param id The reservation id.
    * @param body The reservation update body.
    * @return The promise of the update response.
    */
-  private CompletionStage<UpdateReservationResponse> updateReservation(UUID id, ReservationUpdateBody body)
+  private CompletionStage<UpdateReservationResponse> updateReservation(
+      Partition partition,
+      UUID id,
+      ReservationUpdateBody body)
   {
-    return AskPattern.ask(registryActor,
-        ref -> new UpdateReservationCmd(id, body, ref), Duration.ofSeconds(3), scheduler);
+    return ask(partition, ref -> new UpdateReservationCmd(id, body, ref), Duration.ofSeconds(3));
   }
 
   /**
    * Sends the retrieval command.
    *
+   * @param partition The partition of the campsite.
    * @param id The reservation id.
    * @return The promise of the retrieval response.
    */
-  private CompletionStage<GetReservationResponse> getReservation(UUID id)
+  private CompletionStage<GetReservationResponse> getReservation(Partition partition, UUID id)
   {
-    return AskPattern.ask(registryActor,
-        ref -> new GetReservationCmd(id, ref), Duration.ofSeconds(1), scheduler);
+    return ask(partition, ref -> new GetReservationCmd(id, ref), Duration.ofSeconds(1));
   }
 
   /**
    * Sends the cancel command.
    *
+   * @param partition The partition of the campsite.
    * @param id The reservation id.
    * @return The promise of the cancel response.
    */
-  private CompletionStage<CancelReservationResponse> cancelReservation(UUID id)
+  private CompletionStage<CancelReservationResponse> cancelReservation(Partition partition, UUID id)
   {
-    return AskPattern.ask(registryActor,
-        ref -> new CancelReservationCmd(id, ref), Duration.ofSeconds(3), scheduler);
+    return ask(partition, ref -> new CancelReservationCmd(id, ref), Duration.ofSeconds(3));
   }
 
   /**
    * Sends the check availabilities command.
    *
+   * @param partition The partition of the campsite.
    * @param maybeFrom The optional date from which we're searching availabilities.
    * @param maybeTo The optional date to which we're searching availabilities.
+   * @param minFreePitches The number of free pitches wanted every night.
    * @return The promise of the check availabilities response.
    */
   private CompletionStage<GetAvailabilitiesResponse> getAvailabilities(
+      Partition partition,
       Optional<LocalDate> maybeFrom,
-      Optional<LocalDate> maybeTo)
+      Optional<LocalDate> maybeTo,
+      int minFreePitches)
+  {
+    return ask(partition,
+        ref -> new GetAvailabilitiesCmd(maybeFrom, maybeTo, minFreePitches, ref), Duration.ofSeconds(3));
+  }
+
+  /**
+   * Sends a command to the registries of a campsite.
+   *
+   * @param partition The partition of the campsite.
+   * @param command Creates the command, given the actor to reply to.
+   * @param timeout How long we wait for the response.
+   * @return The promise of the response.
+   */
+  private <T> CompletionStage<T> ask(Partition partition, Function<ActorRef<T>, Command> command, Duration timeout)
   {
-    return AskPattern.ask(registryActor,
-        ref -> new GetAvailabilitiesCmd(maybeFrom, maybeTo, ref), Duration.ofSeconds(3), scheduler);
+    return AskPattern.ask(partition.registry, ref -> partition.envelope.apply(command.apply(ref)), timeout, scheduler);
+  }
+
+  /**
+   * @param partition The partition of the campsite, served by a local service.
+   * @return The promise of the response of the default availabilities window, rendered by the service.
+   */
+  private CompletionStage<HttpResponse> getDefaultAvailabilities(Partition partition)
+  {
+    return partition.service.get().getDefaultAvailabilities().thenApply(bytes ->
+    {
+      var response = partition.defaultAvailabilitiesResponse;
+      if (response.entity() instanceof HttpEntity.Strict && ((HttpEntity.Strict) response.entity()).getData() == bytes)
+      {
+        return response;
+      }
+
+      response = HttpResponse.create()
+          .withStatus(StatusCodes.OK)
+          .withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, bytes));
+      partition.defaultAvailabilitiesResponse = response;
+
+      return response;
+    });
+  }
+
+  /**
+   * @param status The status code of the response.
+   * @param message The error message.
+   * @return The route completing with the error, as a JSON CommandResponse.
+   */
+  private Route completeWithError(StatusCode status, String message)
+  {
+    var response = new CommandResponse();
+    response.setStatus(status);
+    response.setMaybeException(Optional.of(new IllegalArgumentException(message)));
+
+    return complete(response.getStatus(), response, TO_JSON);
+  }
+
+  /**
+   * @param reservation The reservation.
+   * @return The reservation as JSON, followed by a new line.
+   */
+  private static ByteString toJsonLine(Reservation reservation)
+  {
+    try
+    {
+      return ByteString.fromArrayUnsafe(OBJECT_MAPPER.writeValueAsBytes(reservation)).concat(NEW_LINE);
+    }
+    catch (JsonProcessingException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
   }
 
   /**
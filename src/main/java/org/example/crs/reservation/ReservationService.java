@@ -1,23 +1,39 @@
 package org.example.crs.reservation;
 
-import static java.util.stream.Collectors.toList;
+import static java.time.Period.ofDays;
+import static java.time.Period.ofMonths;
+import static org.example.crs.Json.OBJECT_MAPPER;
 import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
-import static org.example.crs.reservation.exception.ReservationException.notAvailable;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CANCEL;
+import static org.example.crs.reservation.ReservationMetrics.Operation.CREATE;
+import static org.example.crs.reservation.ReservationMetrics.Operation.GET;
+import static org.example.crs.reservation.ReservationMetrics.Operation.UPDATE;
 import static org.example.crs.reservation.exception.ReservationException.notReactivableWithoutPeriod;
 import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
-import static org.example.crs.reservation.utils.ReservationPeriodUtils.getReservationAvailabilities;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.validateAvailabilitiesCheckPeriod;
 import static org.example.crs.reservation.utils.ReservationPeriodUtils.validateReservationPeriod;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.StreamSupport;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.example.crs.reservation.Reservation.ReservationStatus;
+import org.example.crs.reservation.ReservationMetrics.Operation;
+import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
 import org.example.crs.reservation.command.param.Availability;
 import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
@@ -25,12 +41,127 @@ import org.example.crs.reservation.exception.ReservationAvailabilityCheckExcepti
 import org.example.crs.reservation.exception.ReservationException;
 import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
 
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
 @Slf4j
-@RequiredArgsConstructor
 public class ReservationService
 {
+  /**
+   * Number of availability windows cached by default.
+   */
+  public static final int DEFAULT_AVAILABILITY_CACHE_SIZE = 64;
+
+  @Getter
   private final ReservationRepository repository;
 
+  /**
+   * The availabilities computed by window, invalidated by the changes of the occupancy calendar.
+   */
+  @Getter
+  private final AvailabilityCache availabilityCache;
+
+  @Getter
+  private final ReservationMetrics metrics;
+
+  /**
+   * The default window response, already rendered, or null.
+   */
+  private volatile RenderedWindow defaultWindow;
+
+  /**
+   * Incremented when the nights of the default window change, so the rendered response is outdated.
+   */
+  private final AtomicLong defaultWindowVersion = new AtomicLong();
+
+  @RequiredArgsConstructor
+  private static class RenderedWindow
+  {
+    private final long version;
+
+    /**
+     * Epoch millis of the end of the day it was rendered, when the default window moves.
+     */
+    private final long validUntil;
+
+    private final ByteString bytes;
+  }
+
+  /**
+   * @param repository The reservations repository.
+   */
+  public ReservationService(ReservationRepository repository)
+  {
+    this(repository, DEFAULT_AVAILABILITY_CACHE_SIZE);
+  }
+
+  /**
+   * @param repository The reservations repository.
+   * @param availabilityCacheSize The maximum number of availability windows cached.
+   */
+  public ReservationService(ReservationRepository repository, int availabilityCacheSize)
+  {
+    this(repository, availabilityCacheSize, new ReservationMetrics());
+  }
+
+  /**
+   * @param repository The reservations repository.
+   * @param availabilityCacheSize The maximum number of availability windows cached.
+   * @param metrics The metrics of the reservations.
+   */
+  public ReservationService(ReservationRepository repository, int availabilityCacheSize, ReservationMetrics metrics)
+  {
+    this(repository, availabilityCacheSize, metrics, new String[0]);
+  }
+
+  /**
+   * @param repository The reservations repository.
+   * @param availabilityCacheSize The maximum number of availability windows cached.
+   * @param metrics The metrics of the reservations, shared with other services.
+   * @param campsiteId The campsite served, used to label the metrics of the service.
+   */
+  public ReservationService(
+      ReservationRepository repository,
+      int availabilityCacheSize,
+      ReservationMetrics metrics,
+      String campsiteId)
+  {
+    this(repository, availabilityCacheSize, metrics, new String[] { "campsite", campsiteId });
+  }
+
+  private ReservationService(
+      ReservationRepository repository,
+      int availabilityCacheSize,
+      ReservationMetrics metrics,
+      String[] labels)
+  {
+    this.repository = repository;
+    this.availabilityCache = new AvailabilityCache(availabilityCacheSize);
+    this.metrics = metrics;
+
+    metrics.registerCache(availabilityCache, labels);
+
+    repository.getOccupancyCalendar().addListener(availabilityCache::invalidate);
+    repository.getOccupancyCalendar().addListener(this::invalidateDefaultWindow);
+  }
+
+  /**
+   * @return The first day of the default availabilities window (tomorrow).
+   */
+  public static LocalDate defaultCheckFrom()
+  {
+    return LocalDate.now().plus(ofDays(1));
+  }
+
+  /**
+   * @param checkFrom The first day of the availabilities window.
+   * @return The day after the default availabilities window (a month later).
+   */
+  public static LocalDate defaultCheckTo(LocalDate checkFrom)
+  {
+    return checkFrom.plus(ofMonths(1));
+  }
+
   /**
    * Creates a reservation.
    *
@@ -48,15 +179,51 @@ public class ReservationService
       return CompletableFuture.<Reservation>failedFuture(ex);
     }
 
-    return isAvailable(body).thenComposeAsync((isPeriodAvailable) ->
+    // the repository checks and books the nights atomically
+    return timed(CREATE, () -> repository.create(body));
+  }
+
+  /**
+   * Creates reservations as a batch: the valid ones are booked by the repository in a single pass,
+   * in the given order.
+   *
+   * @param bodies The create bodies.
+   * @return The promise of each reservation created, in the same order.
+   */
+  public List<CompletableFuture<Reservation>> createAll(List<ReservationCreateBody> bodies)
+  {
+    var results = new ArrayList<CompletableFuture<Reservation>>(Collections.nCopies(bodies.size(), null));
+
+    var valid = new ArrayList<ReservationCreateBody>(bodies.size());
+    var validIndexes = new ArrayList<Integer>(bodies.size());
+    for (var i = 0; i < bodies.size(); i++)
     {
-      if (!isPeriodAvailable)
+      try
+      {
+        validateReservationPeriod(bodies.get(i));
+        valid.add(bodies.get(i));
+        validIndexes.add(i);
+      }
+      catch (ReservationAvailabilityCheckException | ReservationException ex)
       {
-        return CompletableFuture.<Reservation>failedFuture(notAvailable());
+        results.set(i, CompletableFuture.failedFuture(ex));
       }
+    }
 
-      return repository.create(body);
-    });
+    if (valid.isEmpty())
+    {
+      return results;
+    }
+
+    var start = System.nanoTime();
+
+    var created = repository.createAll(valid);
+    for (var i = 0; i < created.size(); i++)
+    {
+      results.set(validIndexes.get(i), created.get(i).whenComplete((__, ex) -> metrics.recordRepository(CREATE, start)));
+    }
+
+    return results;
   }
 
   /**
@@ -77,7 +244,7 @@ public class ReservationService
         return CompletableFuture.<Optional<Reservation>>failedFuture(notReactivableWithoutPeriod());
       }
 
-      return repository.update(id, body);
+      return timed(UPDATE, () -> repository.update(id, body));
     }
 
     var periodUpdate = createPeriod(body);
@@ -90,15 +257,8 @@ public class ReservationService
       return CompletableFuture.<Optional<Reservation>>failedFuture(ex);
     }
 
-    return isAvailable(periodUpdate, Optional.of(id)).thenComposeAsync(isPeriodAvailable ->
-    {
-      if (!isPeriodAvailable)
-      {
-        return CompletableFuture.<Optional<Reservation>>failedFuture(notAvailable());
-      }
-
-      return repository.update(id, body);
-    });
+    // the repository checks and moves the nights atomically
+    return timed(UPDATE, () -> repository.update(id, body));
   }
 
   /**
@@ -107,67 +267,194 @@ public class ReservationService
    */
   public CompletableFuture<Optional<Reservation>> findById(UUID id)
   {
-    return repository.findById(id);
+    return timed(GET, () -> repository.findById(id));
+  }
+
+  /**
+   * Iterates over the reservations of the repository matching the filters, reading them as the
+   * iteration goes: however many they are, none are kept in memory.
+   *
+   * @param from Only the reservations departing at this date or after, if any.
+   * @param to Only the reservations arriving at this date or before, if any.
+   * @param status Only the reservations with this status, if any.
+   * @return The iterator of the reservations found, in no particular order.
+   */
+  public Iterator<Reservation> export(
+      Optional<LocalDate> from,
+      Optional<LocalDate> to,
+      Optional<ReservationStatus> status)
+  {
+    var reservations = StreamSupport.stream(((Iterable<Reservation>) repository::iterator).spliterator(), false);
+
+    return reservations
+        .filter(r -> from.isEmpty() || !r.getDepartureDate().isBefore(from.get()))
+        .filter(r -> to.isEmpty() || !r.getArrivalDate().isAfter(to.get()))
+        .filter(r -> status.isEmpty() || r.getStatus() == status.get())
+        .iterator();
   }
 
   /**
+   * Extracts the periods with at least one free pitch from the occupancy calendar, or from the cache
+   * when the window has already been computed since its nights last changed.
    *
-   * @param checkFrom
-   * @param checkTo
-   * @return
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @return The promise of the list of availabilities found.
    */
   public CompletableFuture<List<Availability>> getAvailabilities(LocalDate checkFrom, LocalDate checkTo)
   {
-    return getAvailabilities(checkFrom, checkTo, Optional.empty());
+    return getAvailabilities(checkFrom, checkTo, 1);
+  }
+
+  /**
+   * Extracts the periods with at least a number of free pitches from the occupancy calendar, or
+   * from the cache when the window has already been computed since its nights last changed.
+   *
+   * @param checkFrom The date from which we are checking availabilities.
+   * @param checkTo The date to which we are checking availabilities.
+   * @param minFree The number of free pitches wanted every night.
+   * @return The promise of the list of availabilities found.
+   */
+  public CompletableFuture<List<Availability>> getAvailabilities(LocalDate checkFrom, LocalDate checkTo, int minFree)
+  {
+    try
+    {
+      validateAvailabilitiesCheckPeriod(checkFrom.toEpochDay(), checkTo.toEpochDay());
+
+      if (minFree < 1)
+      {
+        throw ReservationAvailabilityCheckException.noPitch();
+      }
+    }
+    catch (ReservationAvailabilityCheckException ex)
+    {
+      return CompletableFuture.<List<Availability>>failedFuture(ex);
+    }
+
+    var calendar = repository.getOccupancyCalendar();
+
+    return availabilityCache.get(checkFrom, checkTo, minFree,
+        () -> calendar.getAvailabilities(checkFrom, checkTo, minFree));
+  }
+
+  /**
+   * Returns the availabilities of the default window, as a JSON GetAvailabilitiesResponse. The
+   * response is rendered once, then served as is until its nights change or the day rolls over.
+   *
+   * @return The promise of the JSON response, already completed when it is rendered.
+   */
+  public CompletableFuture<ByteString> getDefaultAvailabilities()
+  {
+    var rendered = defaultWindow;
+    if (rendered != null &&
+        rendered.version == defaultWindowVersion.get() &&
+        System.currentTimeMillis() < rendered.validUntil)
+    {
+      return CompletableFuture.completedFuture(rendered.bytes);
+    }
+
+    // read before computing, so a change during the rendering outdates it
+    var version = defaultWindowVersion.get();
+
+    var today = LocalDate.now();
+    var checkFrom = defaultCheckFrom();
+    var checkTo = defaultCheckTo(checkFrom);
+
+    // rendered once the availabilities are there, never waiting for them (e.g. a coalesced computation)
+    return availabilityCache.get(checkFrom, checkTo,
+        () -> repository.getOccupancyCalendar().getAvailabilities(checkFrom, checkTo)
+    ).thenApply(availabilities ->
+    {
+      var response = new GetAvailabilitiesResponse();
+      response.setFrom(checkFrom);
+      response.setTo(checkTo);
+      response.setAvailabilities(availabilities);
+
+      try
+      {
+        metrics.getDefaultWindowRenders().increment();
+
+        var bytes = ByteString.fromArrayUnsafe(OBJECT_MAPPER.writeValueAsBytes(response));
+        var validUntil = today.plus(ofDays(1)).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        defaultWindow = new RenderedWindow(version, validUntil, bytes);
+
+        return bytes;
+      }
+      catch (JsonProcessingException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    });
   }
 
-  public CompletableFuture<List<Availability>> getAvailabilities(
-      LocalDate checkFrom,
-      LocalDate checkTo,
-      Optional<UUID> ignoreId)
+  /**
+   * Drops what can be computed again (the cached availabilities and the rendered default window),
+   * when the service is not used for a while. The reservations are kept.
+   */
+  public void passivate()
   {
-    return repository.findFromExcept(checkFrom, ignoreId)
-        .thenApplyAsync((reservations) ->
-        {
-          var reservationPeriods = reservations.stream()
-              .filter(Reservation.activeOnly())
-              .map(ReservationPeriod.class::cast)
-              .collect(toList());
-          try
-          {
-            return getReservationAvailabilities(checkFrom, checkTo, reservationPeriods);
-          }
-          catch (ReservationAvailabilityCheckException | ReservationException ex)
-          {
-            throw new CompletionException(ex);
-          }
-        });
+    availabilityCache.clear();
+    defaultWindow = null;
   }
 
   public CompletableFuture<Optional<Reservation>> cancelReservation(UUID id)
   {
-    return repository.cancel(id);
+    return timed(CANCEL, () -> repository.cancel(id));
   }
 
   public CompletableFuture<Boolean> isAvailable(ReservationPeriod period)
   {
-    return isAvailable(period, Optional.empty());
+    return CompletableFuture.completedFuture(repository.getOccupancyCalendar().isFree(period));
   }
 
+  /**
+   * @param period The period to check.
+   * @param ignoreId A reservation whose nights must be considered as free.
+   * @return The promise of the period being free.
+   */
   public CompletableFuture<Boolean> isAvailable(ReservationPeriod period, Optional<UUID> ignoreId)
   {
-    return getAvailabilities(period.getArrivalDate(), period.getDepartureDate(), ignoreId)
-        .thenApplyAsync(availabilities ->
-        {
-          if (availabilities.isEmpty())
-          {
-            return false;
-          }
-
-          // must be strictly equal to the desired reservation period
-          var availability = availabilities.get(0);
-          return availability.getFrom().isEqual(period.getArrivalDate()) &&
-              availability.getTo().isEqual(period.getDepartureDate());
-        });
+    if (ignoreId.isEmpty())
+    {
+      return isAvailable(period);
+    }
+
+    return repository.findById(ignoreId.get()).thenApply(maybeIgnored ->
+    {
+      var calendar = repository.getOccupancyCalendar();
+
+      return maybeIgnored
+          .filter(Reservation.activeOnly())
+          .map(ignored -> calendar.isFree(period, ignored))
+          .orElseGet(() -> calendar.isFree(period));
+    });
+  }
+
+  /**
+   * @param operation The repository operation.
+   * @param call Calls the repository.
+   * @return The promise of the repository, whose duration is recorded.
+   */
+  private <T> CompletableFuture<T> timed(Operation operation, Supplier<CompletableFuture<T>> call)
+  {
+    var start = System.nanoTime();
+
+    return call.get().whenComplete((__, ex) -> metrics.recordRepository(operation, start));
+  }
+
+  /**
+   * Outdates the rendered default window when some of its nights changed.
+   *
+   * @param from The epoch-day of the first night changed.
+   * @param to The epoch-day after the last night changed.
+   */
+  private void invalidateDefaultWindow(long from, long to)
+  {
+    var checkFrom = defaultCheckFrom();
+    if (checkFrom.toEpochDay() < to && from < defaultCheckTo(checkFrom).toEpochDay())
+    {
+      defaultWindowVersion.incrementAndGet();
+    }
   }
 }
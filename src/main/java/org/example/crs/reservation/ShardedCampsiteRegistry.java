@@ -0,0 +1,106 @@
+package org.example.crs.reservation;
+
+import java.util.function.BiFunction;
+
+import org.example.crs.reservation.CampsiteRegistry.CampsiteCommand;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.cluster.sharding.typed.ShardingEnvelope;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+
+/**
+ * Forwards the commands of every campsite to the node of the cluster owning it, whichever node
+ * received them.
+ *
+ * Each campsite is a sharded entity: its registries, and so its reservations, live on a single node
+ * at a time, so two nodes never book the same night of a campsite. The entities are started on
+ * their first command, and passivated by the sharding once idle (see
+ * akka.cluster.sharding.passivate-idle-entity-after).
+ *
+ * The default campsite is sharded too, as the DEFAULT_CAMPSITE one.
+ */
+public class ShardedCampsiteRegistry extends AbstractBehavior<Command>
+{
+  /**
+   * The id of the default campsite, in the cluster.
+   */
+  public static final String DEFAULT_CAMPSITE = "default";
+
+  public static final EntityTypeKey<Command> TYPE_KEY = EntityTypeKey.create(Command.class, "Campsite");
+
+  /**
+   * The local shard region, which knows where each campsite lives.
+   */
+  private final ActorRef<ShardingEnvelope<Command>> region;
+
+  /**
+   * @param context The context, given by the Behavior.setup() call.
+   * @param region The local shard region of the campsites.
+   */
+  public ShardedCampsiteRegistry(ActorContext<Command> context, ActorRef<ShardingEnvelope<Command>> region)
+  {
+    super(context);
+    this.region = region;
+  }
+
+  /**
+   * Starts the sharding of the campsites on the node. Every node of the cluster must start it.
+   *
+   * @param system The actor system of the node.
+   * @param campsites The campsites served, their partition is only created on the node owning them.
+   * @param registries Creates the registries of a campsite, given its id and service.
+   * @return The local shard region of the campsites.
+   */
+  public static ActorRef<ShardingEnvelope<Command>> init(
+      ActorSystem<?> system,
+      Campsites campsites,
+      BiFunction<String, ReservationService, Behavior<Command>> registries)
+  {
+    return ClusterSharding.get(system).init(Entity.of(TYPE_KEY, ctx ->
+        registries.apply(ctx.getEntityId(), campsites.service(ctx.getEntityId()))));
+  }
+
+  /**
+   * The builder we use the create this actor.
+   *
+   * @param region The local shard region of the campsites.
+   * @return The actor which forwards the commands to the registries of the campsites.
+   */
+  public static Behavior<Command> create(ActorRef<ShardingEnvelope<Command>> region)
+  {
+    return Behaviors.setup(ctx -> new ShardedCampsiteRegistry(ctx, region));
+  }
+
+  /**
+   * @return The events receiver.
+   */
+  @Override
+  public Receive<Command> createReceive()
+  {
+    return newReceiveBuilder()
+        .onMessage(CampsiteCommand.class, this::onCampsiteCommand)
+        .build();
+  }
+
+  /**
+   * Forwards a command to the shard region, which routes it to the node owning the campsite.
+   *
+   * @param command The campsite command.
+   * @return The current actor.
+   */
+  private Behavior<Command> onCampsiteCommand(CampsiteCommand command)
+  {
+    region.tell(new ShardingEnvelope<>(command.getCampsiteId(), command.getCommand()));
+
+    return this;
+  }
+}
@@ -0,0 +1,69 @@
+package org.example.crs.reservation;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates UUID version 7 ids: the unix epoch millis in the 48 most significant bits, then a
+ * 12 bits sequence, then 62 random bits.
+ *
+ * The millis and the sequence are taken together from a single atomic counter, so the ids of a
+ * generator are strictly increasing (in UUID order) without any lock: when more than 4096 ids are
+ * asked within a millisecond, the sequence overflows into the millis, which run a bit ahead of the
+ * clock until it catches up. The random bits come from the thread's own random generator, so
+ * concurrent calls never wait on a shared SecureRandom.
+ *
+ * The ids are unique, but not unguessable: use ReservationIdGenerator.random() when they must be.
+ */
+public class TimeOrderedIdGenerator implements ReservationIdGenerator
+{
+  private static final int SEQUENCE_BITS = 12;
+
+  private static final long VERSION = 7L << SEQUENCE_BITS;
+
+  private static final long VARIANT = 0x8000_0000_0000_0000L;
+
+  private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+  /**
+   * The millis and the sequence of the last id, as (millis << SEQUENCE_BITS) | sequence.
+   */
+  private final AtomicLong last = new AtomicLong();
+
+  @Override
+  public UUID next()
+  {
+    var stamp = nextStamp();
+
+    var millis = stamp >>> SEQUENCE_BITS;
+    var sequence = stamp & ((1L << SEQUENCE_BITS) - 1);
+
+    var mostSigBits = (millis << 16) | VERSION | sequence;
+    var leastSigBits = VARIANT | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+
+    return new UUID(mostSigBits, leastSigBits);
+  }
+
+  /**
+   * @param id A time-ordered id.
+   * @return The epoch millis the id has been generated at.
+   */
+  public static long millisOf(UUID id)
+  {
+    return id.getMostSignificantBits() >>> 16;
+  }
+
+  private long nextStamp()
+  {
+    while (true)
+    {
+      var previous = last.get();
+      var next = Math.max(System.currentTimeMillis() << SEQUENCE_BITS, previous + 1);
+      if (last.compareAndSet(previous, next))
+      {
+        return next;
+      }
+    }
+  }
+}
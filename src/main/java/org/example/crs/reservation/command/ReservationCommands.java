@@ -11,6 +11,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.UtilityClass;
 
+import org.example.crs.JsonSerializable;
 import org.example.crs.reservation.Reservation;
 import org.example.crs.reservation.command.param.Availability;
 import org.example.crs.reservation.command.param.ReservationCreateBody;
@@ -19,6 +20,7 @@ import org.example.crs.reservation.command.param.ReservationUpdateBody;
 import akka.actor.typed.ActorRef;
 import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @UtilityClass
@@ -26,16 +28,30 @@ public class ReservationCommands
 {
   /**
    * The main command interface.
+   *
+   * Commands and responses are serializable, as they go through the network to reach the node owning
+   * a campsite in cluster mode.
    */
-  public static interface Command
+  public static interface Command extends JsonSerializable
   {
   }
 
+  /**
+   * A command targeting a single reservation.
+   */
+  public static interface ReservationIdCommand extends Command
+  {
+    /**
+     * @return The id of the targeted reservation.
+     */
+    UUID getId();
+  }
+
   /**
    * The main command response.
    */
   @Data
-  public static class CommandResponse
+  public static class CommandResponse implements JsonSerializable
   {
     @JsonIgnore
     private StatusCode status = StatusCodes.OK;
@@ -58,13 +74,30 @@ public class ReservationCommands
     {
       return maybeException.map(Throwable::getLocalizedMessage).orElse(null);
     }
+
+    /**
+     * @param statusCode The status code int value, of a response read from another node.
+     */
+    public void setStatusCode(int statusCode)
+    {
+      status = StatusCodes.get(statusCode);
+    }
+
+    /**
+     * @param error The error message, or null, of a response read from another node (only the message
+     * of the exception goes through the network).
+     */
+    public void setError(String error)
+    {
+      maybeException = Optional.ofNullable(error).map(RuntimeException::new);
+    }
   }
 
   /**
    * The create command.
    */
   @Getter
-  @RequiredArgsConstructor
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
   public static class CreateReservationCmd implements Command
   {
     private final ReservationCreateBody body;
@@ -81,15 +114,46 @@ public class ReservationCommands
     private Reservation reservation;
   }
 
+  /**
+   * The batch create command: the reservations are booked in the given order, each one only if its
+   * nights are still free once the previous ones are booked.
+   */
+  @Getter
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
+  public static class CreateReservationsCmd implements Command
+  {
+    private final List<ReservationCreateBody> bodies;
+    private final ActorRef<CreateReservationsResponse> replyTo;
+  }
+
+  /**
+   * The batch create response.
+   */
+  @Data
+  @EqualsAndHashCode(callSuper = false)
+  public static class CreateReservationsResponse extends CommandResponse
+  {
+    /**
+     * The response of each creation, in the order of the bodies.
+     */
+    private List<CreateReservationResponse> responses;
+  }
+
   /**
    * The check availabilities command.
    */
   @Getter
-  @RequiredArgsConstructor
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
   public static class GetAvailabilitiesCmd implements Command
   {
     private final Optional<LocalDate> maybeCheckFrom;
     private final Optional<LocalDate> maybeCheckTo;
+
+    /**
+     * The number of free pitches wanted every night.
+     */
+    private final int minFreePitches;
+
     private final ActorRef<GetAvailabilitiesResponse> replyTo;
   }
 
@@ -109,8 +173,8 @@ public class ReservationCommands
    * The retrieve command.
    */
   @Getter
-  @RequiredArgsConstructor
-  public static class GetReservationCmd implements Command
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
+  public static class GetReservationCmd implements ReservationIdCommand
   {
     private final UUID id;
     private final ActorRef<GetReservationResponse> replyTo;
@@ -130,8 +194,8 @@ public class ReservationCommands
    * The update command.
    */
   @Getter
-  @RequiredArgsConstructor
-  public static class UpdateReservationCmd implements Command
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
+  public static class UpdateReservationCmd implements ReservationIdCommand
   {
     private final UUID id;
     private final ReservationUpdateBody body;
@@ -152,8 +216,8 @@ public class ReservationCommands
    * The cancel command.
    */
   @Getter
-  @RequiredArgsConstructor
-  public static class CancelReservationCmd implements Command
+  @RequiredArgsConstructor(onConstructor_ = @JsonCreator)
+  public static class CancelReservationCmd implements ReservationIdCommand
   {
     private final UUID id;
     private final ActorRef<CancelReservationResponse> replyTo;
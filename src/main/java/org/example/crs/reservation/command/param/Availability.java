@@ -1,7 +1,6 @@
 package org.example.crs.reservation.command.param;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,12 +21,28 @@ public class Availability
   private LocalDate from;
   private LocalDate to;
 
+  /**
+   * The number of pitches still free every night of the period.
+   */
+  private int remainingPitches;
+
+  /**
+   * Creates an availability of a campsite with a single pitch.
+   *
+   * @param from The first day of the period.
+   * @param to The day after the last day of the period.
+   */
+  public Availability(LocalDate from, LocalDate to)
+  {
+    this(from, to, 1);
+  }
+
   /**
    * @return The number of days of the period.
    */
   @JsonProperty
   public long nbDays()
   {
-    return from.until(to, ChronoUnit.DAYS);
+    return to.toEpochDay() - from.toEpochDay();
   }
 }
@@ -0,0 +1,32 @@
+package org.example.crs.reservation.command.param;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.example.crs.reservation.Reservation;
+
+/**
+ * Describes the result of a line of an import.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationImportResult
+{
+  /**
+   * The number of the line in the imported file, from 1.
+   */
+  private long line;
+
+  /**
+   * 201 when the reservation is created, as for a single creation.
+   */
+  private int statusCode;
+
+  private String error;
+
+  private Reservation reservation;
+}
@@ -0,0 +1,67 @@
+package org.example.crs.reservation.event;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.UtilityClass;
+
+import org.example.crs.JsonSerializable;
+import org.example.crs.reservation.Reservation;
+
+/**
+ * The events persisted by the event-sourced registry, replayed in order to recover its reservations.
+ *
+ * Created and updated events carry the whole new version of the reservation, so replaying them
+ * never depends on the availabilities at the time.
+ */
+@UtilityClass
+public class ReservationEvents
+{
+  /**
+   * The main event interface.
+   */
+  public static interface Event extends JsonSerializable
+  {
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class ReservationCreated implements Event
+  {
+    private Reservation reservation;
+  }
+
+  /**
+   * A change of period, or of status (a reactivation).
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class ReservationUpdated implements Event
+  {
+    private Reservation reservation;
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class ReservationCanceled implements Event
+  {
+    private UUID id;
+  }
+
+  /**
+   * The reservations of the registry, so its recovery only replays the events after it.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class ReservationsSnapshot implements JsonSerializable
+  {
+    private List<Reservation> reservations;
+  }
+}
@@ -9,6 +9,7 @@ public class ReservationAvailabilityCheckException extends Exception
   public static final String TOO_SHORT_MESSAGE = "Period must contain at least one day.";
   public static final String TOO_SOON_MESSAGE = "Period must start at least tomorow.";
   public static final String TOO_FAR_MESSAGE = "Period must start the next month, at most.";
+  public static final String NO_PITCH_MESSAGE = "At least one free pitch must be wanted.";
 
   private ReservationAvailabilityCheckException(String message)
   {
@@ -54,4 +55,14 @@ public class ReservationAvailabilityCheckException extends Exception
   {
     return new ReservationAvailabilityCheckException(TOO_FAR_MESSAGE);
   }
+
+  /**
+   * Create an exception for the case of we are looking for less than one free pitch.
+   *
+   * @return A reservation (check) exception.
+   */
+  public static ReservationAvailabilityCheckException noPitch()
+  {
+    return new ReservationAvailabilityCheckException(NO_PITCH_MESSAGE);
+  }
 }
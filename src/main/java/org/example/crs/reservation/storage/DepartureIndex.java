@@ -0,0 +1,113 @@
+package org.example.crs.reservation.storage;
+
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Index from a departure epoch-day to record numbers, so a scan from a date only visits the records
+ * departing at this date or after. The records of a day are kept in a primitive int array: the heap
+ * holds an object per departure day, not per record.
+ *
+ * The records of a day are not ordered: a record is removed by moving the last one in its place. A
+ * day without records is removed, so the index does not keep every past departure.
+ *
+ * Not thread-safe: the caller guards it.
+ */
+public class DepartureIndex
+{
+  private static final int MIN_CAPACITY = 4;
+
+  /**
+   * The records departing on a day.
+   */
+  private static class Records
+  {
+    private int[] values = new int[MIN_CAPACITY];
+    private int size;
+  }
+
+  private final NavigableMap<Integer, Records> byDeparture = new TreeMap<>();
+
+  private int size;
+
+  /**
+   * @param departure The departure epoch-day of the record.
+   * @param record The record number.
+   */
+  public void add(int departure, int record)
+  {
+    var records = byDeparture.computeIfAbsent(departure, __ -> new Records());
+    if (records.size == records.values.length)
+    {
+      records.values = Arrays.copyOf(records.values, records.size * 2);
+    }
+
+    records.values[records.size++] = record;
+    size++;
+  }
+
+  /**
+   * @param departure The departure epoch-day the record was added with.
+   * @param record The record number.
+   * @return If the record was indexed.
+   */
+  public boolean remove(int departure, int record)
+  {
+    var records = byDeparture.get(departure);
+    if (records == null)
+    {
+      return false;
+    }
+
+    for (var i = 0; i < records.size; i++)
+    {
+      if (records.values[i] == record)
+      {
+        records.values[i] = records.values[--records.size];
+        size--;
+
+        if (records.size == 0)
+        {
+          byDeparture.remove(departure);
+        }
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @param start An epoch-day.
+   * @return The records departing at this day or after, by departure.
+   */
+  public int[] from(int start)
+  {
+    var tail = byDeparture.tailMap(start, true).values();
+
+    var nbRecords = 0;
+    for (var records : tail)
+    {
+      nbRecords += records.size;
+    }
+
+    var found = new int[nbRecords];
+    var position = 0;
+    for (var records : tail)
+    {
+      System.arraycopy(records.values, 0, found, position, records.size);
+      position += records.size;
+    }
+
+    return found;
+  }
+
+  /**
+   * @return The number of records indexed.
+   */
+  public int size()
+  {
+    return size;
+  }
+}
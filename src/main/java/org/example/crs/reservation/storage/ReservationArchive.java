@@ -0,0 +1,684 @@
+package org.example.crs.reservation.storage;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import org.example.crs.reservation.Reservation;
+
+/**
+ * Cold tier of the reservations: append-only segments of reservations sorted by id, compressed by
+ * blocks.
+ *
+ * Every archival writes a new segment, which is never modified afterwards. Only the block index of
+ * each segment is kept in memory: looking for an id reads and inflates a single block per segment
+ * whose id range contains it, newest segments first (a reservation archived twice is found in its
+ * latest version).
+ *
+ * Segments are merged as they pile up: the newest one is merged into the previous one while it is at
+ * least half as large, or while there are more than MAX_SEGMENTS. The merge streams both segments
+ * block by block and keeps the latest version of every reservation. The segments then grow
+ * geometrically, so their number stays logarithmic in the number of archived reservations, and a
+ * reservation is rewritten a logarithmic number of times.
+ *
+ * Segment: compressed blocks, then the index (per block: first id as 2 longs, long offset, int
+ * compressed length, int raw length, int CRC32 of the raw block), then the footer (int number of
+ * blocks, int number of reservations, long index offset, last id as 2 longs, long magic).
+ */
+@Slf4j
+public class ReservationArchive implements AutoCloseable
+{
+  private static final long ARCHIVE_MAGIC = 0x4352535f41524348L; // CRS_ARCH
+
+  private static final String SEGMENT_FORMAT = "archive-%020d.bin";
+
+  private static final Pattern SEGMENT_PATTERN = Pattern.compile("archive-(\\d{20})\\.bin");
+
+  /**
+   * Number of reservations per compressed block.
+   */
+  private static final int BLOCK_SIZE = 64;
+
+  /**
+   * Number of segments above which the newest ones are merged whatever their sizes.
+   */
+  private static final int MAX_SEGMENTS = 16;
+
+  private static final int INDEX_ENTRY_SIZE = 3 * Long.BYTES + 3 * Integer.BYTES;
+  private static final int FOOTER_SIZE = 2 * Integer.BYTES + 4 * Long.BYTES;
+
+  @RequiredArgsConstructor
+  private static class Segment
+  {
+    private final Path file;
+    private final FileChannel channel;
+    private final UUID[] firstIds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+    private final int[] crcs;
+    private final UUID lastId;
+    private final int count;
+    private final long size;
+  }
+
+  /**
+   * Writes a segment from reservations sorted by id, one compressed block at a time.
+   */
+  private static class SegmentWriter implements AutoCloseable
+  {
+    private final FileChannel channel;
+    private final ByteBuffer index;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final CRC32 crc = new CRC32();
+    private final List<Reservation> block = new ArrayList<>(BLOCK_SIZE);
+    private long offset;
+    private int nbBlocks;
+    private int count;
+    private UUID lastId;
+
+    /**
+     * @param file The file to write.
+     * @param maxCount The maximum number of reservations written, to size the index.
+     */
+    SegmentWriter(Path file, int maxCount) throws IOException
+    {
+      this.channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+      var maxBlocks = (maxCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+      this.index = ByteBuffer.allocate(maxBlocks * INDEX_ENTRY_SIZE + FOOTER_SIZE);
+    }
+
+    void add(Reservation reservation) throws IOException
+    {
+      block.add(reservation);
+      lastId = reservation.getId();
+      count++;
+
+      if (block.size() == BLOCK_SIZE)
+      {
+        writeBlock();
+      }
+    }
+
+    /**
+     * Writes the last block, the index and the footer, and syncs the segment.
+     *
+     * @return The number of reservations written.
+     */
+    int finish() throws IOException
+    {
+      if (!block.isEmpty())
+      {
+        writeBlock();
+      }
+
+      index.putInt(nbBlocks)
+          .putInt(count)
+          .putLong(offset)
+          .putLong(lastId.getMostSignificantBits())
+          .putLong(lastId.getLeastSignificantBits())
+          .putLong(ARCHIVE_MAGIC);
+
+      write(channel, index.flip());
+      channel.force(false);
+
+      return count;
+    }
+
+    private void writeBlock() throws IOException
+    {
+      var raw = new ByteArrayOutputStream();
+      for (var reservation : block)
+      {
+        raw.writeBytes(ReservationCodec.encode(reservation));
+      }
+      var rawBytes = raw.toByteArray();
+
+      crc.reset();
+      crc.update(rawBytes);
+
+      var compressed = deflate(deflater, rawBytes);
+      write(channel, ByteBuffer.wrap(compressed));
+
+      var firstId = block.get(0).getId();
+      index.putLong(firstId.getMostSignificantBits())
+          .putLong(firstId.getLeastSignificantBits())
+          .putLong(offset)
+          .putInt(compressed.length)
+          .putInt(rawBytes.length)
+          .putInt((int) crc.getValue());
+
+      offset += compressed.length;
+      nbBlocks++;
+      block.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      deflater.end();
+      channel.close();
+    }
+  }
+
+  private final Path directory;
+
+  /**
+   * The segments, oldest first.
+   */
+  private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+  /**
+   * Held (shared) by the lookups, so the merged segments are only closed once nobody reads them.
+   */
+  private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+  private long lastSeq;
+
+  /**
+   * Opens (or creates) an archive directory, and loads the index of its segments.
+   *
+   * @param directory The directory containing the archive segments.
+   * @return The archive.
+   * @throws IOException In case the directory or a segment can not be read.
+   */
+  public static ReservationArchive open(Path directory) throws IOException
+  {
+    Files.createDirectories(directory);
+
+    var archive = new ReservationArchive(directory);
+    archive.load();
+
+    return archive;
+  }
+
+  private ReservationArchive(Path directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Writes reservations in a new segment, then merges the newest segments if needed. They can be
+   * found once it returns.
+   *
+   * @param reservations The reservations to archive.
+   * @throws IOException In case the segment can not be written.
+   */
+  public synchronized void append(Collection<Reservation> reservations) throws IOException
+  {
+    if (reservations.isEmpty())
+    {
+      return;
+    }
+
+    var sorted = reservations.stream()
+        .sorted(comparing(Reservation::getId))
+        .collect(toList());
+
+    var seq = lastSeq + 1;
+    var file = directory.resolve(String.format(SEGMENT_FORMAT, seq));
+    var tmp = directory.resolve(file.getFileName() + ".tmp");
+
+    try (var writer = new SegmentWriter(tmp, sorted.size()))
+    {
+      for (var reservation : sorted)
+      {
+        writer.add(reservation);
+      }
+      writer.finish();
+    }
+
+    Files.move(tmp, file, ATOMIC_MOVE);
+
+    segments.add(readSegment(file));
+    lastSeq = seq;
+
+    log.info("Archive segment #{} written with {} reservations", seq, sorted.size());
+
+    mergeSegments();
+  }
+
+  /**
+   * @param id The reservation id.
+   * @return The latest archived version of the reservation, if any.
+   * @throws UncheckedIOException In case the archive can not be read.
+   */
+  public Optional<Reservation> findById(UUID id)
+  {
+    segmentsLock.readLock().lock();
+    try
+    {
+      var all = segments.toArray(new Segment[0]);
+      for (var i = all.length - 1; i >= 0; i--)
+      {
+        var found = find(all[i], id);
+        if (found.isPresent())
+        {
+          return found;
+        }
+      }
+
+      return Optional.empty();
+    }
+    finally
+    {
+      segmentsLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The number of reservations archived (a reservation archived twice counts twice, until
+   * its segments are merged).
+   */
+  public long size()
+  {
+    return segments.stream().mapToLong(s -> s.count).sum();
+  }
+
+  /**
+   * @return The number of segments of the archive.
+   */
+  public int segmentCount()
+  {
+    return segments.size();
+  }
+
+  /**
+   * @return The size of the archive on disk, in bytes.
+   */
+  public long sizeInBytes()
+  {
+    return segments.stream().mapToLong(s -> s.size).sum();
+  }
+
+  @Override
+  public void close()
+  {
+    for (var segment : segments)
+    {
+      try
+      {
+        segment.channel.close();
+      }
+      catch (IOException ex)
+      {
+        log.error("Failed to close the archive segment {}", segment.file, ex);
+      }
+    }
+    segments.clear();
+  }
+
+  /**
+   * Merges the two newest segments, until the previous segment is more than twice as large as the
+   * newest one and there are at most MAX_SEGMENTS.
+   */
+  private void mergeSegments() throws IOException
+  {
+    while (segments.size() > 1)
+    {
+      var newer = segments.get(segments.size() - 1);
+      var older = segments.get(segments.size() - 2);
+      if (segments.size() <= MAX_SEGMENTS && older.count > 2 * newer.count)
+      {
+        return;
+      }
+
+      merge(older, newer);
+    }
+  }
+
+  /**
+   * Replaces the two newest segments by a new one, keeping the version of the newer segment of the
+   * reservations found in both.
+   */
+  private void merge(Segment older, Segment newer) throws IOException
+  {
+    var seq = lastSeq + 1;
+    var file = directory.resolve(String.format(SEGMENT_FORMAT, seq));
+    var tmp = directory.resolve(file.getFileName() + ".tmp");
+
+    int count;
+    try (var writer = new SegmentWriter(tmp, older.count + newer.count))
+    {
+      var olderReservations = iterator(older);
+      var newerReservations = iterator(newer);
+
+      var fromOlder = nextOrNull(olderReservations);
+      var fromNewer = nextOrNull(newerReservations);
+      while (fromOlder != null || fromNewer != null)
+      {
+        var order = fromOlder == null ? 1
+            : fromNewer == null ? -1
+            : fromOlder.getId().compareTo(fromNewer.getId());
+        if (order < 0)
+        {
+          writer.add(fromOlder);
+          fromOlder = nextOrNull(olderReservations);
+          continue;
+        }
+
+        writer.add(fromNewer);
+        fromNewer = nextOrNull(newerReservations);
+        if (order == 0)
+        {
+          fromOlder = nextOrNull(olderReservations);
+        }
+      }
+
+      count = writer.finish();
+    }
+    catch (UncheckedIOException ex)
+    {
+      throw ex.getCause();
+    }
+
+    Files.move(tmp, file, ATOMIC_MOVE);
+
+    // the merged segment is the newest one, so it is read first until the others are gone
+    segments.add(readSegment(file));
+    lastSeq = seq;
+
+    segmentsLock.writeLock().lock();
+    try
+    {
+      segments.remove(older);
+      segments.remove(newer);
+    }
+    finally
+    {
+      segmentsLock.writeLock().unlock();
+    }
+
+    for (var merged : List.of(older, newer))
+    {
+      merged.channel.close();
+      Files.delete(merged.file);
+    }
+
+    log.info("Archive segments {} and {} merged into #{} with {} reservations",
+        older.file.getFileName(), newer.file.getFileName(), seq, count);
+  }
+
+  /**
+   * @return The reservations of a segment, by id, inflated one block at a time.
+   * @throws UncheckedIOException In case the segment can not be read.
+   */
+  private Iterator<Reservation> iterator(Segment segment)
+  {
+    return new Iterator<>()
+    {
+      private int nextBlock;
+      private ByteBuffer block = ByteBuffer.allocate(0);
+
+      @Override
+      public boolean hasNext()
+      {
+        while (!block.hasRemaining() && nextBlock < segment.firstIds.length)
+        {
+          try
+          {
+            block = readBlock(segment, nextBlock++);
+          }
+          catch (IOException ex)
+          {
+            throw new UncheckedIOException(ex);
+          }
+        }
+
+        return block.hasRemaining();
+      }
+
+      @Override
+      public Reservation next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+
+        return ReservationCodec.decode(block);
+      }
+    };
+  }
+
+  private static Reservation nextOrNull(Iterator<Reservation> reservations)
+  {
+    return reservations.hasNext() ? reservations.next() : null;
+  }
+
+  private Optional<Reservation> find(Segment segment, UUID id)
+  {
+    if (id.compareTo(segment.firstIds[0]) < 0 || id.compareTo(segment.lastId) > 0)
+    {
+      return Optional.empty();
+    }
+
+    // the last block starting at or before the id
+    var low = 0;
+    var high = segment.firstIds.length - 1;
+    while (low < high)
+    {
+      var mid = (low + high + 1) >>> 1;
+      if (segment.firstIds[mid].compareTo(id) <= 0)
+      {
+        low = mid;
+      }
+      else
+      {
+        high = mid - 1;
+      }
+    }
+
+    try
+    {
+      var block = readBlock(segment, low);
+      while (block.hasRemaining())
+      {
+        var reservation = ReservationCodec.decode(block);
+        if (reservation.getId().equals(id))
+        {
+          return Optional.of(reservation);
+        }
+      }
+
+      return Optional.empty();
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException("Failed to read the archive segment " + segment.file, ex);
+    }
+  }
+
+  private ByteBuffer readBlock(Segment segment, int block) throws IOException
+  {
+    var compressed = ByteBuffer.allocate(segment.lengths[block]);
+    var position = segment.offsets[block];
+    while (compressed.hasRemaining())
+    {
+      if (segment.channel.read(compressed, position + compressed.position()) < 0)
+      {
+        throw new IOException("Truncated archive segment " + segment.file);
+      }
+    }
+
+    var raw = new byte[segment.rawLengths[block]];
+    var inflater = new Inflater();
+    try
+    {
+      inflater.setInput(compressed.array());
+      if (inflater.inflate(raw) != raw.length)
+      {
+        throw new IOException("Truncated archive block in " + segment.file);
+      }
+    }
+    catch (DataFormatException ex)
+    {
+      throw new IOException("Corrupted archive block in " + segment.file, ex);
+    }
+    finally
+    {
+      inflater.end();
+    }
+
+    var crc = new CRC32();
+    crc.update(raw);
+    if ((int) crc.getValue() != segment.crcs[block])
+    {
+      throw new IOException("Corrupted archive block in " + segment.file);
+    }
+
+    return ByteBuffer.wrap(raw);
+  }
+
+  private void load() throws IOException
+  {
+    for (var file : listSegments())
+    {
+      segments.add(readSegment(file));
+      lastSeq = Math.max(lastSeq, seqOf(file));
+    }
+
+    // e.g. after a crash in the middle of a merge
+    mergeSegments();
+
+    log.info("Archive loaded with {} reservations in {} segments", size(), segments.size());
+  }
+
+  private static Segment readSegment(Path file) throws IOException
+  {
+    var channel = FileChannel.open(file, READ);
+    try
+    {
+      var size = channel.size();
+      var footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+
+      var nbBlocks = footer.getInt();
+      var count = footer.getInt();
+      var indexOffset = footer.getLong();
+      var lastId = new UUID(footer.getLong(), footer.getLong());
+      if (footer.getLong() != ARCHIVE_MAGIC)
+      {
+        throw new IOException("Not an archive segment: " + file);
+      }
+
+      var index = readFully(channel, indexOffset, nbBlocks * INDEX_ENTRY_SIZE);
+      var firstIds = new UUID[nbBlocks];
+      var offsets = new long[nbBlocks];
+      var lengths = new int[nbBlocks];
+      var rawLengths = new int[nbBlocks];
+      var crcs = new int[nbBlocks];
+      for (var i = 0; i < nbBlocks; i++)
+      {
+        firstIds[i] = new UUID(index.getLong(), index.getLong());
+        offsets[i] = index.getLong();
+        lengths[i] = index.getInt();
+        rawLengths[i] = index.getInt();
+        crcs[i] = index.getInt();
+      }
+
+      return new Segment(file, channel, firstIds, offsets, lengths, rawLengths, crcs, lastId, count, size);
+    }
+    catch (IOException | RuntimeException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException
+  {
+    if (position < 0)
+    {
+      throw new IOException("Truncated archive segment");
+    }
+
+    var buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining())
+    {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+      {
+        throw new IOException("Truncated archive segment");
+      }
+    }
+
+    return buffer.flip();
+  }
+
+  private static byte[] deflate(Deflater deflater, byte[] raw)
+  {
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+
+    var compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+    var chunk = new byte[4096];
+    while (!deflater.finished())
+    {
+      compressed.write(chunk, 0, deflater.deflate(chunk));
+    }
+
+    return compressed.toByteArray();
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+  }
+
+  private List<Path> listSegments() throws IOException
+  {
+    try (Stream<Path> files = Files.list(directory))
+    {
+      return files
+          .filter(f -> SEGMENT_PATTERN.matcher(f.getFileName().toString()).matches())
+          .sorted()
+          .collect(toList());
+    }
+    catch (UncheckedIOException ex)
+    {
+      throw ex.getCause();
+    }
+  }
+
+  private static long seqOf(Path file)
+  {
+    var matcher = SEGMENT_PATTERN.matcher(file.getFileName().toString());
+    matcher.matches();
+
+    return Long.parseLong(matcher.group(1));
+  }
+}
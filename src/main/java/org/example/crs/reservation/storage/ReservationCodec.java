@@ -0,0 +1,97 @@
+package org.example.crs.reservation.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import lombok.experimental.UtilityClass;
+
+import org.example.crs.reservation.Reservation;
+import org.example.crs.reservation.Reservation.ReservationStatus;
+
+/**
+ * Compact binary representation of a reservation, used by the journal and the snapshots.
+ *
+ * Layout: id (2 longs), arrival and departure (epoch-days, 2 ints), status (1 byte), client email
+ * and client name (int length, -1 for null, followed by the UTF-8 bytes).
+ */
+@UtilityClass
+public class ReservationCodec
+{
+  private static final ReservationStatus[] STATUSES = ReservationStatus.values();
+
+  /**
+   * @param reservation The reservation to encode.
+   * @return The encoded reservation.
+   */
+  public static byte[] encode(Reservation reservation)
+  {
+    var email = bytesOf(reservation.getClientEmail());
+    var name = bytesOf(reservation.getClientName());
+
+    var size = 2 * Long.BYTES + 2 * Integer.BYTES + 1 +
+        Integer.BYTES + (email == null ? 0 : email.length) +
+        Integer.BYTES + (name == null ? 0 : name.length);
+
+    var buffer = ByteBuffer.allocate(size)
+        .putLong(reservation.getId().getMostSignificantBits())
+        .putLong(reservation.getId().getLeastSignificantBits())
+        .putInt((int) reservation.getArrivalDate().toEpochDay())
+        .putInt((int) reservation.getDepartureDate().toEpochDay())
+        .put((byte) reservation.getStatus().ordinal());
+    putBytes(buffer, email);
+    putBytes(buffer, name);
+
+    return buffer.array();
+  }
+
+  /**
+   * Decodes a reservation at the current position of a buffer, and moves the position after it.
+   *
+   * @param buffer The buffer to read.
+   * @return The decoded reservation.
+   */
+  public static Reservation decode(ByteBuffer buffer)
+  {
+    return Reservation.builder()
+        .id(new UUID(buffer.getLong(), buffer.getLong()))
+        .arrivalDate(LocalDate.ofEpochDay(buffer.getInt()))
+        .departureDate(LocalDate.ofEpochDay(buffer.getInt()))
+        .status(STATUSES[buffer.get()])
+        .clientEmail(getString(buffer))
+        .clientName(getString(buffer))
+        .build();
+  }
+
+  private static byte[] bytesOf(String value)
+  {
+    return value == null ? null : value.getBytes(UTF_8);
+  }
+
+  private static void putBytes(ByteBuffer buffer, byte[] bytes)
+  {
+    if (bytes == null)
+    {
+      buffer.putInt(-1);
+      return;
+    }
+
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static String getString(ByteBuffer buffer)
+  {
+    var length = buffer.getInt();
+    if (length < 0)
+    {
+      return null;
+    }
+
+    var bytes = new byte[length];
+    buffer.get(bytes);
+
+    return new String(bytes, UTF_8);
+  }
+}
@@ -0,0 +1,710 @@
+package org.example.crs.reservation.storage;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.example.crs.reservation.Reservation;
+
+/**
+ * Append-only write-ahead log (WAL) of the reservations, with compact snapshots.
+ *
+ * Every write appends the new state of a reservation in memory. A flusher thread writes the pending
+ * records to the current WAL segment and syncs it to disk (group commit): all the writes appended
+ * during a sync are committed together by the next one.
+ *
+ * The journal is fail-stop: once a write or a sync of a segment fails, the segment may end with a
+ * torn record, after which nothing could be replayed. The pending writes are failed, then every
+ * later append, sync and snapshot is refused.
+ *
+ * A snapshot rolls the WAL to a new segment, then streams every reservation in a memory-mapped file,
+ * chunk by chunk.
+ * The segments covered by the snapshot are deleted. On boot, the latest snapshot is loaded, then the
+ * tail of the WAL is replayed.
+ *
+ * WAL record: int length, long sequence number, encoded reservation, int CRC32.<br>
+ * Snapshot: long magic, long sequence number, int count, encoded reservations, int CRC32.
+ */
+@Slf4j
+public class ReservationJournal implements AutoCloseable
+{
+  private static final long SNAPSHOT_MAGIC = 0x4352535f534e4150L; // CRS_SNAP
+
+  private static final String SEGMENT_FORMAT = "wal-%020d.log";
+  private static final String SNAPSHOT_FORMAT = "snapshot-%020d.bin";
+
+  private static final Pattern SEGMENT_PATTERN = Pattern.compile("wal-(\\d{20})\\.log");
+  private static final Pattern SNAPSHOT_PATTERN = Pattern.compile("snapshot-(\\d{20})\\.bin");
+
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int SNAPSHOT_HEADER_SIZE = 2 * Long.BYTES + Integer.BYTES;
+  private static final int SNAPSHOT_CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private final Path directory;
+
+  private final long groupCommitWindowNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition hasWork = lock.newCondition();
+
+  /*
+   * State guarded by the lock.
+   */
+  private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+  private CompletableFuture<Void> inFlightFlush;
+  private CompletableFuture<Long> rollRequest;
+  private long lastSeq;
+  private boolean closed;
+
+  /**
+   * Why the last flush failed, if it did: the journal does not accept anything anymore.
+   */
+  private Throwable failure;
+
+  /**
+   * Only used by the flusher thread (and by replay, before it starts).
+   */
+  private FileChannel segment;
+
+  private final Thread flusher;
+
+  private final CRC32 crc = new CRC32();
+
+  /**
+   * Opens (or creates) a journal directory.
+   *
+   * @param directory The directory containing the WAL segments and the snapshots.
+   * @param groupCommitWindow How long the flusher waits for more writes before syncing.
+   * @return The journal, ready to replay then to append.
+   * @throws IOException In case the directory can not be created.
+   */
+  public static ReservationJournal open(Path directory, Duration groupCommitWindow) throws IOException
+  {
+    Files.createDirectories(directory);
+
+    return new ReservationJournal(directory, groupCommitWindow);
+  }
+
+  private ReservationJournal(Path directory, Duration groupCommitWindow)
+  {
+    this.directory = directory;
+    this.groupCommitWindowNanos = groupCommitWindow.toNanos();
+    this.flusher = new Thread(this::flushLoop, "crs-journal-flusher");
+    this.flusher.setDaemon(true);
+  }
+
+  /**
+   * Loads the latest snapshot and the WAL tail, then starts accepting appends in a new segment.
+   *
+   * @param consumer Receives every reservation state, in order.
+   * @throws IOException In case the files can not be read.
+   */
+  public void replay(Consumer<Reservation> consumer) throws IOException
+  {
+    var snapshotSeq = loadLatestSnapshot(consumer);
+    var seq = snapshotSeq;
+
+    for (var file : listFiles(SEGMENT_PATTERN))
+    {
+      seq = Math.max(seq, replaySegment(file, snapshotSeq, consumer));
+    }
+
+    lastSeq = seq;
+    segment = openSegment(seq + 1);
+    flusher.start();
+
+    log.info("Journal replayed up to #{} (snapshot #{})", seq, snapshotSeq);
+  }
+
+  /**
+   * Appends the new state of a reservation. It is durable once a following sync() completes.
+   *
+   * @param reservation The reservation, as it is now.
+   */
+  public void append(Reservation reservation)
+  {
+    var payload = ReservationCodec.encode(reservation);
+
+    lock.lock();
+    try
+    {
+      if (closed)
+      {
+        throw new IllegalStateException("The journal is closed.");
+      }
+
+      if (failure != null)
+      {
+        throw new IllegalStateException("The journal failed, it does not accept writes anymore.", failure);
+      }
+
+      var seq = ++lastSeq;
+
+      crc.reset();
+      crc.update(payload);
+
+      ensurePendingCapacity(HEADER_SIZE + payload.length + Integer.BYTES);
+      pending.putInt(Long.BYTES + payload.length)
+          .putLong(seq)
+          .put(payload)
+          .putInt((int) crc.getValue());
+
+      hasWork.signal();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The promise that everything appended so far is on disk.
+   */
+  public CompletableFuture<Void> sync()
+  {
+    lock.lock();
+    try
+    {
+      if (failure != null)
+      {
+        return CompletableFuture.failedFuture(failure);
+      }
+
+      if (pending.position() > 0)
+      {
+        return nextFlush;
+      }
+
+      if (inFlightFlush != null)
+      {
+        return inFlightFlush;
+      }
+
+      return CompletableFuture.completedFuture(null);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes a snapshot of all the reservations, then deletes the WAL segments and the snapshots it
+   * makes useless.
+   *
+   * The reservations are encoded in a bounded buffer, mapped at the end of the file each time it is
+   * full, so a snapshot never holds more than a chunk on the heap, whatever its size.
+   *
+   * @param state Supplies every reservation. It is called once the WAL has been rolled, so it
+   * iterates at least every write journaled before the snapshot sequence number.
+   * @throws IOException In case the snapshot can not be written.
+   */
+  public void snapshot(Supplier<Iterator<Reservation>> state) throws IOException
+  {
+    var seq = roll();
+
+    var count = 0;
+    var snapshotCrc = new CRC32();
+    var tmp = directory.resolve(String.format(SNAPSHOT_FORMAT, seq) + ".tmp");
+    try (var channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, READ, WRITE))
+    {
+      var position = (long) SNAPSHOT_HEADER_SIZE;
+      var chunk = ByteBuffer.allocate(SNAPSHOT_CHUNK_SIZE);
+
+      for (var reservations = state.get(); reservations.hasNext(); count++)
+      {
+        var record = ReservationCodec.encode(reservations.next());
+        if (chunk.remaining() < record.length)
+        {
+          position = writeChunk(channel, position, chunk);
+          if (chunk.capacity() < record.length)
+          {
+            chunk = ByteBuffer.allocate(record.length);
+          }
+        }
+
+        chunk.put(record);
+        snapshotCrc.update(record);
+      }
+      position = writeChunk(channel, position, chunk);
+
+      var trailer = channel.map(READ_WRITE, position, Integer.BYTES);
+      trailer.putInt((int) snapshotCrc.getValue());
+      trailer.force();
+
+      // the header last, so a snapshot with a valid header is complete
+      var header = channel.map(READ_WRITE, 0, SNAPSHOT_HEADER_SIZE);
+      header.putLong(SNAPSHOT_MAGIC)
+          .putLong(seq)
+          .putInt(count);
+      header.force();
+    }
+
+    Files.move(tmp, directory.resolve(String.format(SNAPSHOT_FORMAT, seq)), ATOMIC_MOVE);
+
+    // everything up to seq is now in the snapshot
+    for (var file : listFiles(SNAPSHOT_PATTERN))
+    {
+      if (seqOf(file, SNAPSHOT_PATTERN) < seq)
+      {
+        Files.delete(file);
+      }
+    }
+
+    for (var file : listFiles(SEGMENT_PATTERN))
+    {
+      if (seqOf(file, SEGMENT_PATTERN) <= seq)
+      {
+        Files.delete(file);
+      }
+    }
+
+    log.info("Snapshot #{} written with {} reservations", seq, count);
+  }
+
+  /**
+   * Writes the content of a buffer at a position of a file, through a mapping of this region only,
+   * then clears the buffer.
+   *
+   * @return The position following the written bytes.
+   */
+  private static long writeChunk(FileChannel channel, long position, ByteBuffer chunk) throws IOException
+  {
+    chunk.flip();
+
+    var size = chunk.remaining();
+    if (size > 0)
+    {
+      var mapped = channel.map(READ_WRITE, position, size);
+      mapped.put(chunk);
+      mapped.force();
+    }
+    chunk.clear();
+
+    return position + size;
+  }
+
+  /**
+   * Syncs what is pending, then stops the flusher.
+   */
+  @Override
+  public void close()
+  {
+    lock.lock();
+    try
+    {
+      if (closed)
+      {
+        return;
+      }
+      closed = true;
+      hasWork.signal();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    try
+    {
+      flusher.join();
+      if (segment != null)
+      {
+        segment.close();
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (IOException ex)
+    {
+      log.error("Failed to close the journal", ex);
+    }
+  }
+
+  /**
+   * Asks the flusher to move to a new segment after its next sync.
+   *
+   * @return The sequence number of the last record of the previous segments.
+   */
+  private long roll() throws IOException
+  {
+    CompletableFuture<Long> request;
+
+    lock.lock();
+    try
+    {
+      if (failure != null)
+      {
+        throw new IOException("The journal failed", failure);
+      }
+
+      if (rollRequest == null)
+      {
+        rollRequest = new CompletableFuture<>();
+      }
+      request = rollRequest;
+      hasWork.signal();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    try
+    {
+      return request.join();
+    }
+    catch (RuntimeException ex)
+    {
+      throw new IOException("Failed to roll the journal", ex);
+    }
+  }
+
+  private void flushLoop()
+  {
+    while (true)
+    {
+      CompletableFuture<Void> batch;
+      CompletableFuture<Long> roll;
+      long batchSeq;
+
+      lock.lock();
+      try
+      {
+        while (pending.position() == 0 && rollRequest == null && !closed)
+        {
+          hasWork.awaitUninterruptibly();
+        }
+
+        if (pending.position() == 0 && rollRequest == null && closed)
+        {
+          return;
+        }
+
+        // lets more writers join this commit
+        var deadline = System.nanoTime() + groupCommitWindowNanos;
+        for (var remaining = groupCommitWindowNanos; remaining > 0 && !closed; remaining = deadline - System.nanoTime())
+        {
+          hasWork.awaitNanos(remaining);
+        }
+
+        var swap = flushing;
+        flushing = pending;
+        pending = swap;
+        pending.clear();
+
+        batch = nextFlush;
+        nextFlush = new CompletableFuture<>();
+        inFlightFlush = batch;
+
+        roll = rollRequest;
+        rollRequest = null;
+
+        batchSeq = lastSeq;
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+
+      try
+      {
+        flushing.flip();
+        while (flushing.hasRemaining())
+        {
+          segment.write(flushing);
+        }
+        segment.force(false);
+
+        if (roll != null)
+        {
+          segment.close();
+          segment = openSegment(batchSeq + 1);
+          roll.complete(batchSeq);
+        }
+
+        batch.complete(null);
+      }
+      catch (IOException | RuntimeException ex)
+      {
+        log.error("Failed to sync the journal, it does not accept writes anymore", ex);
+        fail(ex);
+
+        batch.completeExceptionally(ex);
+        if (roll != null)
+        {
+          roll.completeExceptionally(ex);
+        }
+
+        return;
+      }
+      finally
+      {
+        lock.lock();
+        try
+        {
+          if (inFlightFlush == batch)
+          {
+            inFlightFlush = null;
+          }
+        }
+        finally
+        {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the journal after a failed flush: the writes appended meanwhile are failed as well, as they
+   * would follow a torn record.
+   */
+  private void fail(Throwable ex)
+  {
+    lock.lock();
+    try
+    {
+      failure = ex;
+
+      pending.clear();
+      nextFlush.completeExceptionally(ex);
+
+      if (rollRequest != null)
+      {
+        rollRequest.completeExceptionally(ex);
+        rollRequest = null;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void ensurePendingCapacity(int size)
+  {
+    if (pending.remaining() >= size)
+    {
+      return;
+    }
+
+    var grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+    pending.flip();
+    grown.put(pending);
+    pending = grown;
+  }
+
+  /**
+   * Opens a new segment. A previous file with the same name can only contain torn records, so it is
+   * truncated.
+   */
+  private FileChannel openSegment(long firstSeq) throws IOException
+  {
+    return FileChannel.open(directory.resolve(String.format(SEGMENT_FORMAT, firstSeq)), CREATE, TRUNCATE_EXISTING, WRITE);
+  }
+
+  /**
+   * Loads the most recent readable snapshot.
+   *
+   * @return The snapshot sequence number, or 0 if there is none.
+   */
+  private long loadLatestSnapshot(Consumer<Reservation> consumer) throws IOException
+  {
+    var snapshots = listFiles(SNAPSHOT_PATTERN);
+    for (var i = snapshots.size() - 1; i >= 0; i--)
+    {
+      var file = snapshots.get(i);
+      try
+      {
+        var reservations = readSnapshot(file);
+        reservations.forEach(consumer);
+
+        return seqOf(file, SNAPSHOT_PATTERN);
+      }
+      catch (IOException | RuntimeException ex)
+      {
+        log.warn("Ignoring unreadable snapshot {}", file, ex);
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Reads a snapshot through a window mapped over a chunk of the file, moved forward each time a
+   * record crosses its end.
+   */
+  private List<Reservation> readSnapshot(Path file) throws IOException
+  {
+    try (var channel = FileChannel.open(file, READ))
+    {
+      var size = channel.size();
+      if (size < SNAPSHOT_HEADER_SIZE + Integer.BYTES)
+      {
+        throw new IOException("Truncated snapshot: " + file);
+      }
+
+      var header = channel.map(READ_ONLY, 0, SNAPSHOT_HEADER_SIZE);
+      if (header.getLong() != SNAPSHOT_MAGIC)
+      {
+        throw new IOException("Not a snapshot: " + file);
+      }
+
+      header.getLong();
+      var count = header.getInt();
+
+      var end = size - Integer.BYTES;
+      var position = (long) SNAPSHOT_HEADER_SIZE;
+      var window = mapWindow(channel, position, end);
+
+      var snapshotCrc = new CRC32();
+      var reservations = new ArrayList<Reservation>(count);
+      while (reservations.size() < count)
+      {
+        var start = window.position();
+        try
+        {
+          reservations.add(ReservationCodec.decode(window));
+        }
+        catch (BufferUnderflowException ex)
+        {
+          // a record can only be larger than the window at the end of the file
+          if (start == 0)
+          {
+            throw new IOException("Truncated snapshot: " + file, ex);
+          }
+
+          position += start;
+          window = mapWindow(channel, position, end);
+          continue;
+        }
+
+        snapshotCrc.update(window.duplicate().position(start).limit(window.position()));
+      }
+      position += window.position();
+
+      var expectedCrc = channel.map(READ_ONLY, end, Integer.BYTES).getInt();
+      if (position != end || (int) snapshotCrc.getValue() != expectedCrc)
+      {
+        throw new IOException("Corrupted snapshot: " + file);
+      }
+
+      return reservations;
+    }
+  }
+
+  private static MappedByteBuffer mapWindow(FileChannel channel, long position, long end) throws IOException
+  {
+    return channel.map(READ_ONLY, position, Math.min(SNAPSHOT_CHUNK_SIZE, end - position));
+  }
+
+  /**
+   * Replays the records of a segment which are after a sequence number. Stops at the first torn or
+   * corrupted record (e.g. the last write before a crash).
+   *
+   * @return The sequence number of the last valid record, or 0.
+   */
+  private long replaySegment(Path file, long afterSeq, Consumer<Reservation> consumer) throws IOException
+  {
+    var seq = 0L;
+
+    try (var channel = FileChannel.open(file, READ))
+    {
+      var mapped = channel.map(READ_ONLY, 0, channel.size());
+      var recordCrc = new CRC32();
+
+      while (mapped.remaining() >= HEADER_SIZE)
+      {
+        var length = mapped.getInt();
+        if (length < Long.BYTES || mapped.remaining() < length + Integer.BYTES)
+        {
+          log.warn("Torn record at the end of {}", file);
+          break;
+        }
+
+        var recordSeq = mapped.getLong();
+        var payload = mapped.slice().limit(length - Long.BYTES);
+        mapped.position(mapped.position() + length - Long.BYTES);
+
+        recordCrc.reset();
+        recordCrc.update(payload.duplicate());
+        if ((int) recordCrc.getValue() != mapped.getInt())
+        {
+          log.warn("Corrupted record #{} in {}", recordSeq, file);
+          break;
+        }
+
+        seq = recordSeq;
+        if (recordSeq > afterSeq)
+        {
+          consumer.accept(ReservationCodec.decode(payload));
+        }
+      }
+    }
+
+    return seq;
+  }
+
+  private List<Path> listFiles(Pattern pattern) throws IOException
+  {
+    try (Stream<Path> files = Files.list(directory))
+    {
+      return files
+          .filter(f -> pattern.matcher(f.getFileName().toString()).matches())
+          .sorted()
+          .collect(toList());
+    }
+    catch (UncheckedIOException ex)
+    {
+      throw ex.getCause();
+    }
+  }
+
+  private static long seqOf(Path file, Pattern pattern)
+  {
+    var matcher = pattern.matcher(file.getFileName().toString());
+    matcher.matches();
+
+    return Long.parseLong(matcher.group(1));
+  }
+}
@@ -0,0 +1,194 @@
+package org.example.crs.reservation.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interned strings, stored once each as UTF-8 bytes in off-heap pages and referred to by an int.
+ *
+ * A reference is the page number in its high bits and the offset inside the page in the low bits. A
+ * string is never split between two pages. Interning looks for an equal string through an
+ * open-addressing table of references, so a client booking many times only stores their email and
+ * name once.
+ *
+ * Not thread-safe: the caller guards it.
+ */
+public class StringRegion
+{
+  /**
+   * The reference of the null string.
+   */
+  public static final int NULL = -1;
+
+  private static final int PAGE_BITS = 24;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int MAX_PAGES = 1 << (Integer.SIZE - 1 - PAGE_BITS);
+
+  /**
+   * The longest string, in UTF-8 bytes, with its length prefix.
+   */
+  private static final int MAX_LENGTH = PAGE_SIZE - Integer.BYTES;
+
+  private final List<ByteBuffer> pages = new ArrayList<>();
+
+  private int[] refs = new int[1024];
+  private int[] hashes = new int[1024];
+  private int size;
+
+  public StringRegion()
+  {
+    Arrays.fill(refs, NULL);
+  }
+
+  /**
+   * @param value The string to store, or null.
+   * @return The reference of the string, equal to the one of an equal string stored before.
+   */
+  public int intern(String value)
+  {
+    if (value == null)
+    {
+      return NULL;
+    }
+
+    var bytes = value.getBytes(UTF_8);
+    if (bytes.length > MAX_LENGTH)
+    {
+      throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+    }
+
+    var hash = Arrays.hashCode(bytes);
+    var mask = refs.length - 1;
+    var slot = hash & mask;
+    for (; refs[slot] != NULL; slot = (slot + 1) & mask)
+    {
+      if (hashes[slot] == hash && equalsAt(refs[slot], bytes))
+      {
+        return refs[slot];
+      }
+    }
+
+    var ref = append(bytes);
+
+    refs[slot] = ref;
+    hashes[slot] = hash;
+    if (2 * ++size > refs.length)
+    {
+      grow();
+    }
+
+    return ref;
+  }
+
+  /**
+   * @param ref The reference of a string.
+   * @return The string.
+   */
+  public String get(int ref)
+  {
+    if (ref == NULL)
+    {
+      return null;
+    }
+
+    var page = pages.get(ref >>> PAGE_BITS);
+    var offset = ref & (PAGE_SIZE - 1);
+
+    var bytes = new byte[page.getInt(offset)];
+    // a duplicate, so concurrent readers do not share a position
+    page.duplicate().position(offset + Integer.BYTES).get(bytes);
+
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * @return The number of distinct strings.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * @return The number of off-heap bytes reserved for the strings.
+   */
+  public long sizeInBytes()
+  {
+    return (long) pages.size() * PAGE_SIZE;
+  }
+
+  private int append(byte[] bytes)
+  {
+    var needed = Integer.BYTES + bytes.length;
+
+    var page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+    if (page == null || page.remaining() < needed)
+    {
+      if (pages.size() == MAX_PAGES)
+      {
+        throw new IllegalStateException("The string region is full");
+      }
+
+      page = ByteBuffer.allocateDirect(PAGE_SIZE);
+      pages.add(page);
+    }
+
+    var ref = ((pages.size() - 1) << PAGE_BITS) | page.position();
+    page.putInt(bytes.length).put(bytes);
+
+    return ref;
+  }
+
+  private boolean equalsAt(int ref, byte[] bytes)
+  {
+    var page = pages.get(ref >>> PAGE_BITS);
+    var offset = ref & (PAGE_SIZE - 1);
+
+    if (page.getInt(offset) != bytes.length)
+    {
+      return false;
+    }
+
+    for (var i = 0; i < bytes.length; i++)
+    {
+      if (page.get(offset + Integer.BYTES + i) != bytes[i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void grow()
+  {
+    var oldRefs = refs;
+    var oldHashes = hashes;
+
+    refs = new int[oldRefs.length * 2];
+    hashes = new int[oldRefs.length * 2];
+    Arrays.fill(refs, NULL);
+
+    var mask = refs.length - 1;
+    for (var i = 0; i < oldRefs.length; i++)
+    {
+      if (oldRefs[i] == NULL)
+      {
+        continue;
+      }
+
+      var slot = oldHashes[i] & mask;
+      while (refs[slot] != NULL)
+      {
+        slot = (slot + 1) & mask;
+      }
+
+      refs[slot] = oldRefs[i];
+      hashes[slot] = oldHashes[i];
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package org.example.crs.reservation.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a UUID (its two long halves) to an int, made of primitive arrays
+ * only: no entry object nor boxed key is allocated, whatever the number of entries.
+ *
+ * Collisions are resolved by linear probing. The table doubles when it is more than half full.
+ * Entries can not be removed.
+ *
+ * Not thread-safe: the caller guards it.
+ */
+public class UuidIndex
+{
+  /**
+   * Returned for a missing key. It can not be stored.
+   */
+  public static final int NONE = -1;
+
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] msbs;
+  private long[] lsbs;
+  private int[] values;
+  private int size;
+
+  /**
+   * @param expectedSize The number of entries the table can hold before growing.
+   */
+  public UuidIndex(int expectedSize)
+  {
+    allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+  }
+
+  /**
+   * @param msb The most significant bits of the key.
+   * @param lsb The least significant bits of the key.
+   * @return The value of the key, or NONE.
+   */
+  public int get(long msb, long lsb)
+  {
+    var mask = values.length - 1;
+    for (var slot = slotOf(msb, lsb, mask);; slot = (slot + 1) & mask)
+    {
+      var value = values[slot];
+      if (value == NONE || (msbs[slot] == msb && lsbs[slot] == lsb))
+      {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Adds a key, or replaces its value.
+   *
+   * @param msb The most significant bits of the key.
+   * @param lsb The least significant bits of the key.
+   * @param value The value, which must not be NONE.
+   */
+  public void put(long msb, long lsb, int value)
+  {
+    if (value == NONE)
+    {
+      throw new IllegalArgumentException("NONE can not be stored");
+    }
+
+    if (2 * (size + 1) > values.length)
+    {
+      grow();
+    }
+
+    var mask = values.length - 1;
+    for (var slot = slotOf(msb, lsb, mask);; slot = (slot + 1) & mask)
+    {
+      if (values[slot] == NONE)
+      {
+        msbs[slot] = msb;
+        lsbs[slot] = lsb;
+        values[slot] = value;
+        size++;
+        return;
+      }
+
+      if (msbs[slot] == msb && lsbs[slot] == lsb)
+      {
+        values[slot] = value;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return The number of keys.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * @return The number of bytes used by the table.
+   */
+  public long sizeInBytes()
+  {
+    return (long) values.length * (2 * Long.BYTES + Integer.BYTES);
+  }
+
+  private void grow()
+  {
+    var oldMsbs = msbs;
+    var oldLsbs = lsbs;
+    var oldValues = values;
+
+    allocate(oldValues.length * 2);
+
+    var mask = values.length - 1;
+    for (var i = 0; i < oldValues.length; i++)
+    {
+      if (oldValues[i] == NONE)
+      {
+        continue;
+      }
+
+      var slot = slotOf(oldMsbs[i], oldLsbs[i], mask);
+      while (values[slot] != NONE)
+      {
+        slot = (slot + 1) & mask;
+      }
+
+      msbs[slot] = oldMsbs[i];
+      lsbs[slot] = oldLsbs[i];
+      values[slot] = oldValues[i];
+    }
+  }
+
+  private void allocate(int capacity)
+  {
+    msbs = new long[capacity];
+    lsbs = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, NONE);
+  }
+
+  /**
+   * Mixes both halves (time-ordered ids only differ by a few bits of their most significant half).
+   */
+  private static int slotOf(long msb, long lsb, int mask)
+  {
+    var h = msb * 0x9E37_79B9_7F4A_7C15L ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xFF51_AFD7_ED55_8CCDL;
+    h ^= h >>> 33;
+
+    return (int) h & mask;
+  }
+}
@@ -0,0 +1,100 @@
+package org.example.crs.reservation.utils;
+
+import java.time.LocalDate;
+
+import lombok.experimental.UtilityClass;
+
+import org.example.crs.reservation.command.param.Availability;
+import org.example.crs.reservation.utils.ReservationPeriodUtils.ReservationPeriod;
+
+/**
+ * A reservation period packed in a single long: the arrival epoch-day in the high 32 bits, the
+ * departure epoch-day in the low 32 bits.
+ *
+ * Periods are compared and walked as primitives, without allocating, and are only turned back into
+ * dates when they leave the service (e.g. as an Availability). Sorting packed periods sorts them by
+ * arrival, then by departure.
+ */
+@UtilityClass
+public class EpochDayPeriod
+{
+  private static final long LOW_BITS = 0xFFFF_FFFFL;
+
+  /**
+   * @param arrival The arrival epoch-day.
+   * @param departure The departure epoch-day.
+   * @return The packed period.
+   */
+  public static long of(long arrival, long departure)
+  {
+    return (arrival << 32) | (departure & LOW_BITS);
+  }
+
+  /**
+   * @param period The reservation period.
+   * @return The packed period.
+   */
+  public static long of(ReservationPeriod period)
+  {
+    return of(period.getArrivalDate().toEpochDay(), period.getDepartureDate().toEpochDay());
+  }
+
+  /**
+   * @param period The packed period.
+   * @return The arrival epoch-day.
+   */
+  public static int arrivalOf(long period)
+  {
+    return (int) (period >> 32);
+  }
+
+  /**
+   * @param period The packed period.
+   * @return The departure epoch-day.
+   */
+  public static int departureOf(long period)
+  {
+    return (int) period;
+  }
+
+  /**
+   * @param period The packed period.
+   * @return The number of nights of the period (negative when the departure is before the arrival).
+   */
+  public static int nbNights(long period)
+  {
+    return departureOf(period) - arrivalOf(period);
+  }
+
+  /**
+   * @param period The packed period.
+   * @param from The first epoch-day of the window.
+   * @param to The epoch-day after the last day of the window.
+   * @return If at least one night of the period is inside the window.
+   */
+  public static boolean overlaps(long period, long from, long to)
+  {
+    return arrivalOf(period) < to && from < departureOf(period);
+  }
+
+  /**
+   * @param from The first epoch-day of the availability.
+   * @param to The epoch-day after the last day of the availability.
+   * @return The availability, with its dates.
+   */
+  public static Availability toAvailability(long from, long to)
+  {
+    return new Availability(LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(to));
+  }
+
+  /**
+   * @param from The first epoch-day of the availability.
+   * @param to The epoch-day after the last day of the availability.
+   * @param remainingPitches The number of pitches still free every night of the availability.
+   * @return The availability, with its dates.
+   */
+  public static Availability toAvailability(long from, long to, int remainingPitches)
+  {
+    return new Availability(LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(to), remainingPitches);
+  }
+}
@@ -3,13 +3,11 @@ package org.example.crs.reservation.utils;
 import static java.time.Period.ofDays;
 import static java.time.Period.ofMonths;
 import static java.util.Collections.singletonList;
-import static java.util.function.Predicate.not;
-import static java.util.stream.Collectors.toList;
-import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
 
 import java.time.LocalDate;
-import java.time.Period;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import lombok.Getter;
@@ -76,6 +74,32 @@ public class ReservationPeriodUtils
     }
   }
 
+  /**
+   * Maximum number of nights of a reservation.
+   */
+  public static final int MAX_NIGHTS = 3;
+
+  /**
+   * The epoch-days bounding the bookable arrivals, computed once a day.
+   */
+  @RequiredArgsConstructor
+  private static class BookingDays
+  {
+    private final long today;
+
+    /**
+     * The last day an arrival can be booked (in one month).
+     */
+    private final long maxArrival;
+
+    /**
+     * Epoch millis of the end of the day they were computed.
+     */
+    private final long validUntil;
+  }
+
+  private static volatile BookingDays bookingDays = computeBookingDays();
+
   /**
    * Validates a reservation (check) period. It must not be past. It must contains at least one day.
    * It must start tomorrow at least. It must not start more than in one month.
@@ -85,30 +109,42 @@ public class ReservationPeriodUtils
    */
   public static void validateAvailabilitiesCheckPeriod(ReservationPeriod period) throws ReservationAvailabilityCheckException
   {
-    var now = LocalDate.now();
+    validateAvailabilitiesCheckPeriod(period.getArrivalDate().toEpochDay(), period.getDepartureDate().toEpochDay());
+  }
+
+  /**
+   * Validates a reservation (check) period given as epoch-days.
+   *
+   * @param arrival The arrival epoch-day.
+   * @param departure The departure epoch-day.
+   * @throws ReservationAvailabilityCheckException In case the reservation period is invalid.
+   * @see #validateAvailabilitiesCheckPeriod(ReservationPeriod)
+   */
+  public static void validateAvailabilitiesCheckPeriod(long arrival, long departure)
+      throws ReservationAvailabilityCheckException
+  {
+    var days = bookingDays();
 
     // already past
-    if (period.getArrivalDate().isBefore(now))
+    if (arrival < days.today)
     {
       throw ReservationAvailabilityCheckException.alreadyPast();
     }
 
     // departure is before or equal to arrival
-    if (!period.getDepartureDate().isAfter(period.getArrivalDate()))
+    if (departure <= arrival)
     {
       throw ReservationAvailabilityCheckException.tooShort();
     }
 
     // we can book only from tomorrow or more
-    var minReservationDate = now.plus(ofDays(1));
-    if (period.getArrivalDate().isBefore(minReservationDate))
+    if (arrival < days.today + 1)
     {
       throw ReservationAvailabilityCheckException.tooSoon();
     }
 
     // cannot book more than a month in advance
-    var maxReservationDate = now.plus(ofMonths(1));
-    if (period.getArrivalDate().isAfter(maxReservationDate))
+    if (arrival > days.maxArrival)
     {
       throw ReservationAvailabilityCheckException.tooFar();
     }
@@ -126,10 +162,25 @@ public class ReservationPeriodUtils
   public static void validateReservationPeriod(ReservationPeriod period)
       throws ReservationAvailabilityCheckException, ReservationException
   {
-    validateAvailabilitiesCheckPeriod(period);
+    validateReservationPeriod(period.getArrivalDate().toEpochDay(), period.getDepartureDate().toEpochDay());
+  }
 
-    var maxDepartureDate = period.getArrivalDate().plus(ofDays(3));
-    if (maxDepartureDate.isBefore(period.getDepartureDate()))
+  /**
+   * Validates a reservation period given as epoch-days.
+   *
+   * @param arrival The arrival epoch-day.
+   * @param departure The departure epoch-day.
+   * @throws ReservationAvailabilityCheckException In case the reservation (check) period is
+   * invalid.
+   * @throws ReservationException In case the reservation period is invalid
+   * @see #validateReservationPeriod(ReservationPeriod)
+   */
+  public static void validateReservationPeriod(long arrival, long departure)
+      throws ReservationAvailabilityCheckException, ReservationException
+  {
+    validateAvailabilitiesCheckPeriod(arrival, departure);
+
+    if (departure - arrival > MAX_NIGHTS)
     {
       throw ReservationException.tooLong();
     }
@@ -152,76 +203,77 @@ public class ReservationPeriodUtils
       List<ReservationPeriod> reservations)
       throws ReservationAvailabilityCheckException, ReservationException
   {
-    validateAvailabilitiesCheckPeriod(createPeriod(checkFrom, checkTo));
+    var from = checkFrom.toEpochDay();
+    var to = checkTo.toEpochDay();
 
-    // no reservations -> the full period is available
-    if (reservations.isEmpty())
+    validateAvailabilitiesCheckPeriod(from, to);
+
+    // only the reservations in the same period, packed so they sort by arrival
+    var periods = new long[reservations.size()];
+    var nbPeriods = 0;
+    for (var r : reservations)
     {
-      return singletonList(new Availability(checkFrom, checkTo));
+      var period = EpochDayPeriod.of(r);
+      if (EpochDayPeriod.overlaps(period, from, to))
+      {
+        periods[nbPeriods++] = period;
+      }
     }
 
-    var reservationsInTheSamePeriod = reservations.stream()
-        .filter(not(r ->
-            r.getDepartureDate().isBefore(checkFrom) ||
-            r.getDepartureDate().isEqual(checkFrom) ||
-            r.getArrivalDate().isAfter(checkTo) ||
-            r.getArrivalDate().isEqual(checkTo)
-        ))
-        .sorted((r1, r2) -> r1.getArrivalDate().compareTo(r2.getArrivalDate()))
-        .collect(toList());
-
     // the full period is available
-    if (reservationsInTheSamePeriod.isEmpty())
+    if (nbPeriods == 0)
     {
       return singletonList(new Availability(checkFrom, checkTo));
     }
 
+    Arrays.sort(periods, 0, nbPeriods);
+
     /*
-     * Here starts the algorithm that extracts availabilities.
+     * Here starts the algorithm that extracts availabilities: the cursor is the first day which is
+     * not known to be occupied, every arrival after it closes an availability.
      */
-    // cursors initialization
-    var from = checkFrom.plus(ofDays(0));
-    var to = from.plus(ofDays(0));
-
-    // the final list we'll return
     var availabilities = new ArrayList<Availability>();
+    var cursor = from;
 
-    for (var r : reservationsInTheSamePeriod)
+    for (var i = 0; i < nbPeriods; i++)
     {
-      // target arrival between a reservation
-      if ((r.getArrivalDate().isBefore(from) ||
-          r.getArrivalDate().isEqual(from)) &&
-          from.isBefore(r.getDepartureDate()))
+      var arrival = EpochDayPeriod.arrivalOf(periods[i]);
+      if (arrival > cursor)
       {
-        from = r.getDepartureDate().plus(ofDays(0));
-        to = from.plus(ofDays(0));
-        continue;
+        availabilities.add(EpochDayPeriod.toAvailability(cursor, arrival));
       }
 
-      // expanding to next arrival
-      if (to.isBefore(r.getArrivalDate()))
-      {
-        to = to.plus(Period.between(to, r.getArrivalDate()));
-      }
-
-      // at least one day
-      if (to.isAfter(from))
-      {
-        availabilities.add(new Availability(from, to));
-      }
-
-      // move cursors at the end of the current reservation
-      from = r.getDepartureDate().plus(ofDays(0));
-      to = from.plus(ofDays(0));
+      cursor = Math.max(cursor, EpochDayPeriod.departureOf(periods[i]));
     }
 
     // there are still some dates after the last reservation
-    var lastReservation = reservationsInTheSamePeriod.get(reservationsInTheSamePeriod.size() - 1);
-    if (lastReservation.getDepartureDate().isBefore(checkTo))
+    if (cursor < to)
     {
-      availabilities.add(new Availability(lastReservation.getDepartureDate(), checkTo));
+      availabilities.add(EpochDayPeriod.toAvailability(cursor, to));
     }
 
     return availabilities;
   }
+
+  private static BookingDays bookingDays()
+  {
+    var days = bookingDays;
+    if (System.currentTimeMillis() < days.validUntil)
+    {
+      return days;
+    }
+
+    days = computeBookingDays();
+    bookingDays = days;
+
+    return days;
+  }
+
+  private static BookingDays computeBookingDays()
+  {
+    var now = LocalDate.now();
+    var validUntil = now.plus(ofDays(1)).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    return new BookingDays(now.toEpochDay(), now.plus(ofMonths(1)).toEpochDay(), validUntil);
+  }
 }
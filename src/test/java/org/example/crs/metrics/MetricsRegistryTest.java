@@ -0,0 +1,65 @@
+package org.example.crs.metrics;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest
+{
+  @Test
+  public void testRenderCounters()
+  {
+    var registry = new MetricsRegistry();
+
+    var created = registry.counter("requests_total", "Requests.", "status", "201");
+    var notFound = registry.counter("requests_total", "Requests.", "status", "404");
+    registry.gauge("cache_size", "Size.", () -> 3);
+
+    created.increment();
+    created.increment();
+    notFound.add(5);
+
+    assertEquals(
+        "# HELP requests_total Requests.\n" +
+            "# TYPE requests_total counter\n" +
+            "requests_total{status=\"201\"} 2\n" +
+            "requests_total{status=\"404\"} 5\n" +
+            "# HELP cache_size Size.\n" +
+            "# TYPE cache_size gauge\n" +
+            "cache_size 3\n",
+        registry.render());
+  }
+
+  @Test
+  public void testRenderHistogram()
+  {
+    var registry = new MetricsRegistry();
+    var histogram = registry.histogram("duration_seconds", "Durations.", "operation", "create");
+
+    histogram.record(MILLISECONDS.toNanos(1));
+    histogram.record(MILLISECONDS.toNanos(3));
+    histogram.record(MILLISECONDS.toNanos(20_000));
+
+    var rendered = registry.render();
+
+    // bounds are inclusive
+    assertTrue(rendered.contains("duration_seconds_bucket{operation=\"create\",le=\"0.001\"} 1\n"));
+    assertTrue(rendered.contains("duration_seconds_bucket{operation=\"create\",le=\"0.0025\"} 1\n"));
+    assertTrue(rendered.contains("duration_seconds_bucket{operation=\"create\",le=\"0.005\"} 2\n"));
+    assertTrue(rendered.contains("duration_seconds_bucket{operation=\"create\",le=\"10.0\"} 2\n"));
+    assertTrue(rendered.contains("duration_seconds_bucket{operation=\"create\",le=\"+Inf\"} 3\n"));
+    assertTrue(rendered.contains("duration_seconds_sum{operation=\"create\"} 20.004\n"));
+    assertTrue(rendered.contains("duration_seconds_count{operation=\"create\"} 3\n"));
+    assertEquals(3, histogram.getCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegister_TypeMismatch()
+  {
+    var registry = new MetricsRegistry();
+    registry.counter("duration_seconds", "Durations.");
+    registry.histogram("duration_seconds", "Durations.");
+  }
+}
@@ -0,0 +1,223 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.crs.reservation.command.param.Availability;
+import org.junit.Test;
+
+public class AvailabilityCacheTest
+{
+  private static final int TIMEOUT_MS = 150;
+
+  @Test
+  public void testGet_HitAndMiss()
+  {
+    var cache = new AvailabilityCache(4);
+    var nbComputed = new AtomicInteger();
+
+    var from = now();
+    var to = from.plus(ofDays(10));
+
+    var first = cache.get(from, to, () -> compute(nbComputed)).join();
+    var second = cache.get(from, to, () -> compute(nbComputed)).join();
+
+    assertSame(first, second);
+    assertEquals(1, nbComputed.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testInvalidate_OnlyOverlappingWindows()
+  {
+    var cache = new AvailabilityCache(4);
+    var nbComputed = new AtomicInteger();
+
+    var day = now().toEpochDay();
+    var early = now();
+    var late = early.plus(ofDays(10));
+
+    cache.get(early, early.plus(ofDays(5)), () -> compute(nbComputed));
+    cache.get(late, late.plus(ofDays(5)), () -> compute(nbComputed));
+
+    // a change of the nights between both windows
+    cache.invalidate(day + 5, day + 10);
+    assertEquals(2, cache.size());
+
+    // a change of the first night of the late window
+    cache.invalidate(day + 9, day + 11);
+    assertEquals(1, cache.size());
+
+    cache.get(early, early.plus(ofDays(5)), () -> compute(nbComputed));
+    assertEquals(2, nbComputed.get());
+  }
+
+  @Test
+  public void testGet_EvictsLeastRecentlyUsed()
+  {
+    var cache = new AvailabilityCache(2);
+    var nbComputed = new AtomicInteger();
+
+    var from = now();
+
+    cache.get(from, from.plus(ofDays(1)), () -> compute(nbComputed));
+    cache.get(from, from.plus(ofDays(2)), () -> compute(nbComputed));
+    // uses the first window again, so the second one is the eldest
+    cache.get(from, from.plus(ofDays(1)), () -> compute(nbComputed));
+    cache.get(from, from.plus(ofDays(3)), () -> compute(nbComputed));
+
+    assertEquals(2, cache.size());
+    assertEquals(3, nbComputed.get());
+
+    cache.get(from, from.plus(ofDays(1)), () -> compute(nbComputed));
+    assertEquals(3, nbComputed.get());
+  }
+
+  @Test
+  public void testGet_NotCachedWhenInvalidatedDuringComputation()
+  {
+    var cache = new AvailabilityCache(2);
+    var from = now();
+    var to = from.plus(ofDays(1));
+
+    cache.get(from, to, () ->
+    {
+      cache.invalidate(from.toEpochDay(), to.toEpochDay());
+      return List.of();
+    });
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testGet_CoalescesConcurrentMisses() throws Exception
+  {
+    var cache = new AvailabilityCache(2);
+    var nbComputed = new AtomicInteger();
+    var computing = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    var from = now();
+    var to = from.plus(ofDays(1));
+
+    var leader = CompletableFuture.supplyAsync(() -> cache.get(from, to, () ->
+    {
+      computing.countDown();
+      await(release);
+      return compute(nbComputed);
+    }).join());
+
+    assertTrue(computing.await(TIMEOUT_MS, MILLISECONDS));
+    var follower = cache.get(from, to, () -> compute(nbComputed));
+    assertFalse(follower.isDone());
+
+    release.countDown();
+
+    assertSame(leader.get(TIMEOUT_MS, MILLISECONDS), follower.get(TIMEOUT_MS, MILLISECONDS));
+    assertEquals(1, nbComputed.get());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getCoalesced());
+  }
+
+  @Test
+  public void testGet_NotCoalescedAcrossInvalidations() throws Exception
+  {
+    var cache = new AvailabilityCache(2);
+    var nbComputed = new AtomicInteger();
+    var computing = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+
+    var from = now();
+    var to = from.plus(ofDays(1));
+
+    var leader = CompletableFuture.supplyAsync(() -> cache.get(from, to, () ->
+    {
+      computing.countDown();
+      await(release);
+      return compute(nbComputed);
+    }).join());
+
+    assertTrue(computing.await(TIMEOUT_MS, MILLISECONDS));
+    // the running computation may have read the nights before this change
+    cache.invalidate(from.toEpochDay(), to.toEpochDay());
+    cache.get(from, to, () -> compute(nbComputed)).get(TIMEOUT_MS, MILLISECONDS);
+
+    release.countDown();
+    leader.get(TIMEOUT_MS, MILLISECONDS);
+
+    assertEquals(2, nbComputed.get());
+    assertEquals(0, cache.getCoalesced());
+  }
+
+  @Test
+  public void testGet_FailureIsNotCached()
+  {
+    var cache = new AvailabilityCache(2);
+    var from = now();
+    var to = from.plus(ofDays(1));
+
+    var failed = cache.get(from, to, () ->
+    {
+      throw new IllegalStateException();
+    });
+    assertTrue(failed.isCompletedExceptionally());
+
+    assertEquals(1, cache.get(from, to, () -> compute(new AtomicInteger())).join().size());
+  }
+
+  @Test
+  public void testService_InvalidatedByCalendarChanges() throws Exception
+  {
+    var calendar = new OccupancyCalendar();
+    var repository = mock(ReservationRepository.class);
+    when(repository.getOccupancyCalendar()).thenReturn(calendar);
+
+    var service = new ReservationService(repository);
+
+    var from = now().plus(ofDays(1));
+    var to = from.plus(ofDays(10));
+
+    var before = service.getAvailabilities(from, to).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(List.of(new Availability(from, to)), before);
+
+    calendar.occupy(createPeriod(from.plus(ofDays(2)), from.plus(ofDays(4))));
+
+    var after = service.getAvailabilities(from, to).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(List.of(
+        new Availability(from, from.plus(ofDays(2))),
+        new Availability(from.plus(ofDays(4)), to)), after);
+    assertEquals(2, service.getAvailabilityCache().getMisses());
+  }
+
+  private static void await(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static List<Availability> compute(AtomicInteger nbComputed)
+  {
+    nbComputed.incrementAndGet();
+    return List.of(new Availability(now(), now().plus(ofDays(1))));
+  }
+}
@@ -0,0 +1,103 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.example.crs.reservation.CampsiteRegistry.CampsiteCommand;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.typed.ActorRef;
+import akka.http.javadsl.model.StatusCodes;
+
+public class CampsiteRegistryTest
+{
+  @ClassRule
+  public static TestKitJunitResource testkit = new TestKitJunitResource();
+
+  private final Map<String, ReservationService> services = new ConcurrentHashMap<>();
+
+  private Campsites campsites;
+
+  private ActorRef<Command> registry;
+
+  @Before
+  public void before()
+  {
+    campsites = new Campsites(List.of("north", "south"), id ->
+    {
+      var service = new ReservationService(new ReservationMapRepository(testkit.system().executionContext()));
+      services.put(id, service);
+      return service;
+    });
+
+    registry = testkit.spawn(CampsiteRegistry.create(campsites, 2, Duration.ofMillis(200)));
+  }
+
+  @After
+  public void after()
+  {
+    testkit.stop(registry);
+  }
+
+  @Test
+  public void testPartitionsCreatedOnFirstCommand()
+  {
+    assertEquals(0, campsites.size());
+
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CampsiteCommand("north", new CreateReservationCmd(generateCreateBody(), probe.getRef())));
+
+    assertEquals(StatusCodes.CREATED, probe.receiveMessage().getStatus());
+    assertEquals(1, campsites.size());
+    assertTrue(services.containsKey("north"));
+  }
+
+  @Test
+  public void testPassivation_KeepsReservations()
+  {
+    var created = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CampsiteCommand("north", new CreateReservationCmd(generateCreateBody(), created.getRef())));
+    var reservation = created.receiveMessage().getReservation();
+
+    var checked = testkit.<GetAvailabilitiesResponse>createTestProbe();
+    var checkFrom = now().plus(ofDays(1));
+    registry.tell(new CampsiteCommand("north", new GetAvailabilitiesCmd(
+        Optional.of(checkFrom), Optional.of(checkFrom.plus(ofDays(5))), 1, checked.getRef())));
+    checked.receiveMessage();
+
+    var cache = services.get("north").getAvailabilityCache();
+    assertEquals(1, cache.size());
+
+    // the registries are stopped and the cache dropped once idle
+    checked.awaitAssert(Duration.ofSeconds(3), () ->
+    {
+      assertEquals(0, cache.size());
+      return null;
+    });
+
+    // and spawned again on the next command, with the same reservations
+    var found = testkit.<GetReservationResponse>createTestProbe();
+    registry.tell(new CampsiteCommand("north", new GetReservationCmd(reservation.getId(), found.getRef())));
+    assertEquals(reservation, found.receiveMessage().getReservation());
+  }
+}
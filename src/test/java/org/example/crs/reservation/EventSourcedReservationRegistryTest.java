@@ -0,0 +1,238 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.example.crs.reservation.command.ReservationCommands.CancelReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationsResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.typed.ActorRef;
+import akka.http.javadsl.model.StatusCodes;
+import com.typesafe.config.ConfigFactory;
+
+public class EventSourcedReservationRegistryTest
+{
+  private static final Path DIRECTORY = createDirectory();
+
+  @ClassRule
+  public static TestKitJunitResource testkit = new TestKitJunitResource(ConfigFactory.parseString(
+      "akka.persistence.journal.leveldb.dir = \"" + DIRECTORY.resolve("events") + "\"\n" +
+      "akka.persistence.snapshot-store.local.dir = \"" + DIRECTORY.resolve("snapshots") + "\"")
+      .withFallback(ConfigFactory.load()));
+
+  @Test
+  public void testRecovery()
+  {
+    var persistenceId = "reservations-" + UUID.randomUUID();
+
+    var service = createService();
+    var registry = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, service, 100));
+
+    var kept = create(registry, 1);
+    var moved = create(registry, 4);
+    var canceled = create(registry, 8);
+
+    var updated = testkit.<UpdateReservationResponse>createTestProbe();
+    registry.tell(new UpdateReservationCmd(moved.getId(), ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(moved.getArrivalDate().plus(ofDays(1))))
+        .departureDate(Optional.of(moved.getDepartureDate().plus(ofDays(1))))
+        .build(), updated.getRef()));
+    moved = updated.receiveMessage().getReservation();
+
+    var cancelProbe = testkit.<CancelReservationResponse>createTestProbe();
+    registry.tell(new CancelReservationCmd(canceled.getId(), cancelProbe.getRef()));
+    canceled = cancelProbe.receiveMessage().getReservation();
+    assertEquals(CANCELED, canceled.getStatus());
+
+    testkit.stop(registry);
+
+    // a new registry, over an empty repository, replays the events
+    var recoveredService = createService();
+    var recovered = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, recoveredService, 100));
+
+    assertEquals(kept, get(recovered, kept.getId()));
+    assertEquals(moved, get(recovered, moved.getId()));
+    assertEquals(canceled, get(recovered, canceled.getId()));
+
+    // with the nights booked again
+    var calendar = recoveredService.getRepository().getOccupancyCalendar();
+    assertFalse(calendar.isFree(kept));
+    assertFalse(calendar.isFree(moved));
+    assertTrue(calendar.isFree(canceled));
+
+    testkit.stop(recovered);
+  }
+
+  @Test
+  public void testCreate_NotAvailable_NotPersisted()
+  {
+    var persistenceId = "reservations-" + UUID.randomUUID();
+
+    var service = createService();
+    var registry = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, service, 100));
+
+    var reservation = create(registry, 1);
+
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CreateReservationCmd(createBody(1), probe.getRef()));
+    assertEquals(StatusCodes.BAD_REQUEST, probe.receiveMessage().getStatus());
+
+    testkit.stop(registry);
+
+    var recoveredService = createService();
+    var recovered = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, recoveredService, 100));
+    assertEquals(reservation, get(recovered, reservation.getId()));
+
+    var repository = (ReservationMapRepository) recoveredService.getRepository();
+    assertEquals(1, repository.getLiveSize());
+
+    testkit.stop(recovered);
+  }
+
+  @Test
+  public void testCreateAll_Recovery()
+  {
+    var persistenceId = "reservations-" + UUID.randomUUID();
+
+    var service = createService();
+    var registry = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, service, 100));
+
+    // the second one overlaps the first one
+    var probe = testkit.<CreateReservationsResponse>createTestProbe();
+    registry.tell(new CreateReservationsCmd(List.of(createBody(1), createBody(2), createBody(5)), probe.getRef()));
+
+    var responses = probe.receiveMessage().getResponses();
+    assertEquals(StatusCodes.CREATED, responses.get(0).getStatus());
+    assertEquals(StatusCodes.BAD_REQUEST, responses.get(1).getStatus());
+    assertEquals(StatusCodes.CREATED, responses.get(2).getStatus());
+
+    testkit.stop(registry);
+
+    var recoveredService = createService();
+    var recovered = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, recoveredService, 100));
+
+    assertEquals(responses.get(0).getReservation(), get(recovered, responses.get(0).getReservation().getId()));
+    assertEquals(responses.get(2).getReservation(), get(recovered, responses.get(2).getReservation().getId()));
+
+    var repository = (ReservationMapRepository) recoveredService.getRepository();
+    assertEquals(2, repository.getLiveSize());
+    assertFalse(repository.getOccupancyCalendar().isFree(createBody(2)));
+
+    testkit.stop(recovered);
+  }
+
+  @Test
+  public void testRecovery_FromSnapshot() throws IOException
+  {
+    var persistenceId = "reservations-" + UUID.randomUUID();
+
+    var service = createService(5);
+    var registry = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, service, 2));
+
+    var reservations = new ArrayList<Reservation>();
+    for (var i = 0; i < 5; i++)
+    {
+      reservations.add(create(registry, 1 + i));
+    }
+
+    testkit.stop(registry);
+
+    try (var files = Files.list(DIRECTORY.resolve("snapshots")))
+    {
+      assertTrue(files.anyMatch(f -> f.getFileName().toString().contains(persistenceId)));
+    }
+
+    var recoveredService = createService(5);
+    var recovered = testkit.spawn(EventSourcedReservationRegistry.create(persistenceId, recoveredService, 2));
+
+    for (var reservation : reservations)
+    {
+      assertEquals(reservation, get(recovered, reservation.getId()));
+    }
+
+    testkit.stop(recovered);
+  }
+
+  private static ReservationService createService()
+  {
+    return createService(1);
+  }
+
+  private static ReservationService createService(int capacity)
+  {
+    var repository = new ReservationMapRepository(testkit.system().executionContext());
+    repository.getOccupancyCalendar().setCapacity(capacity);
+
+    return new ReservationService(repository);
+  }
+
+  private static ReservationCreateBody createBody(int inDays)
+  {
+    var arrivalDate = now().plus(ofDays(inDays));
+
+    return ReservationCreateBody.builder()
+        .clientEmail("jane.doe@example.org")
+        .clientName("Jane Doe")
+        .arrivalDate(arrivalDate)
+        .departureDate(arrivalDate.plus(ofDays(2)))
+        .build();
+  }
+
+  private static Reservation create(ActorRef<Command> registry, int inDays)
+  {
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CreateReservationCmd(createBody(inDays), probe.getRef()));
+
+    var response = probe.receiveMessage();
+    assertEquals(StatusCodes.CREATED, response.getStatus());
+
+    return response.getReservation();
+  }
+
+  private static Reservation get(ActorRef<Command> registry, UUID id)
+  {
+    var probe = testkit.<GetReservationResponse>createTestProbe();
+    registry.tell(new GetReservationCmd(id, probe.getRef()));
+
+    return probe.receiveMessage().getReservation();
+  }
+
+  private static Path createDirectory()
+  {
+    try
+    {
+      return Files.createTempDirectory("crs-events");
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
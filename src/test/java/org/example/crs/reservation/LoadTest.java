@@ -1,522 +1,480 @@
 package org.example.crs.reservation;
 
 import static akka.http.javadsl.model.StatusCodes.CREATED;
-import static akka.http.javadsl.model.StatusCodes.OK;
 import static java.lang.String.format;
 import static java.time.LocalDate.now;
 import static java.time.Period.ofDays;
-import static java.util.Collections.shuffle;
-import static java.util.stream.Collectors.averagingLong;
-import static org.example.crs.ReservationApp.OBJECT_MAPPER;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.Json.OBJECT_MAPPER;
 import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateUpdateBody;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.example.crs.ReservationApp;
-import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
-import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
-import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
-import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
-import org.example.crs.reservation.command.param.Availability;
 import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 
 import akka.actor.typed.ActorSystem;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.javafaker.Faker;
+import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
+/**
+ * Open-model load generator: every operation is started at a constant arrival rate, whatever the
+ * response times are.
+ *
+ * The response time of a request is measured from the time it was scheduled to start, not from the
+ * time it was actually sent, so a server slowing the generator down is not hidden (coordinated
+ * omission). The service time (from the time it was sent) is recorded as well.
+ *
+ * Reports the latency percentiles and the achieved versus target throughput of each operation, as
+ * text and as JSON.
+ */
 @Slf4j
 public class LoadTest
 {
-  private static String serverBaseUri;
-
-  private static final HttpClient httpClient = HttpClient.newHttpClient();
-  private static final Faker faker = Faker.instance();
-
-  private static final AtomicInteger nbRequests = new AtomicInteger();
+  private static final Map<String, Double> PERCENTILES = new LinkedHashMap();
 
-  private static final List<UUID> reservationIds = new CopyOnWriteArrayList();
-
-  private static final List<Long> creationExecutionTimes = new CopyOnWriteArrayList();
-  private static final List<Long> retrievalExecutionTimes = new CopyOnWriteArrayList();
-  private static final List<Long> updateExecutionTimes = new CopyOnWriteArrayList();
-  private static final List<Long> cancelationExecutionTimes = new CopyOnWriteArrayList();
-  private static final List<Long> availabilitiesExecutionTimes = new CopyOnWriteArrayList();
-
-  @Data
-  private static class LoadConfig
+  static
   {
-    private long interval;
-    private int size;
+    PERCENTILES.put("p50", 50d);
+    PERCENTILES.put("p90", 90d);
+    PERCENTILES.put("p99", 99d);
+    PERCENTILES.put("p99.9", 99.9d);
   }
 
-  public static void main(String... args) throws Exception
-  {
-    var actor = ActorSystem.create(ReservationApp.createActor(), "CRS");
-    Thread.sleep(5 * 1000);
-
-    var config = ConfigFactory.load();
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
 
-    serverBaseUri = format("http://%s:%d", config.getString("server.host"), config.getInt("server.port"));
-
-    var createConfig = OBJECT_MAPPER.convertValue(config.getAnyRef("load_test.create"), LoadConfig.class);
-    var retrieveConfig = OBJECT_MAPPER.convertValue(config.getAnyRef("load_test.retrieve"), LoadConfig.class);
-    var updateConfig = OBJECT_MAPPER.convertValue(config.getAnyRef("load_test.update"), LoadConfig.class);
-    var cancelConfig = OBJECT_MAPPER.convertValue(config.getAnyRef("load_test.cancel"), LoadConfig.class);
-    var availabilityConfig = OBJECT_MAPPER.convertValue(config.getAnyRef("load_test.availability"), LoadConfig.class);
+  private static String serverBaseUri;
 
-    var t = new Timer();
+  private static final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  private static final Faker faker = Faker.instance();
 
-    long startTime = System.nanoTime();
+  private static final List<Reservation> reservations = Collections.synchronizedList(new ArrayList());
 
-    createSomeFollowingReservations(10).join();
+  /**
+   * An operation, started at a constant rate, and its measures.
+   */
+  @RequiredArgsConstructor
+  private static class Operation
+  {
+    private final String name;
 
-    t.scheduleAtFixedRate(createRandomReservationsTask(createConfig.getSize()), 0, createConfig.getInterval());
-    t.scheduleAtFixedRate(retrieveRandomReservationsTask(retrieveConfig.getSize()), 0, retrieveConfig.getInterval());
-    t.scheduleAtFixedRate(updateRandomReservationsTask(updateConfig.getSize()), 0, updateConfig.getInterval());
-    t.scheduleAtFixedRate(cancelRandomReservationsTask(cancelConfig.getSize()), 0, cancelConfig.getInterval());
-    t.scheduleAtFixedRate(doRandomAvailabilitiesChecksTask(availabilityConfig.getSize()), 0, availabilityConfig.getInterval());
+    /**
+     * Target arrival rate, in requests per second.
+     */
+    private final double rate;
 
-    Thread.sleep(config.getLong("load_test.duration"));
+    /**
+     * Sends a request, and gives the promise of the response status code.
+     */
+    private final Supplier<CompletableFuture<Integer>> request;
 
-    var executionTimeMs = (System.nanoTime() - startTime) / 1000000;
+    /**
+     * Time from the scheduled start to the response, in microseconds.
+     */
+    private final Histogram responseTimes = new ConcurrentHistogram(3);
 
-    t.cancel();
+    /**
+     * Time from the actual send to the response, in microseconds.
+     */
+    private final Histogram serviceTimes = new ConcurrentHistogram(3);
 
-    Thread.sleep(3 * 1000);
+    private final LongAdder nbSuccesses = new LongAdder();
+    private final LongAdder nbErrorResponses = new LongAdder();
+    private final LongAdder nbFailures = new LongAdder();
 
-    actor.terminate();
+    private final AtomicInteger nbInFlight = new AtomicInteger();
 
-    var averageCreationTimeMs = creationExecutionTimes.stream()
-        .collect(averagingLong(x -> x)) / 1000000;
-    var averageRetrievalTimeMs = retrievalExecutionTimes.stream()
-        .collect(averagingLong(x -> x)) / 1000000;
-    var averageUpdateTimeMs = updateExecutionTimes.stream()
-        .collect(averagingLong(x -> x)) / 1000000;
-    var averageCanceletionTimeMs = cancelationExecutionTimes.stream()
-        .collect(averagingLong(x -> x)) / 1000000;
-    var averageAvailabilitiesTimeMs = availabilitiesExecutionTimes.stream()
-        .collect(averagingLong(x -> x)) / 1000000;
-
-    // --- Report
-    Stream.of(createConfig, retrieveConfig, updateConfig, cancelConfig)
-        .forEach(c -> log.info("{}", c));;
-
-    log.info("CREATE avg time = {}ms", averageCreationTimeMs);
-    log.info("RETRIEVE avg time = {}ms", averageRetrievalTimeMs);
-    log.info("UPDATE avg time = {}ms", averageUpdateTimeMs);
-    log.info("CANCEL avg time = {}ms", averageCanceletionTimeMs);
-    log.info("AVAILABILITIES avg time = {}ms", averageAvailabilitiesTimeMs);
-
-    log.info("number of requests = {}", nbRequests.get());
-    log.info("execution time = {}ms", executionTimeMs);
-    log.info("requests per second = {}", Math.ceil(nbRequests.get() / (executionTimeMs / 1000)));
-  }
+    private long nbSent;
 
-  private static TimerTask createRandomReservationsTask(int nbToCreate)
-  {
-    return new TimerTask()
+    /**
+     * Starts the requests at the target rate, from start to end (System.nanoTime values).
+     */
+    void generate(long start, long end)
     {
-      @Override
-      public void run()
-      {
-        CompletableFuture.allOf(IntStream.range(0, nbToCreate)
-            .mapToObj(i -> createRandomReservation())
-            .toArray(CompletableFuture[]::new))
-            .join();
-      }
-    };
-  }
+      var interval = (long) (1_000_000_000L / rate);
 
-  private static CompletableFuture<Optional<Reservation>> createRandomReservation()
-  {
-    return createReservation(Optional.empty(), Optional.empty());
-  }
-
-  private static CompletableFuture<Optional<Reservation>> createReservation(
-      Optional<LocalDate> maybeArrivalDate,
-      Optional<LocalDate> maybeDepartureDate)
-  {
-    LocalDate arrivalDate;
+      for (var scheduled = start; scheduled < end; scheduled += interval)
+      {
+        var delay = scheduled - System.nanoTime();
+        if (delay > 0)
+        {
+          LockSupport.parkNanos(delay);
+        }
 
-    // let's make bad creations a few times
-    if (Math.random() < 0.15)
-    {
-      arrivalDate = now();
-    }
-    else
-    {
-      arrivalDate = maybeArrivalDate.orElseGet(() -> now().plus(ofDays(1 + faker.random().nextInt(26))));
+        send(scheduled);
+      }
     }
 
-    var departureDate = maybeDepartureDate.orElseGet(() -> arrivalDate.plus(ofDays(1 + faker.random().nextInt(2))));
-
-    try
+    private void send(long scheduled)
     {
-      var requestBody = OBJECT_MAPPER.writeValueAsString(ReservationCreateBody.builder()
-          .clientEmail(faker.internet().emailAddress())
-          .arrivalDate(arrivalDate)
-          .departureDate(departureDate)
-          .build());
+      nbSent++;
+      nbInFlight.incrementAndGet();
 
-      var request = defaultHttpBuilder("/reservations")
-          .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-          .build();
+      var sent = System.nanoTime();
 
-      long startTime = System.nanoTime();
-
-      return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-          .thenApplyAsync(response ->
+      CompletableFuture.completedFuture(null)
+          .thenCompose(__ -> request.get())
+          .whenComplete((statusCode, ex) ->
           {
-            nbRequests.incrementAndGet();
-            creationExecutionTimes.add(System.nanoTime() - startTime);
+            var received = System.nanoTime();
+            responseTimes.recordValue(NANOSECONDS.toMicros(received - scheduled));
+            serviceTimes.recordValue(NANOSECONDS.toMicros(received - sent));
 
-            if (response.statusCode() != CREATED.intValue())
+            if (ex != null)
             {
-              logError(response);
-
-              return Optional.empty();
+              log.debug("{} failed", name, ex);
+              nbFailures.increment();
             }
-
-            try
+            else if (statusCode >= 400)
             {
-              var reservation = OBJECT_MAPPER.readValue(response.body(), CreateReservationResponse.class)
-                  .getReservation();
-              reservationIds.add(reservation.getId());
-
-              log.debug("Created: {}", reservation);
-
-              return Optional.of(reservation);
+              nbErrorResponses.increment();
             }
-            catch (JsonProcessingException ex)
+            else
             {
+              nbSuccesses.increment();
             }
 
-            return Optional.empty();
+            nbInFlight.decrementAndGet();
           });
     }
-    catch (JsonProcessingException ex)
+
+    OperationReport report(Duration duration)
     {
-      return CompletableFuture.completedFuture(Optional.empty());
+      var report = new OperationReport();
+      report.setName(name);
+      report.setTargetRate(rate);
+      report.setSent(nbSent);
+      report.setSuccesses(nbSuccesses.sum());
+      report.setErrorResponses(nbErrorResponses.sum());
+      report.setFailures(nbFailures.sum());
+      report.setNotCompleted(nbInFlight.get());
+      report.setAchievedRate((nbSuccesses.sum() + nbErrorResponses.sum()) / (duration.toMillis() / 1000.0));
+      report.setResponseTimeMs(percentilesOf(responseTimes));
+      report.setServiceTimeMs(percentilesOf(serviceTimes));
+
+      return report;
     }
   }
 
-  private static CompletableFuture createSomeFollowingReservations(int nbToCreate)
+  @Data
+  private static class OperationReport
   {
-    var dayCursor = new AtomicInteger(1);
-
-    return CompletableFuture.allOf(
-        IntStream.range(0, nbToCreate).mapToObj(i ->
-        {
-          var skip = faker.random().nextInt(2);
-          var duration = 1 + faker.random().nextInt(2);
-
-          var counterValue = dayCursor.addAndGet(skip + duration);
-
-          var arrivalDate = now().plus(ofDays(counterValue - duration));
-          var departureDate = arrivalDate.plus(ofDays(duration));
-
-          return createReservation(Optional.of(arrivalDate), Optional.of(departureDate));
-        }).toArray(CompletableFuture<?>[]::new)
-    );
+    private String name;
+    private double targetRate;
+    private double achievedRate;
+    private long sent;
+    private long successes;
+
+    /**
+     * Responses with a 4xx/5xx status. Some of them are expected: the generator makes a few bad
+     * requests on purpose.
+     */
+    private long errorResponses;
+
+    /**
+     * Requests without any response (timeout, connection error...).
+     */
+    private long failures;
+
+    private long notCompleted;
+    private Map<String, Double> responseTimeMs;
+    private Map<String, Double> serviceTimeMs;
   }
 
-  private static TimerTask updateRandomReservationsTask(int nbToUpdate)
+  @Data
+  private static class LoadReport
   {
-    return new TimerTask()
-    {
-      @Override
-      public void run()
-      {
-        CompletableFuture.allOf(IntStream.range(0, nbToUpdate)
-            .mapToObj(i -> updateRandomReservation())
-            .toArray(CompletableFuture[]::new))
-            .join();
-      }
-    };
+    private String startedAt;
+    private long durationMs;
+    private List<OperationReport> operations;
   }
 
-  private static CompletableFuture<Optional<Reservation>> updateRandomReservation()
+  public static void main(String... args) throws Exception
   {
-    return retrieveRandomCreatedReservation().thenComposeAsync(maybeReservation ->
-    {
-      if (maybeReservation.isEmpty())
-      {
-        return CompletableFuture.completedFuture(Optional.empty());
-      }
+    var actor = ActorSystem.create(ReservationApp.createActor(), "CRS");
+    Thread.sleep(5 * 1000);
 
-      var reservation = maybeReservation.get();
+    var config = ConfigFactory.load();
 
-      try
-      {
-        var requestBody = OBJECT_MAPPER.writeValueAsString(generateUpdateBody(reservation));
+    serverBaseUri = format("http://%s:%d", config.getString("server.host"), config.getInt("server.port"));
 
-        var request = defaultHttpBuilder(format("/reservations/%s", reservation.getId()))
-            .PUT(HttpRequest.BodyPublishers.ofString(requestBody))
-            .build();
+    var operations = List.of(
+        new Operation("CREATE", rateOf(config, "create"), LoadTest::createRandomReservation),
+        new Operation("RETRIEVE", rateOf(config, "retrieve"), LoadTest::retrieveRandomReservation),
+        new Operation("UPDATE", rateOf(config, "update"), LoadTest::updateRandomReservation),
+        new Operation("CANCEL", rateOf(config, "cancel"), LoadTest::cancelRandomReservation),
+        new Operation("AVAILABILITIES", rateOf(config, "availability"), LoadTest::doRandomAvailabilitiesCheck));
 
-        long startTime = System.nanoTime();
+    createSomeFollowingReservations(10).join();
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-            .thenApplyAsync(response ->
-            {
-              nbRequests.incrementAndGet();
-              updateExecutionTimes.add(System.nanoTime() - startTime);
+    var startedAt = LocalDateTime.now();
+    var duration = config.getDuration("load_test.duration");
 
-              if (response.statusCode() != OK.intValue())
-              {
-                logError(response);
+    var start = System.nanoTime();
+    var end = start + duration.toNanos();
 
-                return Optional.empty();
-              }
+    var generators = operations.stream()
+        .map(operation ->
+        {
+          var generator = new Thread(() -> operation.generate(start, end), "load-" + operation.name);
+          generator.start();
+          return generator;
+        })
+        .toArray(Thread[]::new);
 
-              try
-              {
-                var updated = OBJECT_MAPPER.readValue(response.body(), UpdateReservationResponse.class)
-                    .getReservation();
+    for (var generator : generators)
+    {
+      generator.join();
+    }
 
-                log.debug("Updated: {}", updated);
+    // lets the last requests complete
+    var drainDeadline = System.nanoTime() + config.getDuration("load_test.drain_timeout").toNanos();
+    while (System.nanoTime() < drainDeadline && operations.stream().anyMatch(o -> o.nbInFlight.get() > 0))
+    {
+      Thread.sleep(10);
+    }
 
-                return Optional.of(updated);
-              }
-              catch (JsonProcessingException ex)
-              {
-              }
+    actor.terminate();
 
-              return Optional.empty();
-            });
-      }
-      catch (JsonProcessingException ex)
-      {
-      }
+    var report = new LoadReport();
+    report.setStartedAt(startedAt.toString());
+    report.setDurationMs(duration.toMillis());
+    report.setOperations(operations.stream().map(o -> o.report(duration)).collect(toList()));
 
-      return CompletableFuture.completedFuture(Optional.empty());
-    });
+    writeReport(report, Path.of(config.getString("load_test.report_directory")),
+        startedAt.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
   }
 
-  private static TimerTask cancelRandomReservationsTask(int nbToCancel)
+  private static double rateOf(Config config, String operation)
   {
-    return new TimerTask()
-    {
-      @Override
-      public void run()
-      {
-        CompletableFuture.allOf(IntStream.range(0, nbToCancel)
-            .mapToObj(i -> cancelRandomReservation())
-            .toArray(CompletableFuture[]::new))
-            .join();
-      }
-    };
+    return config.getDouble(format("load_test.%s.rate", operation));
   }
 
-  private static CompletableFuture<Optional<Reservation>> cancelRandomReservation()
+  private static Map<String, Double> percentilesOf(Histogram histogram)
   {
-    var id = getRandomReservationId();
+    var percentiles = new LinkedHashMap<String, Double>();
+    PERCENTILES.forEach((label, percentile) ->
+        percentiles.put(label, toMs(histogram.getValueAtPercentile(percentile))));
+    percentiles.put("max", toMs(histogram.getMaxValue()));
 
-    var request = defaultHttpBuilder(format("/reservations/%s", id))
-        .DELETE()
-        .build();
+    return percentiles;
+  }
 
-    long startTime = System.nanoTime();
+  private static double toMs(long micros)
+  {
+    return micros / 1000.0;
+  }
 
-    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-        .thenApplyAsync(response ->
-        {
-          nbRequests.incrementAndGet();
-          cancelationExecutionTimes.add(System.nanoTime() - startTime);
+  private static void writeReport(LoadReport report, Path directory, String suffix) throws Exception
+  {
+    var text = new StringBuilder(format("Load test of %dms, started at %s%n", report.getDurationMs(), report.getStartedAt()));
+    text.append(format("%-15s %10s %10s %8s %8s %8s %10s %10s %10s %10s %10s %12s%n",
+        "operation", "target/s", "achieved/s", "sent", "errors", "failures",
+        "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms"));
 
-          if (response.statusCode() != OK.intValue())
-          {
-            logError(response);
+    for (var o : report.getOperations())
+    {
+      var rt = o.getResponseTimeMs();
+      text.append(format("%-15s %10.1f %10.1f %8d %8d %8d %10.2f %10.2f %10.2f %10.2f %10.2f %12.2f%n",
+          o.getName(), o.getTargetRate(), o.getAchievedRate(), o.getSent(), o.getErrorResponses(), o.getFailures(),
+          rt.get("p50"), rt.get("p90"), rt.get("p99"), rt.get("p99.9"), rt.get("max"),
+          o.getServiceTimeMs().get("p99")));
+    }
 
-            return Optional.empty();
-          }
+    log.info("\n{}", text);
 
-          try
-          {
-            var reservation = OBJECT_MAPPER.readValue(response.body(), CancelReservationResponse.class)
-                .getReservation();
+    Files.createDirectories(directory);
 
-            log.debug("Canceled: {}", reservation);
+    var textFile = directory.resolve(format("load-test-%s.txt", suffix));
+    Files.writeString(textFile, text);
 
-            return Optional.of(reservation);
-          }
-          catch (JsonProcessingException ex)
-          {
-          }
+    var jsonFile = directory.resolve(format("load-test-%s.json", suffix));
+    OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(jsonFile.toFile(), report);
 
-          return Optional.empty();
-        });
+    log.info("Reports written to {} and {}", textFile, jsonFile);
   }
 
-  private static TimerTask retrieveRandomReservationsTask(int nbToRetrieve)
+  private static CompletableFuture<Integer> createRandomReservation()
   {
-    return new TimerTask()
-    {
-      @Override
-      public void run()
-      {
-        CompletableFuture.allOf(IntStream.range(0, nbToRetrieve)
-            .mapToObj(i -> retrieveRandomCreatedReservation())
-            .toArray(CompletableFuture[]::new))
-            .join();
-      }
-    };
+    return createReservation(Optional.empty(), Optional.empty());
   }
 
-  private static UUID getRandomReservationId()
+  private static CompletableFuture<Integer> createReservation(
+      Optional<LocalDate> maybeArrivalDate,
+      Optional<LocalDate> maybeDepartureDate)
   {
-    if (reservationIds.isEmpty())
-    {
-      return UUID.randomUUID();
-    }
+    LocalDate arrivalDate;
 
+    // let's make bad creations a few times
     if (Math.random() < 0.15)
     {
-      // generating some 404
-      return UUID.randomUUID();
+      arrivalDate = now();
+    }
+    else
+    {
+      arrivalDate = maybeArrivalDate.orElseGet(() -> now().plus(ofDays(1 + faker.random().nextInt(26))));
     }
 
-    // had an error when using Stream + random sort...
-    shuffle(reservationIds);
+    var departureDate = maybeDepartureDate.orElseGet(() -> arrivalDate.plus(ofDays(1 + faker.random().nextInt(2))));
 
-    return reservationIds.get(0);
-  }
+    var body = ReservationCreateBody.builder()
+        .clientEmail(faker.internet().emailAddress())
+        .arrivalDate(arrivalDate)
+        .departureDate(departureDate)
+        .build();
 
-  private static CompletableFuture<Optional<Reservation>> retrieveRandomCreatedReservation()
-  {
-    var id = getRandomReservationId();
+    return send(defaultHttpBuilder("/reservations").POST(bodyOf(body))).thenApply(response ->
+    {
+      if (response.statusCode() == CREATED.intValue())
+      {
+        try
+        {
+          reservations.add(OBJECT_MAPPER.readValue(response.body(), CreateReservationResponse.class)
+              .getReservation());
+        }
+        catch (JsonProcessingException ex)
+        {
+        }
+      }
 
-    var request = defaultHttpBuilder(format("/reservations/%s", id))
-        .GET()
-        .build();
+      return response.statusCode();
+    });
+  }
 
-    long startTime = System.nanoTime();
+  private static CompletableFuture<?> createSomeFollowingReservations(int nbToCreate)
+  {
+    var dayCursor = new AtomicInteger(1);
 
-    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-        .thenApplyAsync(response ->
+    return CompletableFuture.allOf(
+        IntStream.range(0, nbToCreate).mapToObj(i ->
         {
-          nbRequests.incrementAndGet();
-          retrievalExecutionTimes.add(System.nanoTime() - startTime);
+          var skip = faker.random().nextInt(2);
+          var duration = 1 + faker.random().nextInt(2);
 
-          if (response.statusCode() != OK.intValue())
-          {
-            logError(response);
+          var counterValue = dayCursor.addAndGet(skip + duration);
+
+          var arrivalDate = now().plus(ofDays(counterValue - duration));
+          var departureDate = arrivalDate.plus(ofDays(duration));
 
-            return Optional.empty();
-          }
+          return createReservation(Optional.of(arrivalDate), Optional.of(departureDate));
+        }).toArray(CompletableFuture<?>[]::new)
+    );
+  }
 
-          try
-          {
-            var reservation = OBJECT_MAPPER.readValue(response.body(), GetReservationResponse.class)
-                .getReservation();
+  private static CompletableFuture<Integer> updateRandomReservation()
+  {
+    var maybeReservation = getRandomReservation();
+    if (maybeReservation.isEmpty())
+    {
+      return retrieveRandomReservation();
+    }
 
-            log.debug("Retrieved: {}", reservation);
+    var reservation = maybeReservation.get();
 
-            return Optional.of(reservation);
-          }
-          catch (JsonProcessingException ex)
-          {
-          }
+    return send(defaultHttpBuilder(format("/reservations/%s", reservation.getId()))
+        .PUT(bodyOf(generateUpdateBody(reservation))))
+        .thenApply(HttpResponse::statusCode);
+  }
 
-          return Optional.empty();
-        });
+  private static CompletableFuture<Integer> cancelRandomReservation()
+  {
+    return send(defaultHttpBuilder(format("/reservations/%s", getRandomReservationId())).DELETE())
+        .thenApply(HttpResponse::statusCode);
   }
 
-  private static TimerTask doRandomAvailabilitiesChecksTask(int nbToRetrieve)
+  private static CompletableFuture<Integer> retrieveRandomReservation()
   {
-    return new TimerTask()
-    {
-      @Override
-      public void run()
-      {
-        CompletableFuture.allOf(IntStream.range(0, nbToRetrieve)
-            .mapToObj(i -> doRandomAvailabilitiesCheck())
-            .toArray(CompletableFuture[]::new))
-            .join();
-      }
-    };
+    return send(defaultHttpBuilder(format("/reservations/%s", getRandomReservationId())).GET())
+        .thenApply(HttpResponse::statusCode);
   }
 
-  private static CompletableFuture<Optional<List<Availability>>> doRandomAvailabilitiesCheck()
+  private static CompletableFuture<Integer> doRandomAvailabilitiesCheck()
   {
     var checkFrom = now().plus(ofDays(faker.random().nextInt(25)));
     var checkTo = checkFrom.plus(ofDays(faker.random().nextInt(40))); // 40 -> it will trigger some bad requests
 
-    var request = defaultHttpBuilder(format("/reservations?from=%s&to=%s", checkFrom, checkTo))
-        .GET()
-        .build();
-
-    long startTime = System.nanoTime();
-
-    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-        .thenApplyAsync(response ->
-        {
-          nbRequests.incrementAndGet();
-          availabilitiesExecutionTimes.add(System.nanoTime() - startTime);
-
-          if (response.statusCode() != OK.intValue())
-          {
-            logError(response);
-
-            return Optional.empty();
-          }
+    return send(defaultHttpBuilder(format("/reservations?from=%s&to=%s", checkFrom, checkTo)).GET())
+        .thenApply(HttpResponse::statusCode);
+  }
 
-          try
-          {
-            var availabilities = OBJECT_MAPPER.readValue(response.body(), GetAvailabilitiesResponse.class)
-                .getAvailabilities();
+  private static Optional<Reservation> getRandomReservation()
+  {
+    synchronized (reservations)
+    {
+      if (reservations.isEmpty())
+      {
+        return Optional.empty();
+      }
 
-            log.debug("Availabilities: {}", availabilities);
+      return Optional.of(reservations.get(ThreadLocalRandom.current().nextInt(reservations.size())));
+    }
+  }
 
-            return Optional.of(availabilities);
-          }
-          catch (JsonProcessingException ex)
-          {
-          }
+  private static UUID getRandomReservationId()
+  {
+    if (Math.random() < 0.15)
+    {
+      // generating some 404
+      return UUID.randomUUID();
+    }
 
-          return Optional.empty();
-        });
+    return getRandomReservation().map(Reservation::getId).orElseGet(UUID::randomUUID);
   }
 
-  private static HttpRequest.Builder defaultHttpBuilder(String uri)
+  private static CompletableFuture<HttpResponse<String>> send(HttpRequest.Builder builder)
   {
-    return HttpRequest.newBuilder(URI.create(serverBaseUri + uri))
-        .header("Content-Type", "application/json");
+    return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString());
   }
 
-  private static void logError(HttpResponse<String> response)
+  private static HttpRequest.BodyPublisher bodyOf(Object body)
   {
     try
     {
-      var map = OBJECT_MAPPER.readValue(response.body(), LinkedHashMap.class);
-
-      var statusCode = (int) map.get("statusCode");
-      var error = Optional.ofNullable(map.get("error")).map(String.class::cast).orElse("<empty>");
-
-      log.debug("{} {}", statusCode, error);
+      return HttpRequest.BodyPublishers.ofString(OBJECT_MAPPER.writeValueAsString(body));
     }
     catch (JsonProcessingException ex)
     {
+      throw new IllegalArgumentException(ex);
     }
   }
+
+  private static HttpRequest.Builder defaultHttpBuilder(String uri)
+  {
+    return HttpRequest.newBuilder(URI.create(serverBaseUri + uri))
+        .timeout(REQUEST_TIMEOUT)
+        .header("Content-Type", "application/json");
+  }
 }
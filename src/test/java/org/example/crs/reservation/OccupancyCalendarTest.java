@@ -0,0 +1,279 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import org.example.crs.reservation.command.param.Availability;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OccupancyCalendarTest
+{
+  private OccupancyCalendar calendar;
+
+  @Before
+  public void before()
+  {
+    calendar = new OccupancyCalendar();
+  }
+
+  @Test
+  public void testAvailabilities_WhenEmpty()
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(30));
+
+    var availabilities = calendar.getAvailabilities(checkFrom, checkTo);
+    assertEquals(1, availabilities.size());
+    assertEquals(checkFrom, availabilities.get(0).getFrom());
+    assertEquals(checkTo, availabilities.get(0).getTo());
+  }
+
+  @Test
+  public void testAvailabilities_WithOccupiedNights()
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(10));
+
+    calendar.occupy(createPeriod(checkFrom.minus(ofDays(1)), checkFrom.plus(ofDays(1))));
+    calendar.occupy(createPeriod(checkFrom.plus(ofDays(4)), checkFrom.plus(ofDays(5))));
+    calendar.occupy(createPeriod(checkTo.minus(ofDays(1)), checkTo.plus(ofDays(1))));
+
+    var availabilities = calendar.getAvailabilities(checkFrom, checkTo);
+    assertEquals(2, availabilities.size());
+
+    assertEquals(checkFrom.plus(ofDays(1)), availabilities.get(0).getFrom());
+    assertEquals(checkFrom.plus(ofDays(4)), availabilities.get(0).getTo());
+
+    assertEquals(checkFrom.plus(ofDays(5)), availabilities.get(1).getFrom());
+    assertEquals(checkFrom.plus(ofDays(9)), availabilities.get(1).getTo());
+  }
+
+  @Test
+  public void testAvailabilities_AcrossWords()
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(200));
+
+    calendar.occupy(createPeriod(checkFrom.plus(ofDays(62)), checkFrom.plus(ofDays(66))));
+
+    var availabilities = calendar.getAvailabilities(checkFrom, checkTo);
+    assertEquals(2, availabilities.size());
+    assertEquals(checkFrom.plus(ofDays(62)), availabilities.get(0).getTo());
+    assertEquals(checkFrom.plus(ofDays(66)), availabilities.get(1).getFrom());
+    assertEquals(checkTo, availabilities.get(1).getTo());
+  }
+
+  @Test
+  public void testAvailabilities_BeyondTrackedNights()
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = now().plus(ofDays(OccupancyCalendar.NB_NIGHTS + 10));
+
+    calendar.occupy(createPeriod(checkFrom, checkFrom.plus(ofDays(1))));
+
+    var availabilities = calendar.getAvailabilities(checkFrom, checkTo);
+    assertEquals(1, availabilities.size());
+    assertEquals(checkFrom.plus(ofDays(1)), availabilities.get(0).getFrom());
+    assertEquals(checkTo, availabilities.get(0).getTo());
+  }
+
+  @Test
+  public void testIsFree()
+  {
+    var arrival = now().plus(ofDays(3));
+    var reserved = createPeriod(arrival, arrival.plus(ofDays(2)));
+    calendar.occupy(reserved);
+
+    assertFalse(calendar.isFree(createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(3)))));
+    assertTrue(calendar.isFree(createPeriod(arrival.plus(ofDays(2)), arrival.plus(ofDays(3)))));
+    assertTrue(calendar.isFree(createPeriod(arrival.minus(ofDays(2)), arrival)));
+
+    // moving the reservation one day later only overlaps its own nights
+    assertTrue(calendar.isFree(createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(3))), reserved));
+
+    calendar.release(reserved);
+    assertTrue(calendar.isFree(reserved));
+  }
+
+  @Test
+  public void testIsFree_WithCapacity()
+  {
+    calendar = new OccupancyCalendar(2);
+
+    var arrival = now().plus(ofDays(3));
+    var first = createPeriod(arrival, arrival.plus(ofDays(2)));
+    var second = createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(3)));
+
+    assertTrue(calendar.tryOccupy(first));
+    assertTrue(calendar.tryOccupy(second));
+
+    // the second night of the first period is full, not the others
+    assertFalse(calendar.isFree(createPeriod(arrival, arrival.plus(ofDays(2)))));
+    assertTrue(calendar.isFree(createPeriod(arrival, arrival.plus(ofDays(1)))));
+    assertTrue(calendar.isFree(createPeriod(arrival.plus(ofDays(2)), arrival.plus(ofDays(3)))));
+    assertFalse(calendar.tryOccupy(createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(2)))));
+
+    // the first reservation can stay on its own pitch
+    assertTrue(calendar.isFree(first, first));
+
+    calendar.setCapacity(3);
+    assertTrue(calendar.tryOccupy(createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(2)))));
+  }
+
+  @Test
+  public void testTryMove_KeepsCounts()
+  {
+    calendar = new OccupancyCalendar(2);
+
+    var arrival = now().plus(ofDays(3));
+    var current = createPeriod(arrival, arrival.plus(ofDays(2)));
+    var next = createPeriod(arrival.plus(ofDays(1)), arrival.plus(ofDays(3)));
+
+    assertTrue(calendar.tryOccupy(current));
+    assertTrue(calendar.tryMove(Optional.of(current), Optional.of(next)));
+
+    // only the nights of the new period are occupied, once
+    assertEquals(List.of(
+        new Availability(arrival, arrival.plus(ofDays(1)), 2),
+        new Availability(arrival.plus(ofDays(3)), arrival.plus(ofDays(4)), 2)),
+        calendar.getAvailabilities(arrival, arrival.plus(ofDays(4)), 2));
+    assertEquals(
+        List.of(new Availability(arrival, arrival.plus(ofDays(4)), 1)),
+        calendar.getAvailabilities(arrival, arrival.plus(ofDays(4))));
+
+    assertTrue(calendar.tryMove(Optional.of(next), Optional.empty()));
+    assertEquals(
+        new Availability(arrival, arrival.plus(ofDays(4)), 2),
+        calendar.getAvailabilities(arrival, arrival.plus(ofDays(4))).get(0));
+  }
+
+  @Test
+  public void testAvailabilities_WithMinFreePitches()
+  {
+    calendar = new OccupancyCalendar(3);
+
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(10));
+
+    // 1 pitch occupied on days 2-3, 2 pitches on day 3, 3 pitches on day 6
+    calendar.occupy(createPeriod(checkFrom.plus(ofDays(2)), checkFrom.plus(ofDays(4))));
+    calendar.occupy(createPeriod(checkFrom.plus(ofDays(3)), checkFrom.plus(ofDays(4))));
+    for (var i = 0; i < 3; i++)
+    {
+      calendar.occupy(createPeriod(checkFrom.plus(ofDays(6)), checkFrom.plus(ofDays(7))));
+    }
+
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(6)), 1),
+        new Availability(checkFrom.plus(ofDays(7)), checkTo, 3)),
+        calendar.getAvailabilities(checkFrom, checkTo));
+
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(3)), 2),
+        new Availability(checkFrom.plus(ofDays(4)), checkFrom.plus(ofDays(6)), 3),
+        new Availability(checkFrom.plus(ofDays(7)), checkTo, 3)),
+        calendar.getAvailabilities(checkFrom, checkTo, 2));
+
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(2)), 3),
+        new Availability(checkFrom.plus(ofDays(4)), checkFrom.plus(ofDays(6)), 3),
+        new Availability(checkFrom.plus(ofDays(7)), checkTo, 3)),
+        calendar.getAvailabilities(checkFrom, checkTo, 3));
+
+    assertTrue(calendar.getAvailabilities(checkFrom, checkTo, 4).isEmpty());
+  }
+
+  @Test
+  public void testAvailabilities_AcrossTheEndOfTheRing()
+  {
+    calendar = new OccupancyCalendar(2);
+
+    // the night stored in the last slot, and the next one stored in the first slot
+    var slotMask = OccupancyCalendar.NB_NIGHTS - 1;
+    var lastSlot = now().plus(ofDays(slotMask - (int) (now().toEpochDay() & slotMask)));
+    var checkFrom = lastSlot.minus(ofDays(2));
+    var checkTo = lastSlot.plus(ofDays(3));
+
+    calendar.occupy(createPeriod(lastSlot, lastSlot.plus(ofDays(2))));
+    calendar.occupy(createPeriod(lastSlot.plus(ofDays(1)), lastSlot.plus(ofDays(2))));
+
+    assertFalse(calendar.isFree(createPeriod(lastSlot, lastSlot.plus(ofDays(2)))));
+    assertTrue(calendar.isFree(createPeriod(lastSlot.minus(ofDays(1)), lastSlot.plus(ofDays(1)))));
+
+    assertEquals(List.of(
+        new Availability(checkFrom, lastSlot, 2),
+        new Availability(lastSlot.plus(ofDays(2)), checkTo, 2)),
+        calendar.getAvailabilities(checkFrom, checkTo, 2));
+    assertEquals(List.of(
+        new Availability(checkFrom, lastSlot.plus(ofDays(1)), 1),
+        new Availability(lastSlot.plus(ofDays(2)), checkTo, 2)),
+        calendar.getAvailabilities(checkFrom, checkTo));
+  }
+
+  @Test
+  public void testTryOccupy_Concurrently() throws Exception
+  {
+    calendar = new OccupancyCalendar(3);
+
+    var checkFrom = now().plus(ofDays(1));
+    var nbNights = 60;
+    var booked = new AtomicIntegerArray(nbNights);
+
+    var threads = IntStream.range(0, 8)
+        .mapToObj(t -> new Thread(() ->
+        {
+          var random = ThreadLocalRandom.current();
+          for (var i = 0; i < 2_000; i++)
+          {
+            var arrival = random.nextInt(nbNights - 3);
+            var departure = arrival + 1 + random.nextInt(3);
+            var period = createPeriod(checkFrom.plus(ofDays(arrival)), checkFrom.plus(ofDays(departure)));
+            if (calendar.tryOccupy(period))
+            {
+              IntStream.range(arrival, departure).forEach(booked::incrementAndGet);
+            }
+          }
+        }))
+        .collect(toList());
+    threads.forEach(Thread::start);
+    for (var thread : threads)
+    {
+      thread.join();
+    }
+
+    // the tree agrees with the bookings made, and never exceeds the capacity
+    var expected = new ArrayList<Availability>();
+    for (var night = 0; night < nbNights; night++)
+    {
+      var period = createPeriod(checkFrom.plus(ofDays(night)), checkFrom.plus(ofDays(night + 1)));
+      assertTrue(booked.get(night) <= 3);
+      assertEquals(booked.get(night) < 3, calendar.isFree(period));
+
+      if (booked.get(night) < 3)
+      {
+        var runEnd = night;
+        var maxBooked = 0;
+        for (; runEnd < nbNights && booked.get(runEnd) < 3; runEnd++)
+        {
+          maxBooked = Math.max(maxBooked, booked.get(runEnd));
+        }
+        expected.add(new Availability(checkFrom.plus(ofDays(night)), checkFrom.plus(ofDays(runEnd)), 3 - maxBooked));
+        night = runEnd;
+      }
+    }
+    assertEquals(expected, calendar.getAvailabilities(checkFrom, checkFrom.plus(ofDays(nbNights))));
+  }
+}
@@ -0,0 +1,203 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateUpdateBody;
+import static org.hamcrest.CoreMatchers.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.example.crs.reservation.exception.ReservationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class OffHeapReservationRepositoryTest
+{
+  private static final int TIMEOUT_MS = 1000;
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private OffHeapReservationRepository repository;
+
+  @Before
+  public void before()
+  {
+    repository = new OffHeapReservationRepository(ForkJoinPool.commonPool());
+  }
+
+  @Test
+  public void testCreateAndFindById() throws Exception
+  {
+    var created = repository.create(generateCreateBody()).get(TIMEOUT_MS, MILLISECONDS);
+
+    assertEquals(created, repository.findById(created.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertTrue(repository.findById(UUID.randomUUID()).get(TIMEOUT_MS, MILLISECONDS).isEmpty());
+  }
+
+  @Test
+  public void testCreate_AcrossPages() throws Exception
+  {
+    // more than a page of records, sharing the same client strings
+    var reservations = IntStream.range(0, 70_000)
+        .mapToObj(i -> repository.create(bodyFor(-10 - i, -9 - i, "client@example.org")))
+        .collect(toList());
+
+    for (var promise : reservations)
+    {
+      var reservation = promise.get(TIMEOUT_MS, MILLISECONDS);
+      assertEquals(reservation, repository.findById(reservation.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    }
+    assertEquals(70_000, repository.size());
+  }
+
+  @Test
+  public void testCreate_FailedWriteReleasesNights() throws Exception
+  {
+    // larger than a page of the string region, so the record can not be written
+    var body = bodyFor(1, 3, "x".repeat(16 * 1024 * 1024));
+
+    try
+    {
+      repository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+      fail("The creation should have failed");
+    }
+    catch (ExecutionException ex)
+    {
+      assertTrue(ex.getCause() instanceof IllegalArgumentException);
+    }
+
+    assertEquals(0, repository.size());
+    assertTrue(repository.getOccupancyCalendar().isFree(body));
+  }
+
+  @Test
+  public void testIterator() throws Exception
+  {
+    var created = IntStream.range(0, 5)
+        .mapToObj(i -> repository.create(bodyFor(1 + 2 * i, 2 + 2 * i, "client@example.org")).join())
+        .collect(toList());
+    var canceled = repository.cancel(created.get(0).getId()).get(TIMEOUT_MS, MILLISECONDS).get();
+
+    var iterated = new ArrayList<Reservation>();
+    repository.iterator().forEachRemaining(iterated::add);
+
+    // in the order the records were written, the canceled one included
+    var expected = new ArrayList<>(created);
+    expected.set(0, canceled);
+    assertEquals(expected, iterated);
+  }
+
+  @Test
+  public void testUpdate() throws Exception
+  {
+    var created = repository.create(generateCreateBody()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var update = generateUpdateBody(created);
+    var updated = repository.update(created.getId(), update).get(TIMEOUT_MS, MILLISECONDS).get();
+
+    assertEquals(update.getArrivalDate().get(), updated.getArrivalDate());
+    assertEquals(updated, repository.findById(created.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertTrue(repository.update(UUID.randomUUID(), update).get(TIMEOUT_MS, MILLISECONDS).isEmpty());
+  }
+
+  @Test
+  public void testUpdate_NotAvailable() throws Exception
+  {
+    var existing = repository.create(bodyFor(1, 3, "a@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    var other = repository.create(bodyFor(3, 4, "b@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(isA(ReservationException.class));
+
+    repository.update(other.getId(), ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(existing.getArrivalDate()))
+        .departureDate(Optional.of(existing.getDepartureDate()))
+        .build()).get(TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @Test
+  public void testCancel_ReleasesNights() throws Exception
+  {
+    var body = generateCreateBody();
+    var created = repository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+
+    var canceled = repository.cancel(created.getId()).get(TIMEOUT_MS, MILLISECONDS).get();
+    assertEquals(CANCELED, canceled.getStatus());
+
+    repository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @Test
+  public void testFindFromExcept() throws Exception
+  {
+    var past = repository.create(bodyFor(-3, -1, "a@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    var upcoming = repository.create(bodyFor(1, 2, "b@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    var ignored = repository.create(bodyFor(3, 4, "c@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    var canceled = repository.create(bodyFor(5, 6, "d@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    repository.cancel(canceled.getId()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var found = repository.findFromExcept(now(), Optional.of(ignored.getId())).get(TIMEOUT_MS, MILLISECONDS);
+
+    assertEquals(1, found.size());
+    assertEquals(upcoming, found.get(0));
+    assertTrue(repository.findFrom(now().minus(ofDays(3))).get(TIMEOUT_MS, MILLISECONDS).contains(past));
+  }
+
+  @Test
+  public void testFindFrom_MovedDeparture() throws Exception
+  {
+    var moved = repository.create(bodyFor(-3, -1, "a@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    var updated = repository.update(moved.getId(), ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(now().plus(ofDays(7))))
+        .departureDate(Optional.of(now().plus(ofDays(8))))
+        .build()).get(TIMEOUT_MS, MILLISECONDS).get();
+
+    assertEquals(List.of(updated), repository.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS));
+
+    repository.cancel(moved.getId()).get(TIMEOUT_MS, MILLISECONDS);
+    assertTrue(repository.findFrom(now().minus(ofDays(3))).get(TIMEOUT_MS, MILLISECONDS).isEmpty());
+  }
+
+  @Test
+  public void testFindFrom_SeveralChunks() throws Exception
+  {
+    for (var i = 0; i < 3000; i++)
+    {
+      repository.create(bodyFor(-10 - i, -9 - i, "client@example.org")).get(TIMEOUT_MS, MILLISECONDS);
+    }
+
+    // the reservations departing 1508 days ago or after: more than a chunk of records
+    var found = repository.findFrom(now().minus(ofDays(1508))).get(TIMEOUT_MS, MILLISECONDS);
+
+    assertEquals(1500, found.size());
+    assertTrue(found.stream().noneMatch(r -> r.getDepartureDate().isBefore(now().minus(ofDays(1508)))));
+  }
+
+  private static ReservationCreateBody bodyFor(int arrival, int departure, String email)
+  {
+    return ReservationCreateBody.builder()
+        .clientEmail(email)
+        .clientName("John Doe")
+        .arrivalDate(now().plus(ofDays(arrival)))
+        .departureDate(now().plus(ofDays(departure)))
+        .build();
+  }
+}
@@ -0,0 +1,86 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.example.crs.Json.OBJECT_MAPPER;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.example.crs.reservation.ReservationImport.Format;
+import org.example.crs.reservation.command.param.ReservationImportResult;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+
+public class ReservationImportTest
+{
+  @ClassRule
+  public static TestKitJunitResource testkit = new TestKitJunitResource();
+
+  private final ReservationImport importer = new ReservationImport(2, 10, 1024);
+
+  @Test
+  public void testImport_Timeout() throws Exception
+  {
+    var results = importFailing(new TimeoutException("Ask timed out"));
+
+    assertEquals(2, results.size());
+    for (var result : results)
+    {
+      assertEquals(504, result.getStatusCode());
+      assertEquals(ReservationImport.UNKNOWN_OUTCOME_MESSAGE, result.getError());
+    }
+  }
+
+  @Test
+  public void testImport_Failure() throws Exception
+  {
+    var results = importFailing(new IllegalStateException("Registry not reachable"));
+
+    assertEquals(2, results.size());
+    for (var result : results)
+    {
+      assertEquals(503, result.getStatusCode());
+      assertEquals(ReservationImport.NOT_BOOKED_MESSAGE, result.getError());
+    }
+  }
+
+  private List<ReservationImportResult> importFailing(Throwable failure) throws Exception
+  {
+    var file = new StringBuilder();
+    for (var inDays = 1; inDays <= 2; inDays++)
+    {
+      var body = generateCreateBody();
+      body.setArrivalDate(now().plus(ofDays(inDays * 5)));
+      body.setDepartureDate(body.getArrivalDate().plus(ofDays(1)));
+      file.append(OBJECT_MAPPER.writeValueAsString(body)).append('\n');
+    }
+
+    var flow = importer.flow(Format.NDJSON, bodies -> CompletableFuture.failedFuture(failure),
+        testkit.system().executionContext());
+
+    var report = Source.single(ByteString.fromString(file.toString()))
+        .via(flow)
+        .runWith(Sink.seq(), testkit.system())
+        .toCompletableFuture()
+        .get(5, TimeUnit.SECONDS);
+
+    var results = new ArrayList<ReservationImportResult>();
+    for (var line : report)
+    {
+      results.add(OBJECT_MAPPER.readValue(line.utf8String(), ReservationImportResult.class));
+    }
+
+    return results;
+  }
+}
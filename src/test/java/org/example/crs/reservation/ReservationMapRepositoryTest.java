@@ -8,11 +8,14 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
 import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
 import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
 import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateUpdateBody;
+import static org.hamcrest.CoreMatchers.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
@@ -21,27 +24,37 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.example.crs.reservation.command.param.ReservationCreateBody;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
+import org.example.crs.reservation.exception.ReservationException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 public class ReservationMapRepositoryTest
 {
   private static final int TIMEOUT_MS = 150;
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   private ReservationRepository mapRepository;
 
   @Before
   public void before()
   {
-    mapRepository = new ReservationMapRepository();
+    mapRepository = new ReservationMapRepository(ForkJoinPool.commonPool());
   }
 
   @Test
@@ -76,6 +89,16 @@ public class ReservationMapRepositoryTest
     assertTrue(maybeFound.isEmpty());
   }
 
+  @Test
+  public void testFindById_CompletesRightAway() throws Exception
+  {
+    var reservation = mapRepository.create(generateCreateBody()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var promise = mapRepository.findById(reservation.getId());
+    assertTrue(promise.isDone());
+    assertEquals(reservation, promise.get().get());
+  }
+
   @Test
   public void testUpdate() throws Exception
   {
@@ -94,6 +117,10 @@ public class ReservationMapRepositoryTest
     assertEquals(update.getArrivalDate().get(), updated.getArrivalDate());
     assertEquals(update.getDepartureDate().get(), updated.getDepartureDate());
     assertEquals(update.getStatus().get(), updated.getStatus());
+
+    // the version read before the update is left untouched
+    assertEquals(ACTIVE, reservation.getStatus());
+    assertNotSame(reservation, updated);
   }
 
   @Test
@@ -269,4 +296,162 @@ public class ReservationMapRepositoryTest
     var in1Month = findAndGetIds.apply(now().plus(ofMonths(1)));
     assertTrue(in1Month.isEmpty());
   }
+
+  @Test
+  public void testFindFrom_SkipsCanceled() throws Exception
+  {
+    var body = generateCreateBody();
+    body.setArrivalDate(now().plus(ofDays(1)));
+    body.setDepartureDate(now().plus(ofDays(2)));
+
+    var canceledBody = generateCreateBody();
+    canceledBody.setArrivalDate(now().plus(ofDays(2)));
+    canceledBody.setDepartureDate(now().plus(ofDays(3)));
+
+    var reservation = mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+    var canceled = mapRepository.create(canceledBody).get(TIMEOUT_MS, MILLISECONDS);
+    mapRepository.cancel(canceled.getId()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var found = mapRepository.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(1, found.size());
+    assertEquals(reservation.getId(), found.get(0).getId());
+  }
+
+  @Test
+  public void testFindFrom_AfterPeriodUpdate() throws Exception
+  {
+    var reservation = mapRepository.create(generateCreateBody()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var update = ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(now().plus(ofMonths(1))))
+        .departureDate(Optional.of(now().plus(ofMonths(1)).plus(ofDays(1))))
+        .build();
+    mapRepository.update(reservation.getId(), update).get(TIMEOUT_MS, MILLISECONDS);
+
+    var found = mapRepository.findFrom(now().plus(ofMonths(1))).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(1, found.size());
+    assertEquals(reservation.getId(), found.get(0).getId());
+
+    var foundOnce = mapRepository.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(1, foundOnce.size());
+  }
+
+  @Test
+  public void testCreate_NotAvailable() throws Exception
+  {
+    var body = generateCreateBody();
+    mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(isA(ReservationException.class));
+
+    mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @Test
+  public void testCreate_ConcurrentOverlappingPeriods() throws Exception
+  {
+    var body = generateCreateBody();
+
+    var creations = IntStream.range(0, 50)
+        .mapToObj(i -> mapRepository.create(body).handle((reservation, ex) -> reservation))
+        .collect(toList());
+
+    var nbCreated = creations.stream()
+        .map(CompletableFuture::join)
+        .filter(Objects::nonNull)
+        .count();
+    assertEquals(1, nbCreated);
+  }
+
+  @Test
+  public void testCreateAll_BooksInOrder() throws Exception
+  {
+    var body = generateCreateBody();
+
+    var otherBody = generateCreateBody();
+    otherBody.setArrivalDate(body.getDepartureDate());
+    otherBody.setDepartureDate(body.getDepartureDate().plus(ofDays(1)));
+
+    var created = mapRepository.createAll(List.of(body, body, otherBody));
+    assertEquals(3, created.size());
+
+    var first = created.get(0).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(body.getArrivalDate(), first.getArrivalDate());
+    assertNotNull(created.get(2).get(TIMEOUT_MS, MILLISECONDS));
+
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(isA(ReservationException.class));
+
+    created.get(1).get(TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @Test
+  public void testCreateAll_RollsBackAFailedCreation() throws Exception
+  {
+    // the id of the second creation can not be generated
+    var nbIds = new AtomicInteger();
+    var repository = new ReservationMapRepository(() ->
+    {
+      if (nbIds.incrementAndGet() == 2)
+      {
+        throw new IllegalStateException("No more ids");
+      }
+      return UUID.randomUUID();
+    }, ForkJoinPool.commonPool());
+
+    var bodies = IntStream.range(0, 3)
+        .mapToObj(i ->
+        {
+          var body = generateCreateBody();
+          body.setArrivalDate(now().plus(ofDays(1 + 2 * i)));
+          body.setDepartureDate(body.getArrivalDate().plus(ofDays(1)));
+          return body;
+        })
+        .collect(toList());
+
+    var created = repository.createAll(bodies);
+
+    assertNotNull(created.get(0).get(TIMEOUT_MS, MILLISECONDS));
+    assertNotNull(created.get(2).get(TIMEOUT_MS, MILLISECONDS));
+    assertTrue(created.get(1).isCompletedExceptionally());
+
+    // only the failed creation is rolled back
+    assertEquals(2, repository.getLiveSize());
+    assertEquals(2, repository.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS).size());
+    assertTrue(repository.getOccupancyCalendar().isFree(bodies.get(1)));
+  }
+
+  @Test
+  public void testUpdate_NotAvailable() throws Exception
+  {
+    var body = generateCreateBody();
+    var existing = mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+
+    var otherBody = generateCreateBody();
+    otherBody.setArrivalDate(existing.getDepartureDate());
+    otherBody.setDepartureDate(existing.getDepartureDate().plus(ofDays(1)));
+    var other = mapRepository.create(otherBody).get(TIMEOUT_MS, MILLISECONDS);
+
+    var update = ReservationUpdateBody.builder()
+        .arrivalDate(Optional.of(existing.getArrivalDate()))
+        .departureDate(Optional.of(existing.getDepartureDate()))
+        .build();
+
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(isA(ReservationException.class));
+
+    mapRepository.update(other.getId(), update).get(TIMEOUT_MS, MILLISECONDS);
+  }
+
+  @Test
+  public void testCancel_ReleasesNights() throws Exception
+  {
+    var body = generateCreateBody();
+    var reservation = mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+    mapRepository.cancel(reservation.getId()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var recreated = mapRepository.create(body).get(TIMEOUT_MS, MILLISECONDS);
+    assertNotNull(recreated);
+  }
 }
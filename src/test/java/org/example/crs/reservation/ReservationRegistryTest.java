@@ -0,0 +1,117 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.typed.SupervisorStrategy;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.http.javadsl.model.StatusCodes;
+
+public class ReservationRegistryTest
+{
+  @ClassRule
+  public static TestKitJunitResource testkit = new TestKitJunitResource();
+
+  @Test
+  public void testCreate_Batched_RepliesToEach()
+  {
+    var service = new ReservationService(new ReservationMapRepository(ForkJoinPool.commonPool()));
+    var registry = testkit.spawn(ReservationRegistry.create(service, new CreateBatching(Duration.ZERO, 8)));
+
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+
+    // more than a batch, the same night for the first half
+    var nbCreations = 20;
+    for (var i = 0; i < nbCreations; i++)
+    {
+      registry.tell(new CreateReservationCmd(createBody(i < nbCreations / 2 ? 1 : 2 + i), probe.getRef()));
+    }
+
+    var statuses = new ArrayList<>();
+    for (var i = 0; i < nbCreations; i++)
+    {
+      statuses.add(probe.receiveMessage().getStatus());
+    }
+
+    assertEquals(1 + nbCreations / 2, statuses.stream().filter(StatusCodes.CREATED::equals).count());
+    assertEquals(nbCreations / 2 - 1, statuses.stream().filter(StatusCodes.BAD_REQUEST::equals).count());
+  }
+
+  @Test
+  public void testCreate_Batched_AfterWindow()
+  {
+    var service = new ReservationService(new ReservationMapRepository(ForkJoinPool.commonPool()));
+    var registry = testkit.spawn(ReservationRegistry.create(service, new CreateBatching(Duration.ofMillis(50), 64)));
+
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CreateReservationCmd(createBody(1), probe.getRef()));
+
+    // a batch not full is booked once its window is over
+    assertEquals(StatusCodes.CREATED, probe.receiveMessage().getStatus());
+  }
+
+  @Test
+  public void testCreate_Batched_PendingOnRestart()
+  {
+    var service = new ReservationService(new ReservationMapRepository(ForkJoinPool.commonPool()));
+    var registry = testkit.spawn(Behaviors.supervise(
+        ReservationRegistry.create(service, new CreateBatching(Duration.ofMinutes(1), 64)))
+        .onFailure(SupervisorStrategy.restart()));
+
+    var probe = testkit.<CreateReservationResponse>createTestProbe();
+    registry.tell(new CreateReservationCmd(createBody(1), probe.getRef()));
+
+    // an update without a body fails the registry
+    registry.tell(new UpdateReservationCmd(UUID.randomUUID(), null, testkit.<UpdateReservationResponse>createTestProbe().getRef()));
+
+    var response = probe.receiveMessage();
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, response.getStatus());
+    assertEquals(ReservationRegistry.NOT_BOOKED_MESSAGE, response.getError());
+
+    // as are the creations pending when the restarted registry stops
+    registry.tell(new CreateReservationCmd(createBody(1), probe.getRef()));
+
+    // replied once the creation is pending (the stop would overtake it otherwise)
+    var found = testkit.<GetReservationResponse>createTestProbe();
+    registry.tell(new GetReservationCmd(UUID.randomUUID(), found.getRef()));
+    found.receiveMessage();
+
+    testkit.stop(registry);
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, probe.receiveMessage().getStatus());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatching_Invalid()
+  {
+    new CreateBatching(Duration.ZERO, 0);
+  }
+
+  private static ReservationCreateBody createBody(int inDays)
+  {
+    var arrivalDate = now().plus(ofDays(inDays));
+
+    return ReservationCreateBody.builder()
+        .clientEmail("jane.doe@example.org")
+        .clientName("Jane Doe")
+        .arrivalDate(arrivalDate)
+        .departureDate(arrivalDate.plus(ofDays(1)))
+        .build();
+  }
+}
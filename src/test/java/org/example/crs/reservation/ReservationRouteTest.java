@@ -5,15 +5,18 @@ import static akka.http.javadsl.model.HttpRequest.GET;
 import static akka.http.javadsl.model.HttpRequest.POST;
 import static akka.http.javadsl.model.HttpRequest.PUT;
 import static akka.http.javadsl.model.MediaTypes.APPLICATION_JSON;
+import static akka.http.javadsl.model.MediaTypes.TEXT_PLAIN;
 import static akka.http.javadsl.model.StatusCodes.BAD_REQUEST;
 import static akka.http.javadsl.model.StatusCodes.CREATED;
 import static akka.http.javadsl.model.StatusCodes.NOT_FOUND;
 import static akka.http.javadsl.model.StatusCodes.OK;
+import static akka.http.javadsl.model.StatusCodes.SERVICE_UNAVAILABLE;
 import static java.lang.String.format;
 import static java.time.LocalDate.now;
 import static java.time.Period.ofDays;
 import static java.time.Period.ofMonths;
-import static org.example.crs.ReservationApp.OBJECT_MAPPER;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.Json.OBJECT_MAPPER;
 import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
 import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
 import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
@@ -23,13 +26,19 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.example.crs.reservation.ReservationMetrics.Operation;
 import org.example.crs.reservation.command.ReservationCommands.CancelReservationResponse;
 import org.example.crs.reservation.command.ReservationCommands.Command;
 import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
@@ -37,6 +46,7 @@ import org.example.crs.reservation.command.ReservationCommands.GetAvailabilities
 import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
 import org.example.crs.reservation.command.ReservationCommands.UpdateReservationResponse;
 import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.example.crs.reservation.command.param.ReservationImportResult;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
 import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
 import org.example.crs.reservation.exception.ReservationException;
@@ -47,12 +57,18 @@ import org.junit.Test;
 
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.typed.ActorRef;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
 import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCode;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RetryAfter;
 import akka.http.javadsl.testkit.JUnitRouteTest;
 import akka.http.javadsl.testkit.TestRoute;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.typesafe.config.ConfigFactory;
 
 @Slf4j
 public class ReservationRouteTest extends JUnitRouteTest
@@ -66,11 +82,12 @@ public class ReservationRouteTest extends JUnitRouteTest
   @Before
   public void before()
   {
-    var mapRepository = new ReservationMapRepository();
+    var mapRepository = new ReservationMapRepository(testkit.system().executionContext());
     var service = new ReservationService(mapRepository);
 
-    registry = testkit.spawn(ReservationRegistry.create(service));
-    route = testRoute(new ReservationRoute(registry, testkit.system().scheduler()).getRoute());
+    registry = testkit.spawn(ReservationRegistry.pool(service, 4));
+    route = testRoute(new ReservationRoute(registry, service, testkit.system().scheduler(),
+        AdmissionControl.fromConfig(ConfigFactory.load()), ReservationImport.fromConfig(ConfigFactory.load())).getRoute());
   }
 
   @After
@@ -353,6 +370,21 @@ public class ReservationRouteTest extends JUnitRouteTest
     assertEquals(ReservationAvailabilityCheckException.ALREADY_PAST_MESSAGE, error.getError());
   }
 
+  @Test
+  public void testGetAvailabilities_NoPitchWanted() throws JsonProcessingException
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(5));
+
+    var response = route.run(GET(format("/reservations?from=%s&to=%s&pitches=0", checkFrom, checkTo)))
+        .assertStatusCode(BAD_REQUEST)
+        .assertMediaType(APPLICATION_JSON)
+        .entityString();
+
+    var error = OBJECT_MAPPER.readValue(response, ErrorResponse.class);
+    assertEquals(ReservationAvailabilityCheckException.NO_PITCH_MESSAGE, error.getError());
+  }
+
   @Test
   public void testGetAvailabilities_SomeReservations() throws JsonProcessingException
   {
@@ -422,6 +454,274 @@ public class ReservationRouteTest extends JUnitRouteTest
         .assertMediaType(APPLICATION_JSON);
   }
 
+  @Test
+  public void testExportReservations() throws Exception
+  {
+    var first = createReservation(createBody(1), CREATED).getReservation();
+    var second = createReservation(createBody(5), CREATED).getReservation();
+    var third = createReservation(createBody(10), CREATED).getReservation();
+    var canceled = cancelReservation(second.getId(), OK).getReservation();
+
+    assertEquals(Set.of(first, canceled, third), exportReservations(""));
+    assertEquals(Set.of(first, third), exportReservations("?status=active"));
+    assertEquals(Set.of(canceled), exportReservations("?status=CANCELED"));
+    assertEquals(Set.of(canceled, third), exportReservations(format("?from=%s", second.getDepartureDate())));
+    assertEquals(Set.of(first, canceled), exportReservations(format("?to=%s", second.getArrivalDate())));
+    assertEquals(Set.of(third), exportReservations(format("?from=%s&status=ACTIVE", second.getArrivalDate())));
+  }
+
+  @Test
+  public void testExportReservations_InvalidFilter() throws JsonProcessingException
+  {
+    for (var query : List.of("?status=BOOKED", "?from=tomorrow"))
+    {
+      var response = route.run(GET("/reservations/export" + query))
+          .assertStatusCode(BAD_REQUEST)
+          .assertMediaType(APPLICATION_JSON)
+          .entityString();
+
+      var error = OBJECT_MAPPER.readValue(response, ErrorResponse.class);
+      assertEquals(ReservationRoute.INVALID_EXPORT_FILTER_MESSAGE, error.getError());
+    }
+  }
+
+  @Test
+  public void testImportReservations_Ndjson() throws JsonProcessingException
+  {
+    var first = createBody(2);
+    var earlier = createBody(1);
+    var tooLong = createBody(10);
+    tooLong.setDepartureDate(tooLong.getArrivalDate().plus(ofDays(5)));
+
+    var file = String.join("\n",
+        OBJECT_MAPPER.writeValueAsString(first),
+        "",
+        "{not json",
+        // overlaps the first line, but arrives before it
+        OBJECT_MAPPER.writeValueAsString(earlier),
+        OBJECT_MAPPER.writeValueAsString(tooLong),
+        OBJECT_MAPPER.writeValueAsString(createBody(20)));
+
+    var results = importReservations(ReservationRoute.NDJSON_CONTENT_TYPE, file);
+
+    assertEquals(List.of(1L, 3L, 4L, 5L, 6L), results.stream().map(ReservationImportResult::getLine).collect(toList()));
+    assertEquals(List.of(400, 400, 201, 400, 201), results.stream().map(ReservationImportResult::getStatusCode).collect(toList()));
+    assertEquals(ReservationException.NOT_AVAILABLE_MESSAGE, results.get(0).getError());
+    assertEquals(ReservationImport.INVALID_LINE_MESSAGE, results.get(1).getError());
+    assertEquals(ReservationException.TOO_LONG_MESSAGE, results.get(3).getError());
+
+    var imported = results.get(2).getReservation();
+    assertEquals(earlier.getArrivalDate(), imported.getArrivalDate());
+    assertEquals(imported, getReservation(imported.getId(), OK).getReservation());
+  }
+
+  @Test
+  public void testImportReservations_Csv() throws JsonProcessingException
+  {
+    var body = createBody(1);
+
+    var file = "clientEmail,clientName,arrivalDate,departureDate\n" +
+        format("%s,%s,%s,%s\r\n", body.getClientEmail(), body.getClientName(), body.getArrivalDate(), body.getDepartureDate()) +
+        format("%s,%s\n", body.getClientEmail(), body.getClientName());
+
+    var results = importReservations(ContentTypes.create(MediaTypes.TEXT_CSV, HttpCharsets.UTF_8), file);
+
+    assertEquals(2, results.size());
+    assertEquals(201, results.get(0).getStatusCode());
+    assertEquals(2, results.get(0).getLine());
+    assertEquals(body.getClientName(), results.get(0).getReservation().getClientName());
+    assertEquals(400, results.get(1).getStatusCode());
+  }
+
+  @Test
+  public void testImportReservations_UnsupportedMediaType() throws JsonProcessingException
+  {
+    route.run(POST("/reservations/import").withEntity(APPLICATION_JSON.toContentType(), "{}"))
+        .assertStatusCode(StatusCodes.UNSUPPORTED_MEDIA_TYPE)
+        .assertMediaType(APPLICATION_JSON);
+  }
+
+  @Test
+  public void testCampsites_AreIsolated() throws JsonProcessingException
+  {
+    var campsites = new Campsites(List.of("north", "south"), id ->
+        new ReservationService(new ReservationMapRepository(testkit.system().executionContext())));
+    var campsiteRegistry = testkit.spawn(CampsiteRegistry.create(campsites, 2, Duration.ofMinutes(1)));
+    var service = new ReservationService(new ReservationMapRepository(testkit.system().executionContext()));
+
+    var campsitesRoute = testRoute(new ReservationRoute(registry, service, campsites, campsiteRegistry,
+        testkit.system().scheduler(), AdmissionControl.fromConfig(ConfigFactory.load()),
+        ReservationImport.fromConfig(ConfigFactory.load())).getRoute());
+
+    // the same nights can be booked on each campsite
+    var body = generateCreateBody();
+    for (var campsite : List.of("north", "south"))
+    {
+      campsitesRoute.run(
+          POST(format("/campsites/%s/reservations", campsite))
+              .withEntity(APPLICATION_JSON.toContentType(), OBJECT_MAPPER.writeValueAsString(body))
+      )
+          .assertStatusCode(CREATED);
+    }
+
+    var north = OBJECT_MAPPER.readValue(campsitesRoute.run(
+        POST("/campsites/north/reservations")
+            .withEntity(APPLICATION_JSON.toContentType(), OBJECT_MAPPER.writeValueAsString(createBody(20)))
+    )
+        .assertStatusCode(CREATED)
+        .entityString(), CreateReservationResponse.class).getReservation();
+
+    campsitesRoute.run(GET(format("/campsites/north/reservations/%s", north.getId())))
+        .assertStatusCode(OK);
+    campsitesRoute.run(GET(format("/campsites/south/reservations/%s", north.getId())))
+        .assertStatusCode(NOT_FOUND);
+    campsitesRoute.run(GET(format("/reservations/%s", north.getId())))
+        .assertStatusCode(NOT_FOUND);
+
+    var availabilities = OBJECT_MAPPER.readValue(campsitesRoute.run(GET("/campsites/south/reservations"))
+        .assertStatusCode(OK)
+        .entityString(), GetAvailabilitiesResponse.class);
+    assertNotNull(availabilities.getAvailabilities());
+
+    testkit.stop(campsiteRegistry);
+  }
+
+  @Test
+  public void testCampsites_Unknown() throws JsonProcessingException
+  {
+    var response = route.run(GET("/campsites/north/reservations"))
+        .assertStatusCode(NOT_FOUND)
+        .assertMediaType(APPLICATION_JSON)
+        .entityString();
+
+    var error = OBJECT_MAPPER.readValue(response, ErrorResponse.class);
+    assertEquals(ReservationRoute.UNKNOWN_CAMPSITE_MESSAGE, error.getError());
+  }
+
+  @Test
+  public void testCreateReservation_Overloaded() throws JsonProcessingException
+  {
+    var service = new ReservationService(new ReservationMapRepository(testkit.system().executionContext()));
+    var admission = new AdmissionControl(Map.of(Operation.CREATE, 0), Duration.ofSeconds(2));
+
+    var overloadedRoute = testRoute(
+        new ReservationRoute(registry, service, testkit.system().scheduler(), admission,
+            ReservationImport.fromConfig(ConfigFactory.load())).getRoute());
+
+    var response = overloadedRoute.run(
+        POST("/reservations")
+            .withEntity(APPLICATION_JSON.toContentType(), OBJECT_MAPPER.writeValueAsString(generateCreateBody()))
+    )
+        .assertStatusCode(SERVICE_UNAVAILABLE)
+        .assertHeaderExists(RetryAfter.create(2L))
+        .entityString();
+
+    var error = OBJECT_MAPPER.readValue(response, ErrorResponse.class);
+    assertEquals(ReservationRoute.OVERLOADED_MESSAGE, error.getError());
+    assertEquals(0, admission.getInFlight(Operation.CREATE));
+
+    // other operations are not limited
+    overloadedRoute.run(GET(format("/reservations/%s", UUID.randomUUID())))
+        .assertStatusCode(NOT_FOUND);
+
+    var metrics = overloadedRoute.run(GET("/metrics")).entityString();
+    assertTrue(metrics.contains("crs_requests_shed_total{operation=\"create\"} 1\n"));
+  }
+
+  @Test
+  public void testImportReservations_Overloaded() throws JsonProcessingException
+  {
+    var service = new ReservationService(new ReservationMapRepository(testkit.system().executionContext()));
+    var admission = new AdmissionControl(Map.of(Operation.IMPORT, 1), Duration.ofSeconds(2));
+
+    var limitedRoute = testRoute(
+        new ReservationRoute(registry, service, testkit.system().scheduler(), admission,
+            ReservationImport.fromConfig(ConfigFactory.load())).getRoute());
+
+    var file = OBJECT_MAPPER.writeValueAsString(createBody(1));
+
+    // the permit is released once the report is streamed
+    limitedRoute.run(POST("/reservations/import").withEntity(ReservationRoute.NDJSON_CONTENT_TYPE, file))
+        .assertStatusCode(OK);
+    testkit.createTestProbe().awaitAssert(() ->
+    {
+      assertEquals(0, admission.getInFlight(Operation.IMPORT));
+      return null;
+    });
+
+    assertTrue(admission.tryAcquire(Operation.IMPORT));
+
+    var response = limitedRoute.run(POST("/reservations/import").withEntity(ReservationRoute.NDJSON_CONTENT_TYPE, file))
+        .assertStatusCode(SERVICE_UNAVAILABLE)
+        .assertHeaderExists(RetryAfter.create(2L))
+        .entityString();
+
+    var error = OBJECT_MAPPER.readValue(response, ErrorResponse.class);
+    assertEquals(ReservationRoute.OVERLOADED_MESSAGE, error.getError());
+  }
+
+  @Test
+  public void testGetMetrics() throws JsonProcessingException
+  {
+    createReservation(generateCreateBody(), CREATED);
+    getReservation(UUID.randomUUID(), NOT_FOUND);
+
+    var metrics = route.run(GET("/metrics"))
+        .assertStatusCode(OK)
+        .assertMediaType(TEXT_PLAIN)
+        .entityString();
+
+    assertTrue(metrics.contains("crs_requests_total{operation=\"create\",status=\"201\"} 1\n"));
+    assertTrue(metrics.contains("crs_requests_total{operation=\"get\",status=\"404\"} 1\n"));
+    assertTrue(metrics.contains("crs_request_duration_seconds_count{operation=\"create\"} 1\n"));
+    assertTrue(metrics.contains("crs_repository_operation_duration_seconds_count{operation=\"create\"} 1\n"));
+    assertTrue(metrics.contains("# TYPE crs_availability_cache_hits_total counter\n"));
+  }
+
+  private Set<Reservation> exportReservations(String query) throws JsonProcessingException
+  {
+    var response = route.run(GET("/reservations/export" + query))
+        .assertStatusCode(OK)
+        .assertContentType(ReservationRoute.NDJSON_CONTENT_TYPE)
+        .entityString();
+
+    var reservations = new HashSet<Reservation>();
+    for (var line : response.split("\n"))
+    {
+      if (!line.isEmpty())
+      {
+        reservations.add(OBJECT_MAPPER.readValue(line, Reservation.class));
+      }
+    }
+
+    return reservations;
+  }
+
+  private List<ReservationImportResult> importReservations(ContentType.NonBinary contentType, String file) throws JsonProcessingException
+  {
+    var response = route.run(POST("/reservations/import").withEntity(contentType, file))
+        .assertStatusCode(OK)
+        .assertContentType(ReservationRoute.NDJSON_CONTENT_TYPE)
+        .entityString();
+
+    var results = new ArrayList<ReservationImportResult>();
+    for (var line : response.split("\n"))
+    {
+      results.add(OBJECT_MAPPER.readValue(line, ReservationImportResult.class));
+    }
+
+    return results;
+  }
+
+  private static ReservationCreateBody createBody(int inDays)
+  {
+    var body = generateCreateBody();
+    body.setArrivalDate(now().plus(ofDays(inDays)));
+    body.setDepartureDate(body.getArrivalDate().plus(ofDays(2)));
+
+    return body;
+  }
+
   private CreateReservationResponse createReservation(ReservationCreateBody body, StatusCode status) throws JsonProcessingException
   {
     var response = route.run(
@@ -2,17 +2,21 @@ package org.example.crs.reservation;
 
 import static java.time.LocalDate.now;
 import static java.time.Period.ofDays;
-import static java.util.Collections.emptyList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.example.crs.Json.OBJECT_MAPPER;
 import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.List;
 
+import org.example.crs.reservation.command.ReservationCommands.GetAvailabilitiesResponse;
+import org.example.crs.reservation.command.param.Availability;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -21,12 +25,15 @@ public class ReservationServiceTest
   private static final int TIMEOUT_MS = 150;
 
   private ReservationRepository repository;
+  private OccupancyCalendar calendar;
   private ReservationService service;
 
   @Before
   public void before()
   {
     repository = mock(ReservationRepository.class);
+    calendar = new OccupancyCalendar();
+    when(repository.getOccupancyCalendar()).thenReturn(calendar);
 
     service = new ReservationService(repository);
   }
@@ -34,15 +41,75 @@ public class ReservationServiceTest
   @Test
   public void testIsAvailable() throws Exception
   {
-    var arrivalDate = now().plus(ofDays(1));
+    var arrivalDate = now().plus(ofDays(2));
     var departureDate = arrivalDate.plus(ofDays(1));
 
-    when(repository.findFromExcept(eq(arrivalDate), eq(Optional.empty())))
-        .thenReturn(CompletableFuture.completedFuture(emptyList()));
+    // the nights right before and right after are taken
+    calendar.occupy(createPeriod(arrivalDate.minus(ofDays(1)), arrivalDate));
+    calendar.occupy(createPeriod(departureDate, departureDate.plus(ofDays(1))));
 
     var checkPeriod = createPeriod(arrivalDate, departureDate);
+    assertTrue(calendar.isFree(checkPeriod));
 
     var isPeriodAvailable = service.isAvailable(checkPeriod).get(TIMEOUT_MS, MILLISECONDS);
     assertTrue(isPeriodAvailable);
   }
+
+  @Test
+  public void testIsAvailable_Occupied() throws Exception
+  {
+    var arrivalDate = now().plus(ofDays(1));
+    calendar.occupy(createPeriod(arrivalDate.plus(ofDays(1)), arrivalDate.plus(ofDays(3))));
+
+    var checkPeriod = createPeriod(arrivalDate, arrivalDate.plus(ofDays(2)));
+
+    var isPeriodAvailable = service.isAvailable(checkPeriod).get(TIMEOUT_MS, MILLISECONDS);
+    assertFalse(isPeriodAvailable);
+  }
+
+  @Test
+  public void testGetDefaultAvailabilities() throws Exception
+  {
+    var rendered = service.getDefaultAvailabilities().join();
+    assertSame(rendered, service.getDefaultAvailabilities().join());
+
+    var response = OBJECT_MAPPER.readValue(rendered.toArray(), GetAvailabilitiesResponse.class);
+    assertEquals(ReservationService.defaultCheckFrom(), response.getFrom());
+    assertEquals(1, response.getAvailabilities().size());
+
+    // nights after the default window do not outdate it
+    var checkTo = ReservationService.defaultCheckTo(ReservationService.defaultCheckFrom());
+    calendar.occupy(createPeriod(checkTo, checkTo.plus(ofDays(2))));
+    assertSame(rendered, service.getDefaultAvailabilities().join());
+
+    var arrivalDate = now().plus(ofDays(3));
+    calendar.occupy(createPeriod(arrivalDate, arrivalDate.plus(ofDays(2))));
+
+    var updated = service.getDefaultAvailabilities().join();
+    assertNotSame(rendered, updated);
+
+    response = OBJECT_MAPPER.readValue(updated.toArray(), GetAvailabilitiesResponse.class);
+    assertEquals(2, response.getAvailabilities().size());
+  }
+
+  @Test
+  public void testGetAvailabilities_WithMinFreePitches() throws Exception
+  {
+    calendar.setCapacity(2);
+
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(5));
+    calendar.occupy(createPeriod(checkFrom.plus(ofDays(1)), checkFrom.plus(ofDays(2))));
+
+    var availabilities = service.getAvailabilities(checkFrom, checkTo).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(List.of(new Availability(checkFrom, checkTo, 1)), availabilities);
+
+    availabilities = service.getAvailabilities(checkFrom, checkTo, 2).get(TIMEOUT_MS, MILLISECONDS);
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(1)), 2),
+        new Availability(checkFrom.plus(ofDays(2)), checkTo, 2)), availabilities);
+
+    var failed = service.getAvailabilities(checkFrom, checkTo, 0);
+    assertTrue(failed.isCompletedExceptionally());
+  }
 }
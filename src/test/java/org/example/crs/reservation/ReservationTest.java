@@ -3,10 +3,16 @@ package org.example.crs.reservation;
 import static java.time.LocalDate.now;
 import static java.time.Period.ofDays;
 import static java.util.stream.Collectors.toList;
+import static org.example.crs.Json.OBJECT_MAPPER;
+import static org.example.crs.reservation.Reservation.ReservationStatus.ACTIVE;
 import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
 import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateUpdateBody;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
+import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 import org.junit.Test;
@@ -34,6 +40,34 @@ public class ReservationTest
     assertEquals(2, reservation.getNbDays());
   }
 
+  @Test
+  public void testApplyUpdate_CreatesNewVersion()
+  {
+    var reservation = Reservation.fromCreate(generateCreateBody()).withId(UUID.randomUUID());
+    var update = generateUpdateBody(reservation);
+    update.setStatus(Optional.of(CANCELED));
+
+    var updated = reservation.applyUpdate(update);
+
+    assertEquals(reservation.getId(), updated.getId());
+    assertEquals(update.getArrivalDate().get(), updated.getArrivalDate());
+    assertEquals(CANCELED, updated.getStatus());
+
+    // the current version is left untouched
+    assertNotEquals(updated.getArrivalDate(), reservation.getArrivalDate());
+    assertEquals(ACTIVE, reservation.getStatus());
+  }
+
+  @Test
+  public void testJsonRoundTrip() throws Exception
+  {
+    var reservation = Reservation.fromCreate(generateCreateBody()).withId(UUID.randomUUID());
+
+    var json = OBJECT_MAPPER.writeValueAsBytes(reservation);
+
+    assertEquals(reservation, OBJECT_MAPPER.readValue(json, Reservation.class));
+  }
+
   @Test
   public void testActiveOnlyPredicate()
   {
@@ -0,0 +1,300 @@
+package org.example.crs.reservation;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.example.crs.reservation.CampsiteRegistry.CampsiteCommand;
+import org.example.crs.reservation.command.ReservationCommands.Command;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.CreateReservationResponse;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationCmd;
+import org.example.crs.reservation.command.ReservationCommands.GetReservationResponse;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.http.javadsl.model.StatusCodes;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Starts a cluster of three nodes in the same JVM, each one serving the same campsites (and other
+ * clusters, to compare their throughput).
+ */
+@Slf4j
+public class ShardedCampsiteRegistryTest
+{
+  private static final int NB_NODES = 3;
+
+  private static final int NB_CAMPSITES = 30;
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  /**
+   * The nodes of a cluster started by the test.
+   */
+  private static class TestCluster
+  {
+    private final List<ActorTestKit> nodes = new ArrayList<>();
+
+    /**
+     * The campsite registry of each node.
+     */
+    private final List<ActorRef<Command>> registries = new ArrayList<>();
+
+    /**
+     * The services created on each node, by campsite id.
+     */
+    private final List<Map<String, ReservationService>> services = new ArrayList<>();
+
+    /**
+     * @param name The name of the actor systems of the cluster.
+     * @param nbNodes The number of nodes.
+     * @return The cluster, once all its nodes are up.
+     */
+    private static TestCluster start(String name, int nbNodes)
+    {
+      var config = ConfigFactory.parseString(
+          "akka.actor.provider = cluster\n" +
+          "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n" +
+          "akka.remote.artery.canonical.port = 0\n" +
+          "akka.cluster.seed-nodes = []\n" +
+          "akka.cluster.jmx.multi-mbeans-in-same-jvm = on")
+          .withFallback(ConfigFactory.load());
+
+      var ids = IntStream.range(0, NB_CAMPSITES).mapToObj(i -> "campsite-" + i).collect(Collectors.toList());
+
+      var cluster = new TestCluster();
+      for (var i = 0; i < nbNodes; i++)
+      {
+        var node = ActorTestKit.create(name, config);
+        var nodeServices = new ConcurrentHashMap<String, ReservationService>();
+
+        var campsites = new Campsites(ids, id ->
+        {
+          var service = new ReservationService(new ReservationMapRepository(node.system().executionContext()));
+          nodeServices.put(id, service);
+          return service;
+        });
+
+        var region = ShardedCampsiteRegistry.init(node.system(), campsites,
+            (id, service) -> ReservationRegistry.pool(service, 2));
+
+        cluster.nodes.add(node);
+        cluster.services.add(nodeServices);
+        cluster.registries.add(node.spawn(ShardedCampsiteRegistry.create(region)));
+      }
+
+      var seed = Cluster.get(cluster.nodes.get(0).system()).selfMember().address();
+      for (var node : cluster.nodes)
+      {
+        Cluster.get(node.system()).manager().tell(Join.create(seed));
+      }
+
+      for (var node : cluster.nodes)
+      {
+        node.createTestProbe().awaitAssert(TIMEOUT, () ->
+        {
+          var members = Cluster.get(node.system()).state().getMembers();
+          var nbUp = 0;
+          for (var member : members)
+          {
+            nbUp += member.status() == MemberStatus.up() ? 1 : 0;
+          }
+          assertEquals(nbNodes, nbUp);
+          return null;
+        });
+      }
+
+      return cluster;
+    }
+
+    private void shutdown()
+    {
+      // the seed node last, so the others can leave through it
+      for (var i = nodes.size() - 1; i >= 0; i--)
+      {
+        ActorTestKit.shutdown(nodes.get(i).system(), Duration.ofSeconds(30), false);
+      }
+    }
+  }
+
+  private static TestCluster cluster;
+
+  @BeforeClass
+  public static void startCluster()
+  {
+    cluster = TestCluster.start("CRS", NB_NODES);
+  }
+
+  @AfterClass
+  public static void stopCluster()
+  {
+    cluster.shutdown();
+  }
+
+  @Test
+  public void testSameNight_BookedOnce()
+  {
+    var body = createBody(1);
+
+    // the same night of the same campsite, from every node at the same time
+    var responses = new ArrayList<CompletableFuture<CreateReservationResponse>>();
+    for (var i = 0; i < 10 * NB_NODES; i++)
+    {
+      responses.add(create(i % NB_NODES, "campsite-0", body));
+    }
+
+    var statuses = responses.stream()
+        .map(CompletableFuture::join)
+        .map(CreateReservationResponse::getStatus)
+        .collect(Collectors.toList());
+
+    assertEquals(1, statuses.stream().filter(StatusCodes.CREATED::equals).count());
+    assertEquals(statuses.size() - 1, statuses.stream().filter(StatusCodes.BAD_REQUEST::equals).count());
+  }
+
+  @Test
+  public void testCampsites_OwnedByOneNode()
+  {
+    var reservations = new ArrayList<CompletableFuture<CreateReservationResponse>>();
+    for (var i = 1; i < NB_CAMPSITES; i++)
+    {
+      reservations.add(create(i % NB_NODES, "campsite-" + i, createBody(2)));
+    }
+
+    for (var i = 1; i < NB_CAMPSITES; i++)
+    {
+      var created = reservations.get(i - 1).join();
+      assertEquals(StatusCodes.CREATED, created.getStatus());
+
+      // found from any node
+      var found = get((i + 1) % NB_NODES, "campsite-" + i, created.getReservation().getId());
+      assertEquals(created.getReservation(), found.getReservation());
+    }
+
+    // every campsite lives on a single node, and the campsites are spread over the nodes
+    for (var i = 1; i < NB_CAMPSITES; i++)
+    {
+      var id = "campsite-" + i;
+      assertEquals(1, cluster.services.stream().filter(s -> s.containsKey(id)).count());
+    }
+    assertTrue(cluster.services.stream().filter(s -> !s.isEmpty()).count() > 1);
+  }
+
+  @Test
+  public void testGet_NotFound_FromAnotherNode()
+  {
+    for (var node = 0; node < NB_NODES; node++)
+    {
+      var response = get(node, "campsite-0", UUID.randomUUID());
+      assertEquals(StatusCodes.NOT_FOUND, response.getStatus());
+    }
+  }
+
+  /**
+   * Sends the same creations to a cluster of one node, then to a cluster of three nodes (through all
+   * of them), serving the same campsites. The nodes share the CPUs of this JVM and talk through the
+   * loopback, so three nodes can not be expected to be faster: only a collapse of the throughput (by
+   * an order of magnitude) once the campsites are sharded is asserted.
+   */
+  @Test
+  public void testThroughput()
+  {
+    var single = TestCluster.start("CRS-single", 1);
+    var singleRate = measureThroughput(single);
+    single.shutdown();
+
+    var sharded = TestCluster.start("CRS-sharded", NB_NODES);
+    var shardedRate = measureThroughput(sharded);
+    sharded.shutdown();
+
+    log.info("creations per second: {} with 1 node, {} with {} nodes", singleRate, shardedRate, NB_NODES);
+
+    assertTrue(shardedRate > singleRate / 10);
+  }
+
+  /**
+   * @param cluster A cluster, without any reservation.
+   * @return The creations per second sent through all the nodes of the cluster, after a warm-up round.
+   */
+  private static long measureThroughput(TestCluster cluster)
+  {
+    var nbCreations = 3000;
+    var nbNodes = cluster.nodes.size();
+
+    var rate = 0L;
+    for (var round = 0; round < 2; round++)
+    {
+      var start = System.nanoTime();
+
+      var responses = new ArrayList<CompletableFuture<CreateReservationResponse>>();
+      for (var i = 0; i < nbCreations; i++)
+      {
+        var campsite = "campsite-" + (1 + i % (NB_CAMPSITES - 1));
+        // the warm-up round books the first half of the month, the measured round the second one
+        responses.add(create(cluster, i % nbNodes, campsite, createBody(1 + round * 14 + i % 14)));
+      }
+      responses.forEach(CompletableFuture::join);
+
+      rate = Math.round(nbCreations / ((System.nanoTime() - start) / 1e9));
+    }
+
+    return rate;
+  }
+
+  private static ReservationCreateBody createBody(int inDays)
+  {
+    var arrivalDate = now().plus(ofDays(inDays));
+
+    return ReservationCreateBody.builder()
+        .clientEmail("jane.doe@example.org")
+        .clientName("Jane Doe")
+        .arrivalDate(arrivalDate)
+        .departureDate(arrivalDate.plus(ofDays(1)))
+        .build();
+  }
+
+  private static CompletableFuture<CreateReservationResponse> create(int node, String campsiteId, ReservationCreateBody body)
+  {
+    return create(cluster, node, campsiteId, body);
+  }
+
+  private static CompletableFuture<CreateReservationResponse> create(
+      TestCluster cluster,
+      int node,
+      String campsiteId,
+      ReservationCreateBody body)
+  {
+    return AskPattern.<Command, CreateReservationResponse>ask(cluster.registries.get(node),
+        ref -> new CampsiteCommand(campsiteId, new CreateReservationCmd(body, ref)),
+        TIMEOUT, cluster.nodes.get(node).scheduler()).toCompletableFuture();
+  }
+
+  private static GetReservationResponse get(int node, String campsiteId, UUID id)
+  {
+    return AskPattern.<Command, GetReservationResponse>ask(cluster.registries.get(node),
+        ref -> new CampsiteCommand(campsiteId, new GetReservationCmd(id, ref)),
+        TIMEOUT, cluster.nodes.get(node).scheduler()).toCompletableFuture().join();
+  }
+}
@@ -0,0 +1,87 @@
+package org.example.crs.reservation;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class TimeOrderedIdGeneratorTest
+{
+  @Test
+  public void testNext_IsVersion7()
+  {
+    var before = System.currentTimeMillis();
+    var id = new TimeOrderedIdGenerator().next();
+
+    assertEquals(7, id.version());
+    assertEquals(2, id.variant());
+    assertTrue(TimeOrderedIdGenerator.millisOf(id) >= before);
+  }
+
+  @Test
+  public void testNext_IsIncreasing()
+  {
+    var generator = new TimeOrderedIdGenerator();
+
+    // far more than the 4096 ids a millisecond can hold
+    var previous = generator.next();
+    for (var i = 0; i < 100_000; i++)
+    {
+      var next = generator.next();
+      assertTrue(previous.compareTo(next) < 0);
+      previous = next;
+    }
+  }
+
+  @Test
+  public void testNext_UniqueAcrossThreads()
+  {
+    var generator = new TimeOrderedIdGenerator();
+
+    var batches = IntStream.range(0, 4)
+        .mapToObj(i -> CompletableFuture.supplyAsync(() -> generate(generator, 10_000)))
+        .collect(toList());
+
+    var ids = new HashSet<UUID>();
+    for (var batch : batches)
+    {
+      var generated = batch.join();
+
+      // each thread sees its own ids increasing
+      for (var i = 1; i < generated.size(); i++)
+      {
+        assertTrue(generated.get(i - 1).compareTo(generated.get(i)) < 0);
+      }
+
+      ids.addAll(generated);
+    }
+
+    assertEquals(40_000, ids.size());
+  }
+
+  @Test
+  public void testNamed()
+  {
+    assertEquals(7, ReservationIdGenerator.named("time-ordered").next().version());
+    assertEquals(4, ReservationIdGenerator.named("random").next().version());
+  }
+
+  private static List<UUID> generate(ReservationIdGenerator generator, int count)
+  {
+    var ids = new ArrayList<UUID>(count);
+    for (var i = 0; i < count; i++)
+    {
+      ids.add(generator.next());
+    }
+
+    return ids;
+  }
+}
@@ -0,0 +1,51 @@
+package org.example.crs.reservation.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DepartureIndexTest
+{
+  @Test
+  public void testFrom_WhileGrowing()
+  {
+    var index = new DepartureIndex();
+    for (var record = 0; record < 1000; record++)
+    {
+      index.add(record % 10, record);
+    }
+
+    assertEquals(1000, index.size());
+
+    var found = index.from(8);
+    Arrays.sort(found);
+    assertEquals(200, found.length);
+    assertTrue(Arrays.stream(found).allMatch(record -> record % 10 >= 8));
+    assertEquals(0, index.from(10).length);
+  }
+
+  @Test
+  public void testRemove()
+  {
+    var index = new DepartureIndex();
+    index.add(5, 1);
+    index.add(5, 2);
+    index.add(7, 3);
+
+    assertTrue(index.remove(5, 1));
+    assertFalse(index.remove(5, 1));
+    assertFalse(index.remove(6, 2));
+
+    assertArrayEquals(new int[] { 2, 3 }, index.from(0));
+
+    // the day without records is dropped
+    assertTrue(index.remove(5, 2));
+    assertArrayEquals(new int[] { 3 }, index.from(0));
+    assertEquals(1, index.size());
+  }
+}
@@ -0,0 +1,177 @@
+package org.example.crs.reservation.storage;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.example.crs.reservation.Reservation;
+import org.example.crs.reservation.ReservationIdGenerator;
+import org.example.crs.reservation.ReservationMapRepository;
+import org.example.crs.reservation.command.param.ReservationCreateBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReservationArchiveTest
+{
+  private static final int TIMEOUT_MS = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ReservationArchive archive;
+
+  private final ReservationIdGenerator ids = ReservationIdGenerator.random();
+
+  @Before
+  public void before() throws Exception
+  {
+    archive = ReservationArchive.open(folder.getRoot().toPath());
+  }
+
+  @After
+  public void after()
+  {
+    archive.close();
+  }
+
+  @Test
+  public void testFindById_AcrossBlocks() throws Exception
+  {
+    // several blocks, not sorted by id
+    var reservations = generate(500);
+    archive.append(reservations);
+
+    for (var reservation : reservations)
+    {
+      assertEquals(reservation, archive.findById(reservation.getId()).get());
+    }
+    assertTrue(archive.findById(UUID.randomUUID()).isEmpty());
+
+    assertEquals(500, archive.size());
+    assertTrue(archive.sizeInBytes() > 0);
+  }
+
+  @Test
+  public void testFindById_AfterReopen() throws Exception
+  {
+    var first = generate(10);
+    var second = generate(10);
+    archive.append(first);
+    archive.append(second);
+
+    archive.close();
+    archive = ReservationArchive.open(folder.getRoot().toPath());
+
+    assertEquals(20, archive.size());
+    assertEquals(first.get(3), archive.findById(first.get(3).getId()).get());
+    assertEquals(second.get(7), archive.findById(second.get(7).getId()).get());
+
+    // and the next segment does not overwrite the previous ones
+    var third = generate(1);
+    archive.append(third);
+    assertEquals(first.get(0), archive.findById(first.get(0).getId()).get());
+    assertEquals(third.get(0), archive.findById(third.get(0).getId()).get());
+  }
+
+  @Test
+  public void testFindById_LatestVersion() throws Exception
+  {
+    var reservation = generate(1).get(0);
+    archive.append(List.of(reservation));
+
+    var canceled = reservation.withStatus(CANCELED);
+    archive.append(List.of(canceled));
+
+    assertEquals(canceled, archive.findById(reservation.getId()).get());
+  }
+
+  @Test
+  public void testAppend_MergesSegments() throws Exception
+  {
+    var reservations = generate(100);
+    for (var reservation : reservations)
+    {
+      archive.append(List.of(reservation));
+    }
+    var canceled = reservations.get(0).withStatus(CANCELED);
+    archive.append(List.of(canceled));
+
+    // the segments grow geometrically, and the merged files are deleted
+    assertTrue(archive.segmentCount() <= 8);
+    try (var files = Files.list(folder.getRoot().toPath()))
+    {
+      assertEquals(archive.segmentCount(), files.count());
+    }
+
+    archive.close();
+    archive = ReservationArchive.open(folder.getRoot().toPath());
+
+    assertEquals(canceled, archive.findById(canceled.getId()).get());
+    for (var reservation : reservations.subList(1, reservations.size()))
+    {
+      assertEquals(reservation, archive.findById(reservation.getId()).get());
+    }
+  }
+
+  @Test
+  public void testRepositoryArchive() throws Exception
+  {
+    var repository = new ReservationMapRepository(archive, ids, ForkJoinPool.commonPool());
+
+    var over = repository.create(bodyFor(-3, -1)).join();
+    var current = repository.create(bodyFor(-1, 1)).join();
+    var canceled = repository.create(bodyFor(2, 3)).join();
+    repository.cancel(canceled.getId()).join();
+
+    assertEquals(1, repository.archive(now()));
+    assertEquals(2, repository.getLiveSize());
+    assertEquals(1, archive.size());
+
+    // still found by id, but read only
+    assertEquals(over, repository.findById(over.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertTrue(repository.cancel(over.getId()).get(TIMEOUT_MS, MILLISECONDS).isEmpty());
+
+    // the current stay and the canceled reservation which can still be reactivated are kept
+    assertEquals(current, repository.findById(current.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertEquals(CANCELED, repository.findById(canceled.getId()).get(TIMEOUT_MS, MILLISECONDS).get().getStatus());
+
+    assertEquals(0, repository.archive(now()));
+  }
+
+  private static ReservationCreateBody bodyFor(int arrival, int departure)
+  {
+    var body = generateCreateBody();
+    body.setArrivalDate(now().plus(ofDays(arrival)));
+    body.setDepartureDate(now().plus(ofDays(departure)));
+
+    return body;
+  }
+
+  private List<Reservation> generate(int count)
+  {
+    return IntStream.range(0, count)
+        .mapToObj(i ->
+        {
+          var body = generateCreateBody();
+          body.setArrivalDate(now().minus(ofDays(10)));
+          body.setDepartureDate(now().minus(ofDays(8)));
+
+          return Reservation.fromCreate(body).withId(ids.next());
+        })
+        .collect(toList());
+  }
+}
@@ -0,0 +1,208 @@
+package org.example.crs.reservation.storage;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.example.crs.reservation.Reservation.ReservationStatus.CANCELED;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateCreateBody;
+import static org.example.crs.reservation.utils.ReservationGenerationUtils.generateUpdateBody;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.example.crs.reservation.Reservation;
+import org.example.crs.reservation.ReservationMapRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReservationJournalTest
+{
+  private static final int TIMEOUT_MS = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ReservationJournal journal;
+
+  @Before
+  public void before() throws Exception
+  {
+    journal = ReservationJournal.open(folder.getRoot().toPath(), Duration.ofMillis(1));
+  }
+
+  @After
+  public void after()
+  {
+    journal.close();
+  }
+
+  @Test
+  public void testRestoreFromLog() throws Exception
+  {
+    var repository = new ReservationMapRepository(journal, ForkJoinPool.commonPool());
+
+    var created = createFor(repository, 1);
+    var updated = repository.update(created.getId(), generateUpdateBody(created))
+        .get(TIMEOUT_MS, MILLISECONDS).get();
+
+    var canceled = createFor(repository, 10);
+    repository.cancel(canceled.getId()).get(TIMEOUT_MS, MILLISECONDS);
+
+    var restored = reopen();
+
+    assertEquals(updated, restored.findById(created.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertEquals(CANCELED, restored.findById(canceled.getId()).get(TIMEOUT_MS, MILLISECONDS).get().getStatus());
+
+    // the booked nights are restored too
+    assertFalse(restored.getOccupancyCalendar().isFree(updated));
+  }
+
+  @Test
+  public void testRestoreFromSnapshotAndLog() throws Exception
+  {
+    var repository = new ReservationMapRepository(journal, ForkJoinPool.commonPool());
+
+    var beforeSnapshot = IntStream.range(1, 11)
+        .mapToObj(i -> createFor(repository, i))
+        .collect(toList());
+
+    repository.snapshot();
+
+    var afterSnapshot = createFor(repository, 12);
+
+    try (var files = Files.list(folder.getRoot().toPath()))
+    {
+      // one snapshot and the current segment
+      assertEquals(2, files.count());
+    }
+
+    var restored = reopen();
+
+    for (var reservation : beforeSnapshot)
+    {
+      assertEquals(reservation, restored.findById(reservation.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    }
+    assertEquals(afterSnapshot, restored.findById(afterSnapshot.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertEquals(11, restored.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS).size());
+  }
+
+  @Test
+  public void testSnapshotSpanningSeveralChunks() throws Exception
+  {
+    journal.replay(__ -> {});
+
+    // about 20MB of records, so the snapshot is written and read in several chunks
+    var body = generateCreateBody();
+    var reservations = IntStream.range(0, 200_000)
+        .mapToObj(i -> Reservation.fromCreate(body).withId(UUID.randomUUID()))
+        .collect(toList());
+
+    journal.snapshot(reservations::iterator);
+    journal.close();
+
+    var restored = new ArrayList<Reservation>();
+    journal = ReservationJournal.open(folder.getRoot().toPath(), Duration.ofMillis(1));
+    journal.replay(restored::add);
+
+    assertEquals(reservations, restored);
+  }
+
+  @Test
+  public void testRestoreIgnoresTornRecord() throws Exception
+  {
+    var repository = new ReservationMapRepository(journal, ForkJoinPool.commonPool());
+    var created = createFor(repository, 1);
+    journal.close();
+
+    try (var files = Files.list(folder.getRoot().toPath()))
+    {
+      var segment = files.filter(f -> f.getFileName().toString().startsWith("wal-")).findFirst().get();
+      Files.write(segment, new byte[] { 0, 0, 0, 42, 1, 2, 3 }, StandardOpenOption.APPEND);
+    }
+
+    var restored = reopen();
+    assertTrue(restored.findById(created.getId()).get(TIMEOUT_MS, MILLISECONDS).isPresent());
+
+    // and the journal is still writable
+    var next = createFor(restored, 2);
+    assertTrue(reopen().findById(next.getId()).get(TIMEOUT_MS, MILLISECONDS).isPresent());
+  }
+
+  @Test
+  public void testFailedSyncRevertsWritesAndStopsJournal() throws Exception
+  {
+    var repository = new ReservationMapRepository(journal, ForkJoinPool.commonPool());
+    var durable = createFor(repository, 1);
+
+    // the next flush fails, as if the disk was gone
+    var segment = ReservationJournal.class.getDeclaredField("segment");
+    segment.setAccessible(true);
+    ((FileChannel) segment.get(journal)).close();
+
+    var body = generateCreateBody();
+    body.setArrivalDate(now().plus(ofDays(5)));
+    body.setDepartureDate(body.getArrivalDate().plus(ofDays(1)));
+    var creation = repository.create(body);
+    var update = repository.update(durable.getId(), generateUpdateBody(durable));
+
+    assertTrue(failed(creation));
+    assertTrue(failed(update));
+
+    // the writes are reverted in memory
+    assertEquals(durable, repository.findById(durable.getId()).get(TIMEOUT_MS, MILLISECONDS).get());
+    assertEquals(1, repository.findFrom(now()).get(TIMEOUT_MS, MILLISECONDS).size());
+    assertFalse(repository.getOccupancyCalendar().isFree(durable));
+    assertTrue(repository.getOccupancyCalendar().isFree(createPeriod(body.getArrivalDate(), body.getDepartureDate())));
+
+    // and the journal refuses anything else
+    assertTrue(failed(repository.create(body)));
+    assertTrue(failed(journal.sync()));
+    assertTrue(repository.getOccupancyCalendar().isFree(createPeriod(body.getArrivalDate(), body.getDepartureDate())));
+  }
+
+  private static boolean failed(CompletableFuture<?> future) throws Exception
+  {
+    try
+    {
+      future.get(TIMEOUT_MS, MILLISECONDS);
+      return false;
+    }
+    catch (ExecutionException ex)
+    {
+      return true;
+    }
+  }
+
+  private ReservationMapRepository reopen() throws Exception
+  {
+    journal.close();
+    journal = ReservationJournal.open(folder.getRoot().toPath(), Duration.ofMillis(1));
+
+    return new ReservationMapRepository(journal, ForkJoinPool.commonPool());
+  }
+
+  private static Reservation createFor(ReservationMapRepository repository, int day)
+  {
+    var body = generateCreateBody();
+    body.setArrivalDate(now().plus(ofDays(day)));
+    body.setDepartureDate(body.getArrivalDate().plus(ofDays(1)));
+
+    return repository.create(body).join();
+  }
+}
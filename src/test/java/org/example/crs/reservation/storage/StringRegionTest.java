@@ -0,0 +1,50 @@
+package org.example.crs.reservation.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StringRegionTest
+{
+  @Test
+  public void testIntern()
+  {
+    var strings = new StringRegion();
+
+    var ref = strings.intern("Jöhn Döe");
+    assertEquals(ref, strings.intern(new String("Jöhn Döe")));
+    assertNotEquals(ref, strings.intern("Jane Doe"));
+
+    assertEquals("Jöhn Döe", strings.get(ref));
+    assertEquals(2, strings.size());
+  }
+
+  @Test
+  public void testIntern_Null()
+  {
+    var strings = new StringRegion();
+
+    assertEquals(StringRegion.NULL, strings.intern(null));
+    assertNull(strings.get(StringRegion.NULL));
+  }
+
+  @Test
+  public void testIntern_WhileGrowing()
+  {
+    var strings = new StringRegion();
+
+    var refs = new int[5000];
+    for (var i = 0; i < refs.length; i++)
+    {
+      refs[i] = strings.intern("client-" + i + "@example.org");
+    }
+
+    for (var i = 0; i < refs.length; i++)
+    {
+      assertEquals("client-" + i + "@example.org", strings.get(refs[i]));
+      assertEquals(refs[i], strings.intern("client-" + i + "@example.org"));
+    }
+  }
+}
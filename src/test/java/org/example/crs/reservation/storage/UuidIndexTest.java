@@ -0,0 +1,44 @@
+package org.example.crs.reservation.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class UuidIndexTest
+{
+  @Test
+  public void testPutAndGet_WhileGrowing()
+  {
+    var index = new UuidIndex(4);
+    var ids = IntStream.range(0, 10_000).mapToObj(i -> UUID.randomUUID()).toArray(UUID[]::new);
+
+    for (var i = 0; i < ids.length; i++)
+    {
+      index.put(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits(), i);
+    }
+
+    assertEquals(ids.length, index.size());
+    for (var i = 0; i < ids.length; i++)
+    {
+      assertEquals(i, index.get(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits()));
+    }
+
+    var missing = UUID.randomUUID();
+    assertEquals(UuidIndex.NONE, index.get(missing.getMostSignificantBits(), missing.getLeastSignificantBits()));
+  }
+
+  @Test
+  public void testPut_Replaces()
+  {
+    var index = new UuidIndex(4);
+
+    index.put(1, 2, 10);
+    index.put(1, 2, 20);
+
+    assertEquals(1, index.size());
+    assertEquals(20, index.get(1, 2));
+  }
+}
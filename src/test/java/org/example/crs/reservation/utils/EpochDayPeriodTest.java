@@ -0,0 +1,71 @@
+package org.example.crs.reservation.utils;
+
+import static java.time.LocalDate.now;
+import static java.time.Period.ofDays;
+import static org.example.crs.reservation.utils.ReservationPeriodUtils.SimpleReservationPeriod.createPeriod;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EpochDayPeriodTest
+{
+  @Test
+  public void testPackAndUnpack()
+  {
+    var arrival = now().plus(ofDays(1));
+    var departure = arrival.plus(ofDays(3));
+
+    var period = EpochDayPeriod.of(createPeriod(arrival, departure));
+
+    assertEquals(arrival.toEpochDay(), EpochDayPeriod.arrivalOf(period));
+    assertEquals(departure.toEpochDay(), EpochDayPeriod.departureOf(period));
+    assertEquals(3, EpochDayPeriod.nbNights(period));
+  }
+
+  @Test
+  public void testPackBeforeEpoch()
+  {
+    var arrival = LocalDate.of(1969, 12, 30).toEpochDay();
+
+    var period = EpochDayPeriod.of(arrival, arrival + 1);
+
+    assertEquals(arrival, EpochDayPeriod.arrivalOf(period));
+    assertEquals(arrival + 1, EpochDayPeriod.departureOf(period));
+  }
+
+  @Test
+  public void testSortedByArrivalThenDeparture()
+  {
+    var day = now().toEpochDay();
+
+    var periods = new long[] {
+        EpochDayPeriod.of(day + 5, day + 6),
+        EpochDayPeriod.of(day + 1, day + 4),
+        EpochDayPeriod.of(day + 1, day + 2) };
+    Arrays.sort(periods);
+
+    assertArrayEquals(new long[] {
+        EpochDayPeriod.of(day + 1, day + 2),
+        EpochDayPeriod.of(day + 1, day + 4),
+        EpochDayPeriod.of(day + 5, day + 6) }, periods);
+  }
+
+  @Test
+  public void testOverlaps()
+  {
+    var day = now().toEpochDay();
+    var period = EpochDayPeriod.of(day + 2, day + 4);
+
+    assertTrue(EpochDayPeriod.overlaps(period, day, day + 3));
+    assertTrue(EpochDayPeriod.overlaps(period, day + 3, day + 10));
+    // the departure day and the arrival day are not shared nights
+    assertFalse(EpochDayPeriod.overlaps(period, day, day + 2));
+    assertFalse(EpochDayPeriod.overlaps(period, day + 4, day + 10));
+  }
+}
@@ -16,6 +16,7 @@ import java.util.Optional;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.example.crs.reservation.command.param.Availability;
 import org.example.crs.reservation.command.param.ReservationUpdateBody;
 import org.example.crs.reservation.exception.ReservationAvailabilityCheckException;
 import org.example.crs.reservation.exception.ReservationException;
@@ -157,6 +158,40 @@ public class ReservationPeriodUtilsTest
     assertEquals(checkFrom.plus(ofDays(9)), availability2.getTo());
   }
 
+  @Test
+  public void testReservationAvailabilities_WhenReservationsAreNotSorted() throws Exception
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(10));
+
+    var reservations = new ArrayList<ReservationPeriod>();
+    reservations.add(createPeriod(checkFrom.plus(ofDays(6)), checkFrom.plus(ofDays(8))));
+    reservations.add(createPeriod(checkFrom.plus(ofDays(2)), checkFrom.plus(ofDays(3))));
+
+    var availabilities = getReservationAvailabilities(checkFrom, checkTo, reservations);
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(2))),
+        new Availability(checkFrom.plus(ofDays(3)), checkFrom.plus(ofDays(6))),
+        new Availability(checkFrom.plus(ofDays(8)), checkTo)), availabilities);
+  }
+
+  @Test
+  public void testReservationAvailabilities_WhenReservationsOverlap() throws Exception
+  {
+    var checkFrom = now().plus(ofDays(1));
+    var checkTo = checkFrom.plus(ofDays(10));
+
+    // a long reservation hiding a shorter one
+    var reservations = new ArrayList<ReservationPeriod>();
+    reservations.add(createPeriod(checkFrom.plus(ofDays(2)), checkFrom.plus(ofDays(6))));
+    reservations.add(createPeriod(checkFrom.plus(ofDays(3)), checkFrom.plus(ofDays(4))));
+
+    var availabilities = getReservationAvailabilities(checkFrom, checkTo, reservations);
+    assertEquals(List.of(
+        new Availability(checkFrom, checkFrom.plus(ofDays(2))),
+        new Availability(checkFrom.plus(ofDays(6)), checkTo)), availabilities);
+  }
+
   @Test
   public void testCreatePeriodDates()
   {